@@ -0,0 +1,389 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Assigns a batch of new hall calls to the cars of a bank at once, minimizing
+ * the total expected wait of every hall call the bank then holds, old and new.
+ *
+ * A car's cost under a candidate assignment is exact for its policy: the sum of
+ * EtaPlanner ETAs of its hall calls with the candidate calls pressed, assuming
+ * no further presses. So the search sees what greedy per-call assignment
+ * cannot: two calls given to one car delay each other, and a new stop delays
+ * the calls a car already holds.
+ *
+ * The search starts from the greedy assignment (each call in turn to the
+ * policy's cheapest car, as GroupController does) and improves it by iterated
+ * local search: move single calls between cars until no move helps, then kick a
+ * few calls to random cars and descend again. With a pool, every worker searches
+ * from its own random stream and the best answer wins. The time budget is hard:
+ * when it runs out, assign() returns the best assignment found so far, which is
+ * never worse than greedy.
+ */
+public final class AssignmentOptimizer {
+    /** Cost of a call the policy would never serve; dominates any real wait. */
+    static final long UNSERVED = 1L << 40;
+    /** Kicks in a row without improvement after which a worker gives up early. */
+    static final int STALE_KICKS = 16;
+
+    private final Elevator[] cabs;
+    private final Scheduler[] queues;
+    private final DispatchPolicy policy;
+    private final int dwellTicks;
+    private final ForkJoinPool pool; // null to search on the caller's thread
+    private final Evaluator[] evaluators; // one per worker, reused across decisions
+
+    // Best assignment found by any worker in the current decision.
+    private int[] best;
+    private long bestCost;
+    private volatile boolean stop;
+
+    /** What one decision found. */
+    public static final class Result {
+        /** Car chosen for each call, in the order the calls were given. */
+        public final int[] cars;
+        /** Total expected hall-call wait of the bank, in ticks, under {@link #cars}. */
+        public final long cost;
+        /** The same for the greedy assignment the search started from. */
+        public final long greedyCost;
+        /** Candidate car costs computed. */
+        public final long evaluations;
+        public final long nanos;
+
+        Result(int[] cars, long cost, long greedyCost, long evaluations, long nanos) {
+            this.cars = cars;
+            this.cost = cost;
+            this.greedyCost = greedyCost;
+            this.evaluations = evaluations;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cost=%d greedy=%d (%.1f%% better) evaluations=%d in %.2f ms", cost, greedyCost,
+                    greedyCost == 0 ? 0.0 : 100.0 * (greedyCost - cost) / greedyCost, evaluations, nanos / 1e6);
+        }
+    }
+
+    /**
+     * Searches on behalf of the cars {@code cabs}, whose pending requests are in
+     * {@code queues}. The arrays are read, never written. {@code pool} may be null.
+     */
+    public AssignmentOptimizer(Elevator[] cabs, Scheduler[] queues, DispatchPolicy policy, int dwellTicks,
+            ForkJoinPool pool) {
+        if (cabs.length == 0 || cabs.length != queues.length)
+            throw new IllegalArgumentException("need one queue per car");
+        this.cabs = cabs.clone();
+        this.queues = queues.clone();
+        this.policy = policy;
+        this.dwellTicks = Math.max(1, dwellTicks);
+        this.pool = pool;
+        this.evaluators = new Evaluator[pool == null ? 1 : pool.getParallelism()];
+        for (int w = 0; w < evaluators.length; w++)
+            evaluators[w] = new Evaluator();
+    }
+
+    /**
+     * Chooses a car for each hall call (floors[i], dirs[i]), spending at most
+     * {@code budgetNanos} (overrunning by at most one car evaluation). Calls must
+     * be distinct and not already pending in any queue. Without a pool the answer
+     * is deterministic for a seed unless the budget cuts the search short; with
+     * one, workers race and ties may fall either way. Call on the thread that
+     * owns the queues, while they are not changing.
+     */
+    public Result assign(int[] floors, Direction[] dirs, long budgetNanos, long seed) {
+        if (floors.length != dirs.length)
+            throw new IllegalArgumentException("one direction per floor");
+        long start = System.nanoTime(), deadline = start + budgetNanos;
+        int n = floors.length;
+
+        Evaluator main = evaluators[0];
+        main.load(floors, dirs);
+        int[] greedy = main.greedy();
+        long greedyCost = main.total(greedy, main.carCost);
+        best = greedy.clone();
+        bestCost = greedyCost;
+        stop = false;
+        if (n == 0 || cabs.length == 1)
+            return new Result(best, bestCost, greedyCost, main.takeEvaluations(), System.nanoTime() - start);
+
+        if (pool == null) {
+            main.search(greedy, deadline, seed, true);
+        } else {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[evaluators.length];
+            for (int w = 0; w < tasks.length; w++) {
+                Evaluator e = evaluators[w];
+                long workerSeed = seed + w;
+                boolean fromGreedy = w == 0;
+                tasks[w] = pool.submit(() -> {
+                    if (e != main)
+                        e.load(floors, dirs);
+                    e.search(greedy, deadline, workerSeed, fromGreedy);
+                });
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                try {
+                    t.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    break; // out of time, or failed: checked below
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            // Workers notice within one evaluation; wait, as the next decision reuses them.
+            stop = true;
+            for (ForkJoinTask<?> t : tasks) {
+                t.quietlyJoin();
+                if (t.isCompletedAbnormally())
+                    throw new IllegalStateException("assignment search failed", t.getException());
+            }
+        }
+        long evaluations = 0;
+        for (Evaluator e : evaluators)
+            evaluations += e.takeEvaluations();
+        synchronized (this) {
+            return new Result(best.clone(), bestCost, greedyCost, evaluations, System.nanoTime() - start);
+        }
+    }
+
+    /** Total cost of a given assignment, as assign() scores it. */
+    long cost(int[] floors, Direction[] dirs, int[] cars) {
+        Evaluator e = evaluators[0];
+        e.load(floors, dirs);
+        return e.total(cars, e.carCost);
+    }
+
+    private synchronized void offer(int[] cars, long cost) {
+        if (cost < bestCost) {
+            bestCost = cost;
+            System.arraycopy(cars, 0, best, 0, cars.length);
+        }
+    }
+
+    /** One worker's scratch state: a copy of each car's queue and a planner over it. */
+    private final class Evaluator {
+        final Scheduler[] work = new Scheduler[cabs.length];
+        final EtaPlanner[] planners = new EtaPlanner[cabs.length];
+        final long[] carCost = new long[cabs.length];
+        int[] floors;
+        Direction[] dirs;
+        long evaluations;
+
+        Evaluator() {
+            for (int c = 0; c < cabs.length; c++) {
+                work[c] = new Scheduler(queues[c].minFloor(), queues[c].maxFloor());
+                planners[c] = new EtaPlanner(cabs[c], work[c], policy, dwellTicks);
+            }
+        }
+
+        void load(int[] floors, Direction[] dirs) {
+            this.floors = floors;
+            this.dirs = dirs;
+        }
+
+        long takeEvaluations() {
+            long e = evaluations;
+            evaluations = 0;
+            return e;
+        }
+
+        /** Each call in turn to the car the policy rates cheapest, seeing earlier picks. */
+        int[] greedy() {
+            int[] cars = new int[floors.length];
+            for (int c = 0; c < cabs.length; c++)
+                work[c].copyRequestsFrom(queues[c]);
+            for (int i = 0; i < floors.length; i++) {
+                int pick = 0;
+                long pickCost = Long.MAX_VALUE;
+                for (int c = 0; c < cabs.length; c++) {
+                    long cost = policy.assignmentCost(cabs[c], work[c], floors[i], dirs[i], dwellTicks);
+                    if (cost < pickCost) {
+                        pickCost = cost;
+                        pick = c;
+                    }
+                }
+                cars[i] = pick;
+                work[pick].submitHallCall(floors[i], dirs[i]);
+            }
+            return cars;
+        }
+
+        /** Total cost of an assignment, filling in each car's share. */
+        long total(int[] cars, long[] into) {
+            long sum = 0;
+            for (int c = 0; c < cabs.length; c++)
+                sum += into[c] = cost(c, cars, -1, -1);
+            return sum;
+        }
+
+        /**
+         * Sum of hall-call ETAs on car c holding its queue plus the calls assigned
+         * to it, except that call {@code moved} is taken to be on car {@code to}.
+         */
+        long cost(int c, int[] cars, int moved, int to) {
+            evaluations++;
+            Scheduler s = work[c];
+            s.copyRequestsFrom(queues[c]);
+            for (int i = 0; i < cars.length; i++)
+                if ((i == moved ? to : cars[i]) == c)
+                    s.submitHallCall(floors[i], dirs[i]);
+            long now = s.clock(), sum = 0;
+            for (Direction cls = Direction.UP;; cls = Direction.DOWN) {
+                FloorBitSet pending = s.requests(cls);
+                for (int f = pending.first(); f != FloorBitSet.NONE; f = pending.higher(f)) {
+                    long eta = planners[c].eta(f, cls, now);
+                    sum += eta == EtaPlanner.NEVER ? UNSERVED : eta;
+                }
+                if (cls == Direction.DOWN)
+                    return sum;
+            }
+        }
+
+        /**
+         * Iterated local search from greedy (or a random start) until the deadline,
+         * or until {@link #STALE_KICKS} kicks in a row find nothing better.
+         */
+        void search(int[] greedy, long deadline, long seed, boolean fromGreedy) {
+            SplittableRandom rnd = new SplittableRandom(seed);
+            int n = greedy.length, cars = cabs.length;
+            int[] cur = greedy.clone();
+            if (!fromGreedy)
+                for (int i = 0; i < n; i++)
+                    cur[i] = rnd.nextInt(cars);
+            long total = total(cur, carCost);
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++)
+                order[i] = i;
+            long mine = Long.MAX_VALUE;
+            for (int stale = 0; stale < STALE_KICKS && !stop && System.nanoTime() < deadline;) {
+                // Descend: first improving move of one call to another car.
+                boolean improved = true;
+                while (improved && !stop) {
+                    improved = false;
+                    shuffle(order, rnd);
+                    for (int k = 0; k < n && !stop; k++) {
+                        int i = order[k], from = cur[i];
+                        long without = cost(from, cur, i, -1);
+                        for (int to = 0; to < cars; to++) {
+                            if (to == from)
+                                continue;
+                            if (System.nanoTime() >= deadline) {
+                                offer(cur, total);
+                                return;
+                            }
+                            long with = cost(to, cur, i, to);
+                            long delta = without + with - carCost[from] - carCost[to];
+                            if (delta < 0) {
+                                cur[i] = to;
+                                carCost[from] = without;
+                                carCost[to] = with;
+                                total += delta;
+                                improved = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+                offer(cur, total);
+                if (total < mine) {
+                    mine = total;
+                    stale = 0;
+                } else {
+                    stale++;
+                }
+                // Kick: send a few calls to random cars and descend from there.
+                synchronized (AssignmentOptimizer.this) {
+                    System.arraycopy(best, 0, cur, 0, n);
+                }
+                for (int kicks = 1 + Math.min(3, n / 4); kicks > 0; kicks--)
+                    cur[rnd.nextInt(n)] = rnd.nextInt(cars);
+                total = total(cur, carCost);
+            }
+        }
+    }
+
+    /**
+     * Decision latency against quality as calls and cars grow: for each size, a
+     * bank with some work in hand gets a burst of distinct hall calls. A first,
+     * unreported pass warms up the JIT.
+     * Usage: java AssignmentOptimizer [floors] [threads] [trials]
+     */
+    public static void main(String[] args) {
+        int floors = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int trials = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        for (boolean report : new boolean[] { false, true })
+            sweep(floors, trials, pool, report);
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private static void sweep(int floors, int trials, ForkJoinPool pool, boolean report) {
+        if (report)
+            System.out.println("cars\tcalls\tbudget ms\tmean ms\tmax ms\tvs greedy\tevaluations");
+        for (int cars : new int[] { 2, 4, 8, 16 }) {
+            for (int calls : new int[] { 4, 16, 64 }) {
+                for (long budgetMs : new long[] { 1, 5, 20 }) {
+                    double sumMs = 0, maxMs = 0, gain = 0;
+                    long evaluations = 0;
+                    for (int trial = 0; trial < trials; trial++) {
+                        SplittableRandom rnd = new SplittableRandom(trial * 1000 + cars * 10 + calls);
+                        Elevator[] cabs = new Elevator[cars];
+                        Scheduler[] queues = new Scheduler[cars];
+                        for (int c = 0; c < cars; c++) {
+                            cabs[c] = new Elevator(0, floors - 1, rnd.nextInt(floors));
+                            queues[c] = new Scheduler(0, floors - 1);
+                            Controller warm = new Controller(cabs[c], queues[c], 2);
+                            for (int k = 0; k < 3; k++) {
+                                warm.submitCarCall(rnd.nextInt(floors));
+                                int f = 1 + rnd.nextInt(floors - 2);
+                                warm.submitHallCall(f, rnd.nextBoolean() ? Direction.UP : Direction.DOWN);
+                            }
+                            for (int t = rnd.nextInt(10); t > 0; t--)
+                                warm.tick();
+                        }
+                        FloorBitSet up = new FloorBitSet(0, floors - 1), down = new FloorBitSet(0, floors - 1);
+                        int[] fs = new int[calls];
+                        Direction[] ds = new Direction[calls];
+                        for (int i = 0; i < calls;) {
+                            int f = rnd.nextInt(floors);
+                            Direction d = f == 0 ? Direction.UP
+                                    : f == floors - 1 || rnd.nextBoolean() ? Direction.DOWN : Direction.UP;
+                            FloorBitSet taken = d == Direction.UP ? up : down;
+                            boolean pending = false;
+                            for (Scheduler q : queues)
+                                pending |= q.hasHallCall(f, d);
+                            if (pending || !taken.add(f))
+                                continue;
+                            fs[i] = f;
+                            ds[i++] = d;
+                        }
+                        AssignmentOptimizer opt = new AssignmentOptimizer(cabs, queues, new LookPolicy(), 2, pool);
+                        Result r = opt.assign(fs, ds, budgetMs * 1_000_000, trial);
+                        sumMs += r.nanos / 1e6;
+                        maxMs = Math.max(maxMs, r.nanos / 1e6);
+                        gain += r.greedyCost == 0 ? 0 : (double) (r.greedyCost - r.cost) / r.greedyCost;
+                        evaluations += r.evaluations;
+                    }
+                    if (report)
+                        System.out.printf(java.util.Locale.ROOT, "%d\t%d\t%d\t%.2f\t%.2f\t-%.1f%%\t%d%n", cars, calls,
+                                budgetMs, sumMs / trials, maxMs, 100 * gain / trials, evaluations / trials);
+                }
+            }
+        }
+    }
+
+    private static void shuffle(int[] a, SplittableRandom rnd) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1), t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+}
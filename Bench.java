@@ -0,0 +1,258 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Micro-benchmarks for the Scheduler and Controller hot paths.
+ *
+ * Each case is measured over warmup and measurement iterations of a fixed wall
+ * time, and reports ops/s plus bytes allocated per op on the benchmark thread
+ * (the same counter the JMH GC profiler reads). Cases are parameterized by floor
+ * count, request density (fraction of floors with a pending request) and traffic
+ * pattern. Output is tab-separated so two builds can be diffed.
+ *
+ * Usage: java Bench [name-filter] [--floors=10,1000] [--density=0.1] [--pattern=UP_PEAK] [--quick]
+ */
+public final class Bench {
+    enum Pattern {
+        UNIFORM, UP_PEAK, DOWN_PEAK
+    }
+
+    /** One benchmark operation; i is the invocation index. Returns a value to sink. */
+    interface Op {
+        long run(Fixture f, int i);
+    }
+
+    static final class Case {
+        final String name;
+        final Op op;
+        final DispatchPolicy policy; // drives the fixture's controller
+
+        Case(String name, Op op) {
+            this(name, op, new LookPolicy());
+        }
+
+        Case(String name, Op op, DispatchPolicy policy) {
+            this.name = name;
+            this.op = op;
+            this.policy = policy;
+        }
+    }
+
+    /** Per-case state: a populated scheduler/controller plus precomputed query inputs. */
+    static final class Fixture {
+        static final int QUERIES = 4096; // power of two
+        static final int MASK = QUERIES - 1;
+
+        final int floors;
+        final Scheduler scheduler;
+        final Elevator cab;
+        final Controller controller;
+        final int[] floor = new int[QUERIES];
+        final Direction[] dir = new Direction[QUERIES];
+        final int[] dest = new int[QUERIES];
+        final Fleet fleet;
+        static final int FLEET_CARS = 256;
+        final SnapshotBuffer buffer;
+        byte[] checkpoint; // the controller's initial state, encoded
+
+        Fixture(int floors, double density, Pattern pattern, long seed, DispatchPolicy policy) {
+            this.floors = floors;
+            SplittableRandom rnd = new SplittableRandom(seed);
+            for (int i = 0; i < QUERIES; i++)
+                draw(rnd, pattern, i);
+            this.scheduler = new Scheduler(0, floors - 1);
+            this.cab = new Elevator(0, floors - 1, floors / 2);
+            this.controller = new Controller(cab, scheduler, 2, policy);
+            this.buffer = new SnapshotBuffer(0, floors - 1);
+            this.fleet = new Fleet(FLEET_CARS, 0, floors - 1, 2);
+            for (int car = 0; car < FLEET_CARS; car++)
+                fleet.place(car, floor[car]);
+            int pending = (int) Math.round(density * floors);
+            for (int n = 0, i = 0; n < pending; n++, i = (i + 1) & MASK) {
+                scheduler.submitHallCall(floor[i], dir[i]);
+                if ((n & 1) == 0)
+                    scheduler.submitCarCall(dest[i]);
+            }
+            this.checkpoint = controller.checkpoint().toBytes();
+        }
+
+        private void draw(SplittableRandom rnd, Pattern pattern, int i) {
+            int top = floors - 1;
+            switch (pattern) {
+                case UP_PEAK:
+                    // Most riders board at the lobby heading up.
+                    floor[i] = rnd.nextInt(10) < 8 || top == 0 ? 0 : rnd.nextInt(top + 1);
+                    dest[i] = top == 0 ? 0 : 1 + rnd.nextInt(top);
+                    break;
+                case DOWN_PEAK:
+                    floor[i] = top == 0 ? 0 : 1 + rnd.nextInt(top);
+                    dest[i] = rnd.nextInt(10) < 8 ? 0 : rnd.nextInt(top + 1);
+                    break;
+                default:
+                    floor[i] = rnd.nextInt(top + 1);
+                    dest[i] = rnd.nextInt(top + 1);
+            }
+            if (floor[i] == top)
+                dir[i] = Direction.DOWN;
+            else if (floor[i] == 0)
+                dir[i] = Direction.UP;
+            else
+                dir[i] = dest[i] > floor[i] ? Direction.UP : Direction.DOWN;
+        }
+    }
+
+    static final List<Case> CASES = new ArrayList<>();
+
+    static {
+        CASES.add(new Case("submitHallCall", (f, i) -> {
+            int k = i & Fixture.MASK;
+            f.scheduler.submitHallCall(f.floor[k], f.dir[k]);
+            return k;
+        }));
+        CASES.add(new Case("submitCarCall", (f, i) -> {
+            int k = i & Fixture.MASK;
+            f.scheduler.submitCarCall(f.dest[k]);
+            return k;
+        }));
+        CASES.add(new Case("shouldStopHere", (f, i) -> {
+            int k = i & Fixture.MASK;
+            return f.scheduler.shouldStopHere(f.dest[k], f.dir[k]) ? 1 : 0;
+        }));
+        CASES.add(new Case("hasAhead", (f, i) -> {
+            int k = i & Fixture.MASK;
+            return f.scheduler.hasAhead(f.dest[k], f.dir[k]) ? 1 : 0;
+        }));
+        CASES.add(new Case("hasBehind", (f, i) -> {
+            int k = i & Fixture.MASK;
+            return f.scheduler.hasBehind(f.dest[k], f.dir[k]) ? 1 : 0;
+        }));
+        CASES.add(new Case("pickFromIdle", (f, i) -> {
+            return f.scheduler.pickFromIdle(f.dest[i & Fixture.MASK]).ordinal();
+        }));
+        CASES.add(new Case("clearAt+resubmit", (f, i) -> {
+            // Clear a floor and put its hall call back so density stays constant.
+            int k = i & Fixture.MASK;
+            f.scheduler.clearAt(f.floor[k]);
+            f.scheduler.submitHallCall(f.floor[k], f.dir[k]);
+            return k;
+        }));
+        for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+            CASES.add(new Case("controllerTick/" + policy, (f, i) -> {
+                // Feed one hall call every 8 ticks so the cab never runs dry.
+                if ((i & 7) == 0) {
+                    int k = (i >>> 3) & Fixture.MASK;
+                    f.controller.submitHallCall(f.floor[k], f.dir[k]);
+                    f.controller.submitCarCall(f.dest[k]);
+                }
+                f.controller.tick();
+                return f.cab.currentFloor;
+            }, policy));
+        }
+        CASES.add(new Case("snapshot()", (f, i) -> f.controller.snapshot().floor));
+        CASES.add(new Case("snapshot(buffer)", (f, i) -> f.controller.snapshot(f.buffer).floor()));
+        CASES.add(new Case("checkpoint+encode", (f, i) -> f.controller.checkpoint().toBytes().length));
+        CASES.add(new Case("decode+restore", (f, i) -> Checkpoint.fromBytes(f.checkpoint).restore().now()));
+        CASES.add(new Case("fork", (f, i) -> f.controller.fork().now()));
+        CASES.add(new Case("fork+lookahead(60)", (f, i) -> {
+            // A what-if branch: give the fork one more hall call and run it 60 ticks.
+            int k = i & Fixture.MASK;
+            Controller what = f.controller.fork();
+            what.submitHallCall(f.floor[k], f.dir[k]);
+            for (int t = 0; t < 60; t++)
+                what.tick();
+            return what.cab().currentFloor;
+        }));
+        CASES.add(new Case("fleetTick(256 cars)", (f, i) -> {
+            // One op advances all 256 cars; feed two calls per tick across the fleet.
+            int k = i & Fixture.MASK, car = i & (Fixture.FLEET_CARS - 1);
+            f.fleet.submitHallCall(car, f.floor[k], f.dir[k]);
+            f.fleet.submitCarCall(car, f.dest[k]);
+            f.fleet.tick();
+            return f.fleet.floor(car);
+        }));
+    }
+
+    static volatile long sink; // keeps results live, like a JMH Blackhole
+
+    private static long iterationNanos = 200_000_000L;
+    private static int warmupIterations = 3, measureIterations = 5;
+
+    public static void main(String[] args) {
+        String filter = null;
+        int[] floors = { 10, 100, 1_000, 10_000, 100_000 };
+        double[] densities = { 0.01, 0.1, 0.5 };
+        Pattern[] patterns = Pattern.values();
+        for (String a : args) {
+            if (a.equals("--quick")) {
+                iterationNanos = 50_000_000L;
+                warmupIterations = 2;
+                measureIterations = 3;
+            } else if (a.startsWith("--floors=")) {
+                floors = Arrays.stream(a.substring(9).split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (a.startsWith("--density=")) {
+                densities = Arrays.stream(a.substring(10).split(",")).mapToDouble(Double::parseDouble).toArray();
+            } else if (a.startsWith("--pattern=")) {
+                patterns = Arrays.stream(a.substring(10).split(",")).map(Pattern::valueOf).toArray(Pattern[]::new);
+            } else {
+                filter = a;
+            }
+        }
+
+        System.out.println("benchmark\tfloors\tdensity\tpattern\tops/s\terror\tB/op\talloc MB/s");
+        for (Case c : CASES) {
+            if (filter != null && !c.name.contains(filter))
+                continue;
+            for (int fl : floors)
+                for (double d : densities)
+                    for (Pattern p : patterns)
+                        run(c, fl, d, p);
+        }
+    }
+
+    private static void run(Case c, int floors, double density, Pattern pattern) {
+        Fixture f = new Fixture(floors, density, pattern, 42, c.policy);
+        for (int w = 0; w < warmupIterations; w++)
+            iteration(c, f);
+        double[] rates = new double[measureIterations];
+        long ops = 0, bytes = 0, nanos = 0;
+        for (int m = 0; m < measureIterations; m++) {
+            long[] r = iteration(c, f);
+            rates[m] = r[0] * 1e9 / r[2];
+            ops += r[0];
+            bytes += r[1];
+            nanos += r[2];
+        }
+        double mean = Arrays.stream(rates).average().orElse(0);
+        double var = Arrays.stream(rates).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, rates.length - 1);
+        double bytesPerOp = bytes < 0 ? -1 : (double) bytes / ops;
+        double allocRate = bytes < 0 ? -1 : bytes * 1e9 / nanos / (1 << 20);
+        System.out.printf(Locale.ROOT, "%s\t%d\t%.2f\t%s\t%.0f\t%.0f\t%.2f\t%.1f%n",
+                c.name, floors, density, pattern, mean, Math.sqrt(var), bytesPerOp, allocRate);
+    }
+
+    /** Runs one timed iteration; returns {ops, allocated bytes (or -1), nanos}. */
+    private static long[] iteration(Case c, Fixture f) {
+        long acc = 0;
+        int i = 0;
+        long bytes0 = allocatedBytes();
+        long start = System.nanoTime(), deadline = start + iterationNanos, now;
+        do {
+            // Check the clock once per batch to keep timer reads off the measured path.
+            for (int b = 0; b < 1024; b++, i++)
+                acc += c.op.run(f, i);
+        } while ((now = System.nanoTime()) < deadline);
+        long bytes1 = allocatedBytes();
+        sink = acc;
+        return new long[] { i, bytes0 < 0 ? -1 : bytes1 - bytes0, now - start };
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) mx;
+            if (sun.isThreadAllocatedMemorySupported())
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Everything needed to bring a Controller back after a restart: the cab, the
+ * clock, and every pending request with the tick it was first pressed.
+ *
+ * Controller.checkpoint() takes the copy on the tick thread; it costs a few
+ * array copies, proportional to the floor count over 64 plus the pending
+ * requests. The copy is immutable, so encoding and writing it can happen on any
+ * other thread while the controller keeps ticking.
+ *
+ * The encoding is little-endian and versioned: a fixed header, then for each
+ * request class (UP, DOWN, car) its bitmap words up to the last non-empty one,
+ * then the age of every pending request in ticks as a varint. A 200-floor
+ * building with a few dozen calls fits in about 150 bytes. Decoding checks the
+ * header, including a limit of {@link #MAX_FLOORS} floors, before sizing anything
+ * by it, so corrupt input fails fast rather than exhausting memory.
+ *
+ * Presses still in the RequestInbox have not reached the scheduler and are not
+ * included, nor are the latency statistics, nor any DemandModel parking the car:
+ * a restored controller stays put when idle until parkBy is called on it again.
+ */
+public final class Checkpoint {
+    static final int MAGIC = 0x43564C45; // "ELVC"
+    static final short FORMAT = 1;
+    private static final int MAX_POLICY_BYTES = 255;
+    /** Tallest building checkpointed: a corrupt header cannot ask restore() for more than this. */
+    static final int MAX_FLOORS = 1 << 20;
+    private static final Direction[] CLASSES = { Direction.UP, Direction.DOWN, Direction.IDLE };
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    final int minFloor, maxFloor;
+    final long now;
+    final int floor;
+    final Direction direction;
+    final boolean doorOpen;
+    final int doorDwellTicks;
+    final long floorsTravelled;
+    final int dwellTicks;
+    final String policy;
+    private final long[][] words; // per class, the FloorBitSet words
+    private final long[][] pressedAt; // per class, stamps of the pending floors in floor order
+
+    private Checkpoint(int minFloor, int maxFloor, long now, int floor, Direction direction, boolean doorOpen,
+            int doorDwellTicks, long floorsTravelled, int dwellTicks, String policy, long[][] words,
+            long[][] pressedAt) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.now = now;
+        this.floor = floor;
+        this.direction = direction;
+        this.doorOpen = doorOpen;
+        this.doorDwellTicks = doorDwellTicks;
+        this.floorsTravelled = floorsTravelled;
+        this.dwellTicks = dwellTicks;
+        this.policy = policy;
+        this.words = words;
+        this.pressedAt = pressedAt;
+    }
+
+    /** Copies the controller's state; call on the thread running tick(). */
+    static Checkpoint of(Controller c, Elevator cab, Scheduler s, int dwellTicks) {
+        if ((long) cab.maxFloor - cab.minFloor + 1 > MAX_FLOORS)
+            throw new IllegalStateException("building too tall to checkpoint: over " + MAX_FLOORS + " floors");
+        long[][] words = new long[CLASSES.length][];
+        long[][] pressedAt = new long[CLASSES.length][];
+        for (int k = 0; k < CLASSES.length; k++) {
+            FloorBitSet pending = s.requests(CLASSES[k]);
+            words[k] = pending.words.clone();
+            long[] stamps = new long[pending.size()];
+            int n = 0;
+            for (int f = pending.first(); f != FloorBitSet.NONE; f = pending.higher(f))
+                stamps[n++] = s.pressedAt(CLASSES[k], f);
+            pressedAt[k] = stamps;
+        }
+        return new Checkpoint(cab.minFloor, cab.maxFloor, c.now(), cab.currentFloor, cab.direction, cab.doorOpen,
+                cab.doorDwellTicks, cab.floorsTravelled, dwellTicks, c.policy().toString(), words, pressedAt);
+    }
+
+    /** Ticks run when the checkpoint was taken. */
+    public long tick() {
+        return now;
+    }
+
+    /** Pending requests of every class. */
+    public int pendingCount() {
+        int n = 0;
+        for (long[] stamps : pressedAt)
+            n += stamps.length;
+        return n;
+    }
+
+    /**
+     * A new controller in the checkpointed state, with the built-in policy it was
+     * using. It does not park; call parkBy to resume parking.
+     */
+    public Controller restore() {
+        return restore(DispatchPolicy.forName(policy));
+    }
+
+    /** Like {@link #restore()}, for controllers that ran a custom policy. */
+    public Controller restore(DispatchPolicy with) {
+        Elevator cab = new Elevator(minFloor, maxFloor, floor);
+        cab.direction = direction;
+        cab.doorOpen = doorOpen;
+        cab.doorDwellTicks = doorDwellTicks;
+        cab.floorsTravelled = floorsTravelled;
+        Scheduler s = new Scheduler(minFloor, maxFloor);
+        for (int k = 0; k < CLASSES.length; k++) {
+            FloorBitSet pending = FloorBitSet.copyOf(minFloor, maxFloor, words[k], 0);
+            int n = 0;
+            for (int f = pending.first(); f != FloorBitSet.NONE; f = pending.higher(f)) {
+                s.setClock(pressedAt[k][n++]); // submit stamps with the clock
+                if (CLASSES[k] == Direction.IDLE)
+                    s.submitCarCall(f);
+                else
+                    s.submitHallCall(f, CLASSES[k]);
+            }
+        }
+        Controller c = new Controller(cab, s, dwellTicks, with);
+        c.resume(now);
+        return c;
+    }
+
+    /** The encoded checkpoint; safe to call from any thread. */
+    public byte[] toBytes() {
+        byte[] name = policy.getBytes(StandardCharsets.US_ASCII);
+        if (name.length > MAX_POLICY_BYTES)
+            name = java.util.Arrays.copyOf(name, MAX_POLICY_BYTES);
+        int size = 4 + 2 + 1 + 1 + 4 * 5 + 8 * 2 + 1 + name.length;
+        int[] used = new int[CLASSES.length];
+        for (int k = 0; k < CLASSES.length; k++) {
+            used[k] = usedWords(words[k]);
+            size += varintSize(used[k]) + 8 * used[k];
+            for (long stamp : pressedAt[k])
+                size += varintSize(now - stamp);
+        }
+        ByteBuffer b = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC).putShort(FORMAT);
+        b.put((byte) direction.ordinal()).put((byte) (doorOpen ? 1 : 0));
+        b.putInt(minFloor).putInt(maxFloor).putInt(floor).putInt(doorDwellTicks).putInt(dwellTicks);
+        b.putLong(now).putLong(floorsTravelled);
+        b.put((byte) name.length).put(name);
+        for (int k = 0; k < CLASSES.length; k++) {
+            putVarint(b, used[k]);
+            for (int w = 0; w < used[k]; w++)
+                b.putLong(words[k][w]);
+        }
+        for (int k = 0; k < CLASSES.length; k++)
+            for (long stamp : pressedAt[k])
+                putVarint(b, now - stamp);
+        return b.array();
+    }
+
+    /** Decodes {@link #toBytes()}; throws IllegalArgumentException on anything malformed. */
+    public static Checkpoint fromBytes(byte[] bytes) {
+        ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (b.getInt() != MAGIC)
+                throw new IllegalArgumentException("not a checkpoint");
+            short format = b.getShort();
+            if (format != FORMAT)
+                throw new IllegalArgumentException("unsupported checkpoint format " + format);
+            int dir = b.get(), open = b.get();
+            int minFloor = b.getInt(), maxFloor = b.getInt(), floor = b.getInt();
+            int doorDwellTicks = b.getInt(), dwellTicks = b.getInt();
+            long now = b.getLong(), floorsTravelled = b.getLong();
+            byte[] name = new byte[b.get() & 0xFF];
+            b.get(name);
+            if (dir < 0 || dir >= DIRECTIONS.length || (open & ~1) != 0 || minFloor > maxFloor || floor < minFloor
+                    || floor > maxFloor || doorDwellTicks < 0 || dwellTicks < 0 || floorsTravelled < 0)
+                throw new IllegalArgumentException("corrupt checkpoint header");
+            // Checked before anything is sized by the floor range.
+            if ((long) maxFloor - minFloor + 1 > MAX_FLOORS)
+                throw new IllegalArgumentException("building too tall: " + minFloor + ".." + maxFloor);
+
+            int wordCount = new FloorBitSet(minFloor, maxFloor).words.length;
+            long[][] words = new long[CLASSES.length][];
+            long[][] pressedAt = new long[CLASSES.length][];
+            for (int k = 0; k < CLASSES.length; k++) {
+                long used = getVarint(b);
+                if (used > wordCount)
+                    throw new IllegalArgumentException("request bitmap wider than the building");
+                if (used * 8 > b.remaining())
+                    throw new IllegalArgumentException("truncated checkpoint");
+                words[k] = new long[wordCount];
+                for (int w = 0; w < used; w++)
+                    words[k][w] = b.getLong();
+                int bits = (int) ((long) maxFloor - minFloor + 1);
+                if (used == wordCount && (bits & 63) != 0 && words[k][wordCount - 1] >>> (bits & 63) != 0)
+                    throw new IllegalArgumentException("request above the top floor");
+                int pending = 0;
+                for (long w : words[k])
+                    pending += Long.bitCount(w);
+                if (pending > b.remaining()) // each press has at least a one-byte age
+                    throw new IllegalArgumentException("truncated checkpoint");
+                pressedAt[k] = new long[pending];
+            }
+            for (int k = 0; k < CLASSES.length; k++)
+                for (int n = 0; n < pressedAt[k].length; n++)
+                    pressedAt[k][n] = now - getVarint(b);
+            if (b.hasRemaining())
+                throw new IllegalArgumentException("trailing bytes after checkpoint");
+            return new Checkpoint(minFloor, maxFloor, now, floor, DIRECTIONS[dir], open == 1, doorDwellTicks,
+                    floorsTravelled, dwellTicks, new String(name, StandardCharsets.US_ASCII), words, pressedAt);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated checkpoint", e);
+        }
+    }
+
+    /**
+     * Writes the checkpoint to {@code file}, replacing it atomically so a crash
+     * mid-write leaves the previous checkpoint intact.
+     */
+    public void write(Path file) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, toBytes());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Checkpoint read(Path file) {
+        try {
+            return fromBytes(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int usedWords(long[] w) {
+        int n = w.length;
+        while (n > 0 && w[n - 1] == 0)
+            n--;
+        return n;
+    }
+
+    private static int varintSize(long v) {
+        int n = 1;
+        while ((v >>>= 7) != 0)
+            n++;
+        return n;
+    }
+
+    private static void putVarint(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) (v | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    private static long getVarint(ByteBuffer b) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0)
+                return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Checkpoint[tick=%d floor=%d dir=%s door=%s pending=%d policy=%s]", now, floor,
+                direction, doorOpen ? "OPEN" : "CLOSED", pendingCount(), policy);
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time source for the RealTimeDriver, so tests can run it on a ManualClock
+ * instead of the wall clock.
+ */
+public interface Clock {
+    /** Monotonic time in nanoseconds; only differences are meaningful. */
+    long nanoTime();
+
+    /** Blocks until nanoTime() reaches {@code deadline}; returns at once if it has passed. */
+    void sleepUntil(long deadline) throws InterruptedException;
+
+    /** System.nanoTime(), sleeping by parking the thread. */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepUntil(long deadline) throws InterruptedException {
+            for (long left; (left = deadline - System.nanoTime()) > 0;) {
+                LockSupport.parkNanos(left);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SYSTEM";
+        }
+    };
+}
@@ -2,11 +2,58 @@ public final class Controller {
     private final Elevator cab;
     private final Scheduler scheduler;
     private final int dwellTicks; // how long to keep doors open when stopping
+    private final DispatchPolicy policy; // when to stop and which way to go
+    private final RequestInbox inbox; // presses from other threads, drained each tick; null in a fork
+    private EtaPlanner etas; // cached route for ETA queries, built on first use
+    private volatile StateListener[] listeners = {}; // copy-on-write; iterating allocates nothing
+    private long now; // ticks run so far; requests are stamped with it
+    private final TickCounters counters; // what each tick decided
+    private long doorsOpenedAt = -1; // for DoorCycle events; -1 if unknown
+    private DemandModel parking; // where to wait with nothing to do; null to stay put
+    private int parkRank; // which of the model's hot floors to wait at; -1 for none
 
     public Controller(Elevator cab, Scheduler scheduler, int dwellTicks) {
+        this(cab, scheduler, dwellTicks, new LookPolicy());
+    }
+
+    public Controller(Elevator cab, Scheduler scheduler, int dwellTicks, DispatchPolicy policy) {
+        if (policy == null)
+            throw new IllegalArgumentException("policy is required");
         this.cab = cab;
         this.scheduler = scheduler;
         this.dwellTicks = Math.max(1, dwellTicks);
+        this.policy = policy;
+        this.inbox = new RequestInbox(scheduler.minFloor(), scheduler.maxFloor());
+        this.counters = new TickCounters(cab.minFloor, cab.maxFloor);
+        scheduler.setListener(this::publish);
+    }
+
+    private Controller(Controller from) {
+        this.cab = from.cab.copy();
+        this.scheduler = from.scheduler.fork();
+        this.dwellTicks = from.dwellTicks;
+        this.policy = from.policy;
+        this.inbox = null;
+        this.now = from.now;
+        this.counters = new TickCounters(cab.minFloor, cab.maxFloor);
+        this.doorsOpenedAt = from.doorsOpenedAt;
+        this.parking = from.parking;
+        this.parkRank = from.parkRank;
+        scheduler.setListener(this::publish);
+    }
+
+    /**
+     * A what-if copy of this controller in O(1): same cab, clock, policy and
+     * pending requests, with the request bitmaps and press times shared until
+     * either side changes them. Run it forward with tick() or a SimulationEngine,
+     * submit calls to it directly, and throw it away; the live controller never
+     * sees it. A fork has no listeners and no inbox, ignores presses still in
+     * this controller's inbox, and records its own stats and counters from the
+     * fork on.
+     * Call on the thread running tick().
+     */
+    public Controller fork() {
+        return new Controller(this);
     }
 
     public void submitHallCall(int floor, Direction dir) {
@@ -17,52 +64,342 @@ public final class Controller {
         scheduler.submitCarCall(floor);
     }
 
+    /**
+     * Thread-safe entry point for hall buttons, cab panels and other threads. Calls
+     * land in the Scheduler at the start of the next tick.
+     */
+    public RequestInbox inbox() {
+        if (inbox == null)
+            throw new IllegalStateException("a fork has no inbox; submit calls to it directly");
+        return inbox;
+    }
+
+    /**
+     * Subscribes to state changes: cab moves, turns and doors, and requests added
+     * or cleared. Listeners run on the thread calling tick() and must not block.
+     */
+    public synchronized void addListener(StateListener l) {
+        StateListener[] next = java.util.Arrays.copyOf(listeners, listeners.length + 1);
+        next[next.length - 1] = l;
+        listeners = next;
+    }
+
+    public synchronized void removeListener(StateListener l) {
+        StateListener[] cur = listeners;
+        for (int i = 0; i < cur.length; i++) {
+            if (cur[i] == l) {
+                StateListener[] next = new StateListener[cur.length - 1];
+                System.arraycopy(cur, 0, next, 0, i);
+                System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+                listeners = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parks the car, whenever it has nothing to do, at the floor {@code model}
+     * expects the next hall call from, and teaches the model from this car's hall
+     * calls. Pass null to stay put instead. Call on the thread running tick().
+     *
+     * Parking moves depend on everything the model has learned, which neither a
+     * Journal nor a Checkpoint records: a parked controller cannot be journalled,
+     * and one restored from a checkpoint stays put until parkBy is called again.
+     */
+    public void parkBy(DemandModel model) {
+        DemandModel old = parking;
+        parkBy(model, 0);
+        if (old != null)
+            removeListener(old);
+        if (model != null)
+            addListener(model);
+    }
+
+    /** Parks at the model's {@code rank}-th hottest floor; for a bank's cars, which learn elsewhere. */
+    void parkBy(DemandModel model, int rank) {
+        if (model != null && (model.minFloor != cab.minFloor || model.maxFloor != cab.maxFloor))
+            throw new IllegalArgumentException("model covers a different floor range");
+        if (model != null && journalled())
+            throw new IllegalStateException("a journal cannot replay parking moves");
+        this.parking = model;
+        this.parkRank = rank;
+    }
+
+    private boolean journalled() {
+        for (StateListener l : listeners)
+            if (l instanceof Journal)
+                return true;
+        return false;
+    }
+
+    /** The model parking this car, or null if it stays put. */
+    DemandModel parking() {
+        return parking;
+    }
+
+    private void publish(long tick, StateListener.Change change, int floor, Direction dir) {
+        for (StateListener l : listeners)
+            l.onChange(tick, change, floor, dir);
+    }
+
     /** Advance the simulation by one tick. */
     public void tick() {
+        // 0) Pick up anything pressed on other threads since the last tick, then
+        // advance the clock so anything cleared this tick is stamped after it.
+        if (inbox != null)
+            inbox.drainTo(scheduler);
+        scheduler.setClock(++now);
+
+        if (listeners.length == 0) {
+            step();
+            return;
+        }
+        int floor = cab.currentFloor;
+        Direction dir = cab.direction;
+        boolean open = cab.doorOpen;
+        step();
+        if (cab.direction != dir)
+            publish(now, StateListener.Change.DIRECTION_CHANGED, cab.currentFloor, cab.direction);
+        if (cab.currentFloor != floor)
+            publish(now, StateListener.Change.FLOOR_CHANGED, cab.currentFloor, cab.direction);
+        if (cab.doorOpen != open)
+            publish(now, cab.doorOpen ? StateListener.Change.DOOR_OPENED : StateListener.Change.DOOR_CLOSED,
+                    cab.currentFloor, cab.direction);
+    }
+
+    private void step() {
         // 1) Doors currently open? Decrement dwell and close when done.
         if (cab.doorOpen) {
             cab.doorDwellTicks--;
-            if (cab.doorDwellTicks <= 0)
-                cab.doorOpen = false; // doors close at end of dwell
+            if (cab.doorDwellTicks > 0) {
+                counters.record(TickCounters.Branch.DWELL);
+                return;
+            }
+            cab.doorOpen = false; // doors close at end of dwell
+            counters.record(TickCounters.Branch.DOORS_CLOSED);
+            ElevatorEvents.doorCycle(cab.currentFloor, doorsOpenedAt, now);
             return;
         }
 
-        // 2) Should we stop at the current floor?
-        if (scheduler.shouldStopHere(cab.currentFloor, cab.direction)) {
+        // 2) Should we stop at the current floor? Anchor the scheduler's cached
+        // neighbours here first; after a skip() this is the one place they rescan.
+        scheduler.anchorAt(cab.currentFloor);
+        if (policy.shouldStop(scheduler, cab.currentFloor, cab.direction)) {
             scheduler.clearAt(cab.currentFloor);
             openDoors();
+            counters.record(TickCounters.Branch.STOP);
+            counters.stopAt(cab.currentFloor);
+            ElevatorEvents.stop(now, cab.currentFloor, cab.direction, scheduler);
             return; // no movement this tick
         }
 
-        // 3) Decide direction & move.
-        if (cab.direction == Direction.IDLE) {
-            cab.direction = scheduler.pickFromIdle(cab.currentFloor);
+        // 3) Decide direction & move (IDLE: nowhere to go).
+        Direction before = cab.direction;
+        cab.direction = policy.nextDirection(scheduler, cab.currentFloor, before);
+        if (cab.direction == Direction.IDLE && parking != null && !scheduler.hasAnyRequests())
+            cab.direction = towardParking(now);
+        if (cab.direction == before) {
+            counters.record(before == Direction.IDLE ? TickCounters.Branch.IDLE : TickCounters.Branch.MOVE);
+        } else if (cab.direction == Direction.IDLE || before == Direction.IDLE) {
+            boolean resting = cab.direction == Direction.IDLE;
+            counters.record(resting ? TickCounters.Branch.GO_IDLE : TickCounters.Branch.START);
+            ElevatorEvents.idle(now, cab.currentFloor, resting, cab.direction);
+        } else {
+            counters.record(TickCounters.Branch.REVERSE);
+            ElevatorEvents.reversal(now, cab.currentFloor, cab.direction);
         }
+        if (cab.direction != Direction.IDLE)
+            cab.moveOneFloor(cab.direction);
+    }
 
-        if (cab.direction == Direction.UP || cab.direction == Direction.DOWN) {
-            // Continue in current direction if anything is ahead.
-            if (scheduler.hasAhead(cab.currentFloor, cab.direction)) {
-                cab.moveOneFloor(cab.direction);
-            } else if (scheduler.hasBehind(cab.currentFloor, cab.direction)) {
-                // Nothing ahead; reverse if work exists behind.
-                cab.direction = (cab.direction == Direction.UP) ? Direction.DOWN : Direction.UP;
-                cab.moveOneFloor(cab.direction);
-            } else {
-                // Nowhere to go.
-                cab.direction = Direction.IDLE;
-            }
+    /**
+     * How many upcoming ticks are uneventful: they only count down the dwell, or
+     * move the cab toward its next stop or turnaround. Integer.MAX_VALUE when the
+     * cab is idle with nothing to do, so every tick is a no-op until a new request.
+     */
+    int quietTicks() {
+        if (cab.doorOpen)
+            return cab.doorDwellTicks - 1; // the last dwell tick closes the doors
+        if (parking != null && !scheduler.hasAnyRequests()) {
+            // At rest where the model wants the car, nothing happens until its
+            // prediction can next change; travelling to park steps every tick.
+            if (cab.direction != Direction.IDLE || towardParking(now + 1) != Direction.IDLE)
+                return 0;
+            return (int) Math.min(Integer.MAX_VALUE, parking.steadyThrough(now + 1) - now);
         }
+        if (cab.direction == Direction.IDLE)
+            return scheduler.hasAnyRequests() ? 0 : Integer.MAX_VALUE;
+        return policy.quietFloors(scheduler, cab.currentFloor, cab.direction);
+    }
+
+    /** Applies n uneventful ticks at once; n must not exceed {@link #quietTicks()}. */
+    void skip(int n) {
+        if (n <= 0)
+            return;
+        now += n;
+        scheduler.setClock(now);
+        if (cab.doorOpen) {
+            cab.doorDwellTicks -= n;
+            counters.record(TickCounters.Branch.DWELL, n);
+        } else if (cab.direction == Direction.IDLE) {
+            counters.record(TickCounters.Branch.IDLE, n);
+        } else if (cab.direction == Direction.UP) {
+            cab.currentFloor += n;
+            cab.floorsTravelled += n;
+            counters.record(TickCounters.Branch.MOVE, n);
+            publish(now, StateListener.Change.FLOOR_CHANGED, cab.currentFloor, cab.direction);
+        } else if (cab.direction == Direction.DOWN) {
+            cab.currentFloor -= n;
+            cab.floorsTravelled += n;
+            counters.record(TickCounters.Branch.MOVE, n);
+            publish(now, StateListener.Change.FLOOR_CHANGED, cab.currentFloor, cab.direction);
+        }
+    }
+
+    /**
+     * Ticks until the doors open to serve a hall call at {@code floor} going
+     * {@code dir}: the pending call's ETA, or, if none is pending, the ETA it would
+     * get if pressed now. Assumes no further presses; -1 if the policy would never
+     * serve it. Call from the tick thread.
+     */
+    public long eta(int floor, Direction dir) {
+        validate(floor);
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        return etas().eta(floor, dir, now);
+    }
+
+    /** Like {@link #eta} for a car call to {@code floor}. */
+    public long carCallEta(int floor) {
+        validate(floor);
+        return etas().eta(floor, Direction.IDLE, now);
+    }
+
+    /** The ETA of every pending request, hall calls first, each by floor. */
+    public java.util.List<Eta> pendingEtas() {
+        java.util.List<Eta> out = new java.util.ArrayList<>();
+        for (Direction cls : new Direction[] { Direction.UP, Direction.DOWN, Direction.IDLE }) {
+            FloorBitSet pending = scheduler.requests(cls);
+            for (int f = pending.first(); f != FloorBitSet.NONE; f = pending.higher(f))
+                out.add(new Eta(f, cls, etas().eta(f, cls, now)));
+        }
+        return out;
+    }
+
+    private EtaPlanner etas() {
+        if (etas == null)
+            etas = new EtaPlanner(cab, scheduler, policy, dwellTicks);
+        return etas;
+    }
+
+    private void validate(int floor) {
+        if (floor < cab.minFloor || floor > cab.maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+    }
+
+    public DispatchPolicy policy() {
+        return policy;
+    }
+
+    Elevator cab() {
+        return cab;
+    }
+
+    Scheduler scheduler() {
+        return scheduler;
+    }
+
+    int dwellTicks() {
+        return dwellTicks;
+    }
+
+    /**
+     * A consistent copy of the cab, clock and pending requests, taken between
+     * ticks. Call on the thread running tick(); encode and write the copy from any
+     * thread.
+     */
+    public Checkpoint checkpoint() {
+        return Checkpoint.of(this, cab, scheduler, dwellTicks);
+    }
+
+    /** Sets the clock of a controller rebuilt by Checkpoint.restore(). */
+    void resume(long now) {
+        this.now = now;
+        scheduler.setClock(now);
+    }
+
+    /** What each tick so far decided, and the stops made at each floor. */
+    public TickCounters counters() {
+        return counters;
+    }
+
+    /** Ticks run so far, including skipped ones. */
+    public long now() {
+        return now;
+    }
+
+    /** Which way to head, with nothing to do at {@code tick}, to park. */
+    private Direction towardParking(long tick) {
+        if (parkRank < 0)
+            return Direction.IDLE;
+        int target = parking.predictedFloor(tick, parkRank);
+        if (target == FloorBitSet.NONE || target == cab.currentFloor)
+            return Direction.IDLE;
+        return target > cab.currentFloor ? Direction.UP : Direction.DOWN;
     }
 
     private void openDoors() {
+        doorsOpenedAt = now;
         cab.doorOpen = true;
         cab.doorDwellTicks = dwellTicks;
     }
 
-    // For demo/logging
+    /**
+     * For demo/logging: an immutable picture that stays as it was when taken.
+     * The request bitmaps are forked copy-on-write, so taking one copies nothing,
+     * but the next change to each request class after it pays for one bitmap copy
+     * on the tick thread, and the picture itself allocates a few objects. Anything
+     * polling every tick should use {@link #snapshot(SnapshotBuffer)} instead.
+     * Call on the thread running tick().
+     */
     public Snapshot snapshot() {
         return new Snapshot(cab.currentFloor, cab.direction, cab.doorOpen,
-                scheduler.viewUpHall(), scheduler.viewDownHall(), scheduler.viewCarStops());
+                scheduler.requests(Direction.UP).fork().view(), scheduler.requests(Direction.DOWN).fork().view(),
+                scheduler.requests(Direction.IDLE).fork().view());
+    }
+
+    /**
+     * Fills a caller-owned buffer with the current state, allocating nothing. Call
+     * on the thread running tick().
+     */
+    public SnapshotBuffer snapshot(SnapshotBuffer into) {
+        if (into.minFloor != cab.minFloor || into.maxFloor != cab.maxFloor)
+            throw new IllegalArgumentException("buffer covers a different floor range");
+        into.tick = now;
+        into.floor = cab.currentFloor;
+        into.direction = cab.direction;
+        into.doorOpen = cab.doorOpen;
+        into.doorDwellTicks = cab.doorDwellTicks;
+        scheduler.copyRequestsTo(into.up, into.down, into.car);
+        return into;
+    }
+
+    /** A pending request and its ETA in ticks (-1 if it would never be served). */
+    public static final class Eta {
+        public final int floor;
+        public final Direction direction; // UP or DOWN for a hall call, IDLE for a car call
+        public final long ticks;
+
+        Eta(int floor, Direction direction, long ticks) {
+            this.floor = floor;
+            this.direction = direction;
+            this.ticks = ticks;
+        }
+
+        @Override
+        public String toString() {
+            return (direction == Direction.IDLE ? "car " : direction + " ") + floor + " in " + ticks;
+        }
     }
 
     public static final class Snapshot {
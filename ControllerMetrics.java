@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Sums the TickCounters of one or more controllers and exports the totals over
+ * JMX, e.g.
+ *
+ *   ControllerMetrics m = ControllerMetrics.of(group);
+ *   m.register("elevator:type=Bank,name=lobby");
+ *
+ * Each controller's counters are a stripe only its tick thread writes, so the
+ * tick path never contends; reads walk the stripes, which is cheap at the rates
+ * a JMX console polls. Totals taken while cars tick are not an atomic cut across
+ * cars, but each stripe's counts only grow.
+ */
+public final class ControllerMetrics implements ControllerMetricsMBean {
+    private final TickCounters[] stripes;
+    private final int minFloor, maxFloor;
+    private ObjectName registered;
+
+    private ControllerMetrics(TickCounters[] stripes) {
+        if (stripes.length == 0)
+            throw new IllegalArgumentException("at least one controller is required");
+        this.stripes = stripes;
+        this.minFloor = stripes[0].minFloor;
+        this.maxFloor = stripes[0].maxFloor;
+        for (TickCounters s : stripes)
+            if (s.minFloor != minFloor || s.maxFloor != maxFloor)
+                throw new IllegalArgumentException("all controllers must serve the same floors");
+    }
+
+    public static ControllerMetrics of(Controller... controllers) {
+        TickCounters[] s = new TickCounters[controllers.length];
+        for (int i = 0; i < s.length; i++)
+            s[i] = controllers[i].counters();
+        return new ControllerMetrics(s);
+    }
+
+    public static ControllerMetrics of(GroupController group) {
+        TickCounters[] s = new TickCounters[group.size()];
+        for (int i = 0; i < s.length; i++)
+            s[i] = group.counters(i);
+        return new ControllerMetrics(s);
+    }
+
+    /** Registers with the platform MBean server under {@code name}. */
+    public synchronized ControllerMetrics register(String name) {
+        if (registered != null)
+            throw new IllegalStateException("already registered as " + registered);
+        try {
+            ObjectName on = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            registered = on;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("cannot register " + name, e);
+        }
+        return this;
+    }
+
+    /** Removes this from the platform MBean server, if registered. */
+    public synchronized void unregister() {
+        if (registered == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(registered))
+                server.unregisterMBean(registered);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister " + registered, e);
+        } finally {
+            registered = null;
+        }
+    }
+
+    public long count(TickCounters.Branch b) {
+        long n = 0;
+        for (TickCounters s : stripes)
+            n += s.count(b);
+        return n;
+    }
+
+    public long stopsAt(int floor) {
+        long n = 0;
+        for (TickCounters s : stripes)
+            n += s.stopsAt(floor);
+        return n;
+    }
+
+    @Override
+    public int getControllers() {
+        return stripes.length;
+    }
+
+    @Override
+    public long getTicks() {
+        long n = 0;
+        for (TickCounters s : stripes)
+            n += s.ticks();
+        return n;
+    }
+
+    @Override
+    public long getDwellTicks() {
+        return count(TickCounters.Branch.DWELL);
+    }
+
+    @Override
+    public long getDoorCloses() {
+        return count(TickCounters.Branch.DOORS_CLOSED);
+    }
+
+    @Override
+    public long getStops() {
+        return count(TickCounters.Branch.STOP);
+    }
+
+    @Override
+    public long getMoves() {
+        return count(TickCounters.Branch.MOVE);
+    }
+
+    @Override
+    public long getStarts() {
+        return count(TickCounters.Branch.START);
+    }
+
+    @Override
+    public long getReversals() {
+        return count(TickCounters.Branch.REVERSE);
+    }
+
+    @Override
+    public long getIdleTransitions() {
+        return count(TickCounters.Branch.GO_IDLE);
+    }
+
+    @Override
+    public long getIdleTicks() {
+        return count(TickCounters.Branch.IDLE);
+    }
+
+    @Override
+    public int getMinFloor() {
+        return minFloor;
+    }
+
+    @Override
+    public long[] getStopsPerFloor() {
+        long[] out = new long[maxFloor - minFloor + 1];
+        for (int f = minFloor; f <= maxFloor; f++)
+            out[f - minFloor] = stopsAt(f);
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (TickCounters.Branch b : TickCounters.BRANCHES)
+            sb.append(sb.length() == 0 ? "" : " ").append(b).append('=').append(count(b));
+        return sb.toString();
+    }
+}
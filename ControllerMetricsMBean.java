@@ -0,0 +1,30 @@
+/**
+ * The JMX view of a ControllerMetrics: tick-branch totals summed over every
+ * controller it covers. Branch names are those of TickCounters.Branch.
+ */
+public interface ControllerMetricsMBean {
+    int getControllers();
+
+    long getTicks();
+
+    long getDwellTicks();
+
+    long getDoorCloses();
+
+    long getStops();
+
+    long getMoves();
+
+    long getStarts();
+
+    long getReversals();
+
+    long getIdleTransitions();
+
+    long getIdleTicks();
+
+    int getMinFloor();
+
+    /** Stops per floor, index 0 being getMinFloor(). */
+    long[] getStopsPerFloor();
+}
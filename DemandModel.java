@@ -0,0 +1,253 @@
+import java.util.Arrays;
+
+/**
+ * Online model of where hall calls come from, for parking idle cars where the
+ * next one is likely. Feed it hall calls, as a StateListener or through
+ * {@link #record}, and ask it for the hottest floors at a given tick.
+ *
+ * Time is folded onto a ring of {@code buckets} time-of-day buckets of
+ * {@code bucketTicks} each, so one lap is a "day". Each bucket keeps a score per
+ * floor and direction: every call adds a weight that grows as 2^(t / halfLife),
+ * which is the same as decaying every older call by half each {@code halfLife}
+ * ticks without ever touching it. A bucket's score so mixes today's calls with
+ * the same time on earlier days, recent ones counting most.
+ *
+ * Because older weights never change, the order of the floors within a bucket
+ * changes only when a call lands, so each bucket keeps its top floors up to
+ * date as calls arrive. Recording and querying are O(topK) with no allocation;
+ * about every 800 half-lives the weights are rescaled in one pass to stay in
+ * range.
+ *
+ * A query at tick t answers for the bucket holding t + {@code leadTicks}, so a
+ * car sets off before the demand it is waiting for.
+ *
+ * {@link #fixed} gives a model that always answers one floor and learns nothing,
+ * for parking at a chosen home floor.
+ */
+public final class DemandModel implements StateListener {
+    private static final double MAX_EXPONENT = 800; // 2^800 is well inside double range
+
+    final int minFloor, maxFloor;
+    private final int floors;
+    private final long bucketTicks, leadTicks;
+    private final int buckets, topK;
+    private final double halfLifeTicks;
+    private final double[] score; // [(bucket * 2 + UP/DOWN) * floors + floor - minFloor]
+    private final int[] top; // [bucket * topK + rank]: floor offset, or -1
+    private final double[] topScore; // both directions summed, matching top
+    private long base; // tick at which a call weighs 1
+    private long calls;
+    private boolean frozen; // fixed(): ignores further calls
+
+    public DemandModel(int minFloor, int maxFloor, long bucketTicks, int buckets, long halfLifeTicks, long leadTicks,
+            int topK) {
+        if (minFloor > maxFloor)
+            throw new IllegalArgumentException("min > max");
+        if (bucketTicks < 1 || buckets < 1 || halfLifeTicks < 1 || leadTicks < 0 || topK < 1)
+            throw new IllegalArgumentException("bucket size, count, half-life and top count must be positive");
+        long cells = ((long) maxFloor - minFloor + 1) * 2 * buckets;
+        if (cells > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("model too large: " + cells + " cells");
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.floors = maxFloor - minFloor + 1;
+        this.bucketTicks = bucketTicks;
+        this.buckets = buckets;
+        this.halfLifeTicks = halfLifeTicks;
+        this.leadTicks = leadTicks;
+        this.topK = topK;
+        this.score = new double[(int) cells];
+        this.top = new int[buckets * topK];
+        this.topScore = new double[buckets * topK];
+        Arrays.fill(top, -1);
+    }
+
+    /** A model that always predicts {@code floor} and ignores the calls it is fed. */
+    public static DemandModel fixed(int minFloor, int maxFloor, int floor) {
+        DemandModel m = new DemandModel(minFloor, maxFloor, Long.MAX_VALUE / 2, 1, 1, 0, 1);
+        m.record(0, floor, Direction.UP);
+        m.calls = 0;
+        m.frozen = true;
+        return m;
+    }
+
+    @Override
+    public void onChange(long tick, Change change, int floor, Direction dir) {
+        if (change == Change.REQUEST_ADDED && dir != Direction.IDLE)
+            record(tick, floor, dir);
+    }
+
+    /** A hall call pressed at {@code tick}; ticks must not run backwards by more than a half-life or so. */
+    public void record(long tick, int floor, Direction dir) {
+        if (floor < minFloor || floor > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        if (frozen)
+            return;
+        double exponent = (tick - base) / halfLifeTicks;
+        if (exponent > MAX_EXPONENT) {
+            rescale(tick);
+            exponent = 0;
+        }
+        int b = bucketOf(tick);
+        int k = floor - minFloor;
+        int cell = (b * 2 + (dir == Direction.UP ? 0 : 1)) * floors + k;
+        score[cell] += Math.pow(2, exponent);
+        promote(b, k, score[(b * 2) * floors + k] + score[(b * 2 + 1) * floors + k]);
+        calls++;
+    }
+
+    /** Moves floor offset {@code k}, now scoring {@code s}, up bucket {@code b}'s top list. */
+    private void promote(int b, int k, double s) {
+        int from = b * topK, i = from + topK - 1;
+        for (int j = from; j < from + topK; j++) {
+            if (top[j] == k) {
+                i = j;
+                break;
+            }
+        }
+        if (top[i] != k && top[i] != -1 && topScore[i] >= s)
+            return; // not in the list and not above its last entry
+        for (; i > from && (top[i - 1] == -1 || topScore[i - 1] < s); i--) {
+            top[i] = top[i - 1];
+            topScore[i] = topScore[i - 1];
+        }
+        top[i] = k;
+        topScore[i] = s;
+    }
+
+    /** Moves the base to {@code tick}, shrinking every score alike; the order of floors is unchanged. */
+    private void rescale(long tick) {
+        double f = Math.pow(2, -(tick - base) / halfLifeTicks);
+        for (int i = 0; i < score.length; i++)
+            score[i] *= f;
+        for (int i = 0; i < topScore.length; i++)
+            topScore[i] *= f;
+        base = tick;
+    }
+
+    private int bucketOf(long tick) {
+        return (int) Math.floorMod(Math.floorDiv(tick, bucketTicks), (long) buckets);
+    }
+
+    /**
+     * The {@code rank}-th hottest floor (0 hottest) for the bucket holding tick +
+     * leadTicks, or FloorBitSet.NONE if fewer floors have seen calls then.
+     */
+    public int predictedFloor(long tick, int rank) {
+        if (rank < 0 || rank >= topK)
+            return FloorBitSet.NONE;
+        int k = top[bucketOf(tick + leadTicks) * topK + rank];
+        return k < 0 ? FloorBitSet.NONE : minFloor + k;
+    }
+
+    /**
+     * The last tick whose prediction is certain to match {@code tick}'s, unless
+     * another call is recorded first.
+     */
+    public long steadyThrough(long tick) {
+        long t = tick + leadTicks;
+        return (Math.floorDiv(t, bucketTicks) + 1) * bucketTicks - 1 - leadTicks;
+    }
+
+    /**
+     * Decayed score of hall calls at {@code floor} going {@code dir} in the bucket
+     * holding {@code tick}, as seen at {@code tick}: a call just recorded scores 1,
+     * one a half-life earlier 0.5.
+     */
+    public double score(long tick, int floor, Direction dir) {
+        if (floor < minFloor || floor > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+        int cell = (bucketOf(tick) * 2 + (dir == Direction.UP ? 0 : 1)) * floors + floor - minFloor;
+        return score[cell] * Math.pow(2, -(tick - base) / halfLifeTicks);
+    }
+
+    /** Hall calls recorded so far; always 0 for a fixed model. */
+    public long calls() {
+        return calls;
+    }
+
+    /**
+     * Simulates a few days of office traffic with one car, parked where it stops
+     * and then parked by a DemandModel, and compares the waits after the first day.
+     *
+     * Usage: java DemandModel [floors] [days] [seed]
+     */
+    public static void main(String[] args) {
+        int floors = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        for (boolean parked : new boolean[] { false, true }) {
+            Elevator cab = new Elevator(0, floors - 1, 0);
+            Controller c = new Controller(cab, new Scheduler(0, floors - 1), 3);
+            if (parked)
+                c.parkBy(new DemandModel(0, floors - 1, DailyTraffic.DAY / 48, 48, 2 * DailyTraffic.DAY,
+                        DailyTraffic.DAY / 96, 1));
+            TrafficSimulation sim = new TrafficSimulation(c, cab, new DailyTraffic(0, floors - 1, days, seed));
+            sim.run(DailyTraffic.DAY);
+            sim.waitTimes().reset(); // the first day teaches the model
+            sim.run(days * DailyTraffic.DAY);
+            LatencyHistogram w = sim.waitTimes();
+            System.out.printf("%-10s %d trips, wait p50=%d p90=%d p99=%d mean=%.1f, %d floors travelled%n",
+                    parked ? "predicted" : "stay put", w.count(), w.percentile(50), w.percentile(90),
+                    w.percentile(99), w.mean(), cab.floorsTravelled);
+        }
+    }
+
+    /**
+     * A working day, repeated: a quiet night, the morning up-peak, interfloor
+     * traffic, lunch, more interfloor traffic and the evening down-peak.
+     */
+    static final class DailyTraffic implements TrafficSource {
+        static final long DAY = 86_400; // one tick per second
+        private static final TrafficGenerator.Pattern[] PHASES = { TrafficGenerator.Pattern.INTERFLOOR,
+                TrafficGenerator.Pattern.UP_PEAK, TrafficGenerator.Pattern.INTERFLOOR, TrafficGenerator.Pattern.LUNCH,
+                TrafficGenerator.Pattern.INTERFLOOR, TrafficGenerator.Pattern.DOWN_PEAK,
+                TrafficGenerator.Pattern.INTERFLOOR };
+        private static final long[] STARTS = { 0, 8 * 3600, 10 * 3600, 12 * 3600, 14 * 3600, 17 * 3600, 19 * 3600 };
+        private static final double[] RATES = { 0.0005, 0.02, 0.004, 0.01, 0.004, 0.02, 0.001 };
+
+        private final int minFloor, maxFloor, days;
+        private final long seed;
+        private int phase = -1; // over all days
+        private TrafficGenerator current;
+        private long offset;
+
+        DailyTraffic(int minFloor, int maxFloor, int days, long seed) {
+            this.minFloor = minFloor;
+            this.maxFloor = maxFloor;
+            this.days = days;
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean next() {
+            while (current == null || !current.next()) {
+                if (++phase == days * PHASES.length)
+                    return false;
+                int p = phase % PHASES.length;
+                long end = p + 1 < STARTS.length ? STARTS[p + 1] : DAY;
+                offset = phase / PHASES.length * DAY + STARTS[p];
+                current = new TrafficGenerator(PHASES[p], minFloor, maxFloor, RATES[p], end - STARTS[p],
+                        seed * 1_000 + phase);
+            }
+            return true;
+        }
+
+        @Override
+        public long time() {
+            return offset + current.time();
+        }
+
+        @Override
+        public int origin() {
+            return current.origin();
+        }
+
+        @Override
+        public int destination() {
+            return current.destination();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.List;
+
+/**
+ * Decides, for one car, when to stop and which way to travel next. Controller asks
+ * once per tick while the doors are closed: first {@link #shouldStop}, and if not
+ * stopping, {@link #nextDirection}. GroupController asks {@link #assignmentCost}
+ * to pick the car for a new hall call.
+ *
+ * Policies hold no per-car state; everything they need is in the Scheduler and
+ * the cab. With no pending requests an idle car must stay idle.
+ */
+public interface DispatchPolicy {
+    /** Open the doors at this floor now? Clearing the floor is the Controller's job. */
+    boolean shouldStop(Scheduler s, int floor, Direction dir);
+
+    /**
+     * Direction to move one floor in this tick, given the current one (IDLE when
+     * the car is at rest). Return IDLE to stay put.
+     */
+    Direction nextDirection(Scheduler s, int floor, Direction dir);
+
+    /**
+     * How many upcoming ticks, starting with this one, only move the car one floor
+     * in {@code dir} without stopping or turning, assuming no new requests arrive.
+     * SimulationEngine skips that many ticks at once; 0 makes it step every tick.
+     */
+    default int quietFloors(Scheduler s, int floor, Direction dir) {
+        return 0;
+    }
+
+    /** Estimated ticks for this car to answer a new hall call; lower wins. */
+    default long assignmentCost(Elevator cab, Scheduler s, int floor, Direction dir, int dwellTicks) {
+        return LookPolicy.sweepCost(cab, s, floor, dir, dwellTicks, s.highestRequest(), s.lowestRequest());
+    }
+
+    /** LOOK, SCAN, nearest-car and ETA-cost, in that order. */
+    static List<DispatchPolicy> builtIns() {
+        return List.of(new LookPolicy(), new ScanPolicy(), new NearestCarPolicy(), new EtaCostPolicy());
+    }
+
+    /** A built-in policy by name, ignoring case: LOOK, SCAN, NEAREST or ETA. */
+    static DispatchPolicy forName(String name) {
+        for (DispatchPolicy p : builtIns())
+            if (p.toString().equalsIgnoreCase(name))
+                return p;
+        throw new IllegalArgumentException("Unknown dispatch policy: " + name);
+    }
+}
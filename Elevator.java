@@ -6,6 +6,7 @@ public final class Elevator {
     Direction direction = Direction.IDLE;
     boolean doorOpen = false;
     int doorDwellTicks = 0; // counts down while doors are open
+    long floorsTravelled = 0; // odometer, for energy and efficiency studies
 
     public Elevator(int minFloor, int maxFloor, int startFloor) {
         if (minFloor > maxFloor)
@@ -17,6 +18,16 @@ public final class Elevator {
         this.currentFloor = startFloor;
     }
 
+    /** A copy with the same position, motion, doors and odometer. */
+    Elevator copy() {
+        Elevator e = new Elevator(minFloor, maxFloor, currentFloor);
+        e.direction = direction;
+        e.doorOpen = doorOpen;
+        e.doorDwellTicks = doorDwellTicks;
+        e.floorsTravelled = floorsTravelled;
+        return e;
+    }
+
     boolean atTop() {
         return currentFloor == maxFloor;
     }
@@ -26,9 +37,16 @@ public final class Elevator {
     }
 
     void moveOneFloor(Direction d) {
-        if (d == Direction.UP && !atTop())
+        if (d == Direction.UP && !atTop()) {
             currentFloor++;
-        else if (d == Direction.DOWN && !atBottom())
+            floorsTravelled++;
+        } else if (d == Direction.DOWN && !atBottom()) {
             currentFloor--;
+            floorsTravelled++;
+        }
+    }
+
+    public long floorsTravelled() {
+        return floorsTravelled;
     }
 }
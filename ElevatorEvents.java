@@ -0,0 +1,163 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Java Flight Recorder events for the decisions Controller.tick() makes. They
+ * cost nothing until a recording is running; any recording takes them, e.g.
+ *
+ *   java -XX:StartFlightRecording:filename=run.jfr ...
+ *   jfr print --categories Elevator run.jfr
+ *
+ * or a jdk.jfr.Recording that enables "elevator.Stop" and friends. Controller
+ * reports an event only where a decision is taken. While no recording is running
+ * that costs one flag check and allocates nothing: escape analysis cannot be
+ * relied on to drop an unused event object, so none is built until a recorder
+ * listener says a recording has started. Then each event is built, and filled in
+ * only if isEnabled().
+ *
+ * Fields are primitives and enum names (interned constants), so a committed
+ * event allocates only itself.
+ */
+final class ElevatorEvents {
+    private static volatile boolean recording; // any recording running
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                update(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording r) {
+                update(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    private ElevatorEvents() {
+    }
+
+    private static void update(FlightRecorder recorder) {
+        boolean running = false;
+        for (Recording r : recorder.getRecordings())
+            running |= r.getState() == RecordingState.RUNNING;
+        recording = running;
+    }
+
+    @Name("elevator.Stop")
+    @Label("Stop")
+    @Category("Elevator")
+    @Description("The car stopped and opened its doors to serve requests at a floor")
+    static final class Stop extends Event {
+        @Label("Tick")
+        long tick;
+        @Label("Floor")
+        int floor;
+        @Label("Direction")
+        String direction;
+        @Label("Pending Requests")
+        @Description("Requests still pending after this floor was cleared")
+        int pending;
+    }
+
+    @Name("elevator.DoorCycle")
+    @Label("Door Cycle")
+    @Category("Elevator")
+    @Description("Doors opened and closed again at a floor")
+    static final class DoorCycle extends Event {
+        @Label("Floor")
+        int floor;
+        @Label("Opened At Tick")
+        long openedAt;
+        @Label("Closed At Tick")
+        long closedAt;
+    }
+
+    @Name("elevator.Reversal")
+    @Label("Direction Reversal")
+    @Category("Elevator")
+    @Description("The car turned straight round with work left behind it")
+    static final class Reversal extends Event {
+        @Label("Tick")
+        long tick;
+        @Label("Floor")
+        int floor;
+        @Label("New Direction")
+        String direction;
+    }
+
+    @Name("elevator.Idle")
+    @Label("Idle Transition")
+    @Category("Elevator")
+    @Description("The car came to rest, or set off from rest")
+    static final class Idle extends Event {
+        @Label("Tick")
+        long tick;
+        @Label("Floor")
+        int floor;
+        @Label("Resting")
+        @Description("True when the car came to rest, false when it set off")
+        boolean resting;
+        @Label("Direction")
+        @Description("Direction set off in; IDLE when coming to rest")
+        String direction;
+    }
+
+    static void stop(long tick, int floor, Direction dir, Scheduler s) {
+        if (!recording)
+            return;
+        Stop e = new Stop();
+        if (e.isEnabled()) {
+            e.tick = tick;
+            e.floor = floor;
+            e.direction = dir.name();
+            e.pending = s.pendingCount();
+            e.commit();
+        }
+    }
+
+    static void doorCycle(int floor, long openedAt, long closedAt) {
+        if (!recording)
+            return;
+        DoorCycle e = new DoorCycle();
+        if (e.isEnabled()) {
+            e.floor = floor;
+            e.openedAt = openedAt;
+            e.closedAt = closedAt;
+            e.commit();
+        }
+    }
+
+    static void reversal(long tick, int floor, Direction dir) {
+        if (!recording)
+            return;
+        Reversal e = new Reversal();
+        if (e.isEnabled()) {
+            e.tick = tick;
+            e.floor = floor;
+            e.direction = dir.name();
+            e.commit();
+        }
+    }
+
+    static void idle(long tick, int floor, boolean resting, Direction dir) {
+        if (!recording)
+            return;
+        Idle e = new Idle();
+        if (e.isEnabled()) {
+            e.tick = tick;
+            e.floor = floor;
+            e.resting = resting;
+            e.direction = dir.name();
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TCP front end for one Controller. A single selector thread serves every
+ * connection, so thousands of clients cost a pair of buffers each, not a thread.
+ *
+ * The protocol is ASCII lines. Clients may pipeline any number of commands in
+ * one write; each gets a reply line, in order, and the replies to one read go
+ * out in one write.
+ *
+ *   H <floor> U|D   hall call              -> OK, or ERR <reason>
+ *   C <floor>       car call               -> OK, or ERR <reason>
+ *   SUB             stream state changes   -> OK, then E lines
+ *
+ * Calls go into the controller's RequestInbox and take effect at the next tick,
+ * on whatever thread runs it (usually a RealTimeDriver). State changes are
+ * handed from the tick thread to the selector through a single-producer ring
+ * and sent to subscribers as "E <tick> <change> <floor> <direction>". If the
+ * ring overflows, subscribers get "LOST <n>" in place of the missing changes.
+ * A subscriber that stops reading is disconnected once a megabyte is queued
+ * for it, so one slow client cannot hold up the rest.
+ */
+public final class ElevatorServer implements StateListener, AutoCloseable {
+    static final int MAX_LINE = 64;
+    static final int MAX_QUEUED_BYTES = 1 << 20;
+    private static final int RING = 1 << 16; // power of two
+    private static final StateListener.Change[] CHANGES = StateListener.Change.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final byte[][] CHANGE_NAMES = new byte[CHANGES.length][];
+    private static final byte[][] DIRECTION_NAMES = new byte[DIRECTIONS.length][];
+
+    static {
+        for (StateListener.Change c : CHANGES)
+            CHANGE_NAMES[c.ordinal()] = c.name().getBytes(StandardCharsets.US_ASCII);
+        for (Direction d : DIRECTIONS)
+            DIRECTION_NAMES[d.ordinal()] = d.name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final byte[] OK = "OK\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Controller controller;
+    private final int minFloor, maxFloor;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // State changes from the tick thread: it alone writes slots and head, the
+    // selector thread alone advances tail.
+    private final long[] ringTick = new long[RING];
+    private final int[] ringFloor = new int[RING];
+    private final byte[] ringCode = new byte[RING]; // change << 2 | direction
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private long lostReported;
+
+    private final List<Connection> subscribers = new ArrayList<>();
+    private final byte[] line = new byte[MAX_LINE + 64]; // an event line being formatted
+    private final AtomicLong calls = new AtomicLong(), errors = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong(), dropped = new AtomicLong();
+
+    /** One client: what it has sent but we have not parsed, and what we owe it. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        boolean subscribed;
+        boolean overflowed; // stopped reading replies; disconnect
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private ElevatorServer(Controller controller, Selector selector, ServerSocketChannel server) {
+        this.controller = controller;
+        this.minFloor = controller.cab().minFloor;
+        this.maxFloor = controller.cab().maxFloor;
+        this.selector = selector;
+        this.server = server;
+        this.thread = new Thread(this::loop, "elevator-net");
+        this.thread.setDaemon(true);
+    }
+
+    /** Binds to {@code address} (port 0 picks a free one) and starts serving. */
+    public static ElevatorServer start(Controller controller, InetSocketAddress address) {
+        try {
+            Selector selector = Selector.open();
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(address, 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            ElevatorServer s = new ElevatorServer(controller, selector, server);
+            controller.addListener(s);
+            s.thread.start();
+            return s;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    // ---- tick thread ----
+
+    @Override
+    public void onChange(long tick, StateListener.Change change, int floor, Direction dir) {
+        long h = head.get();
+        if (h - tail.get() >= RING) {
+            lost.incrementAndGet();
+        } else {
+            int i = (int) h & (RING - 1);
+            ringTick[i] = tick;
+            ringFloor[i] = floor;
+            ringCode[i] = (byte) (change.ordinal() << 2 | dir.ordinal());
+            head.lazySet(h + 1); // publishes the slot
+        }
+        if (!wakeupPending.get() && !wakeupPending.getAndSet(true))
+            selector.wakeup();
+    }
+
+    // ---- selector thread ----
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        if (key.isValid() && key.isReadable())
+                            read(key);
+                        if (key.isValid() && key.isWritable())
+                            flush(key);
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+                publishChanges();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            ch.register(selector, SelectionKey.OP_READ, new Connection(ch));
+            connections.incrementAndGet();
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        int n = c.channel.read(c.in);
+        if (n < 0) {
+            disconnect(key);
+            return;
+        }
+        ByteBuffer in = c.in;
+        in.flip();
+        int start = in.position();
+        for (int i = start; i < in.limit(); i++) {
+            if (in.get(i) != '\n')
+                continue;
+            command(c, in, start, i);
+            start = i + 1;
+        }
+        in.position(start);
+        in.compact();
+        if (c.overflowed) {
+            disconnect(key);
+            return;
+        }
+        if (in.position() > MAX_LINE) {
+            append(c, "ERR line too long\n".getBytes(StandardCharsets.US_ASCII));
+            flush(key);
+            disconnect(key);
+            return;
+        }
+        flush(key);
+    }
+
+    /** Handles the command in bytes [from, to) of {@code in}; to is the newline. */
+    private void command(Connection c, ByteBuffer in, int from, int to) {
+        if (to > from && in.get(to - 1) == '\r')
+            to--;
+        int len = to - from;
+        byte op = len > 0 ? in.get(from) : 0;
+        if ((op == 'H' || op == 'C') && len >= 3 && in.get(from + 1) == ' ') {
+            int p = from + 2;
+            boolean negative = in.get(p) == '-';
+            if (negative)
+                p++;
+            long floor = 0;
+            int digits = 0;
+            for (; p < to && in.get(p) >= '0' && in.get(p) <= '9' && digits < 10; p++, digits++)
+                floor = floor * 10 + (in.get(p) - '0');
+            if (negative)
+                floor = -floor;
+            Direction dir = null;
+            if (op == 'H' && p + 2 == to && in.get(p) == ' ')
+                dir = in.get(p + 1) == 'U' ? Direction.UP : in.get(p + 1) == 'D' ? Direction.DOWN : null;
+            boolean shape = digits > 0 && (op == 'C' ? p == to : dir != null);
+            if (!shape) {
+                error(c, "usage: H <floor> U|D or C <floor>");
+            } else if (floor < minFloor || floor > maxFloor) {
+                error(c, "floor out of range");
+            } else {
+                if (op == 'H')
+                    controller.inbox().submitHallCall((int) floor, dir);
+                else
+                    controller.inbox().submitCarCall((int) floor);
+                calls.incrementAndGet();
+                append(c, OK);
+            }
+        } else if (len == 3 && in.get(from) == 'S' && in.get(from + 1) == 'U' && in.get(from + 2) == 'B') {
+            if (!c.subscribed) {
+                c.subscribed = true;
+                subscribers.add(c);
+            }
+            append(c, OK);
+        } else {
+            error(c, "unknown command");
+        }
+    }
+
+    private void error(Connection c, String why) {
+        errors.incrementAndGet();
+        append(c, ("ERR " + why + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private boolean append(Connection c, byte[] b) {
+        return append(c, b, b.length);
+    }
+
+    /** Queues bytes for a client; false if it is too far behind and must go. */
+    private boolean append(Connection c, byte[] b, int n) {
+        if (c.out.remaining() < n) {
+            int need = c.out.position() + n;
+            if (need > MAX_QUEUED_BYTES) {
+                c.overflowed = true;
+                return false;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_QUEUED_BYTES, Math.max(need, 2 * c.out.capacity())));
+            c.out.flip();
+            bigger.put(c.out);
+            c.out = bigger;
+        }
+        c.out.put(b, 0, n);
+        return true;
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        if (c.out.position() > 0) {
+            c.out.flip();
+            c.channel.write(c.out);
+            c.out.compact();
+        }
+        key.interestOps(c.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /** Formats queued state changes once each and queues them to every subscriber. */
+    private void publishChanges() {
+        long t = tail.get(), h = head.get();
+        long lostNow = lost.get();
+        if (t == h && lostNow == lostReported)
+            return;
+        if (subscribers.isEmpty()) {
+            tail.lazySet(h);
+            lostReported = lostNow;
+            return;
+        }
+        for (; t < h; t++) {
+            int i = (int) t & (RING - 1);
+            int n = formatChange(ringTick[i], ringCode[i] >>> 2, ringFloor[i], ringCode[i] & 3);
+            broadcast(n);
+        }
+        tail.lazySet(h);
+        if (lostNow != lostReported) {
+            int n = put(line, 0, "LOST ".getBytes(StandardCharsets.US_ASCII));
+            n = putLong(line, n, lostNow - lostReported);
+            line[n++] = '\n';
+            broadcast(n);
+            lostReported = lostNow;
+        }
+        for (int s = subscribers.size() - 1; s >= 0; s--) {
+            Connection c = subscribers.get(s);
+            SelectionKey key = c.channel.keyFor(selector);
+            try {
+                flush(key);
+            } catch (IOException e) {
+                disconnect(key);
+            }
+        }
+    }
+
+    private void broadcast(int n) {
+        for (int s = subscribers.size() - 1; s >= 0; s--) {
+            Connection c = subscribers.get(s);
+            if (!append(c, line, n)) {
+                dropped.incrementAndGet();
+                disconnect(c.channel.keyFor(selector));
+            }
+        }
+    }
+
+    private int formatChange(long tick, int change, int floor, int dir) {
+        int n = 0;
+        line[n++] = 'E';
+        line[n++] = ' ';
+        n = putLong(line, n, tick);
+        line[n++] = ' ';
+        n = put(line, n, CHANGE_NAMES[change]);
+        line[n++] = ' ';
+        n = putLong(line, n, floor);
+        line[n++] = ' ';
+        n = put(line, n, DIRECTION_NAMES[dir]);
+        line[n++] = '\n';
+        return n;
+    }
+
+    private static int put(byte[] to, int at, byte[] b) {
+        System.arraycopy(b, 0, to, at, b.length);
+        return at + b.length;
+    }
+
+    private static int putLong(byte[] to, int at, long v) {
+        if (v < 0) {
+            to[at++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long x = v; x >= 10; x /= 10)
+            digits++;
+        int end = at + digits;
+        for (int i = end - 1; i >= at; i--, v /= 10)
+            to[i] = (byte) ('0' + v % 10);
+        return end;
+    }
+
+    private void disconnect(SelectionKey key) {
+        if (key == null || !(key.attachment() instanceof Connection))
+            return;
+        Connection c = (Connection) key.attachment();
+        key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+        if (c.subscribed) {
+            c.subscribed = false;
+            subscribers.remove(c);
+        }
+    }
+
+    /** Calls accepted so far. */
+    public long calls() {
+        return calls.get();
+    }
+
+    /** Commands rejected. */
+    public long errors() {
+        return errors.get();
+    }
+
+    /** Connections accepted so far. */
+    public long connections() {
+        return connections.get();
+    }
+
+    /** Subscribers disconnected for falling too far behind. */
+    public long slowSubscribersDropped() {
+        return dropped.get();
+    }
+
+    /** Stops serving, closes every connection and detaches from the controller. */
+    @Override
+    public void close() {
+        controller.removeListener(this);
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+            server.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serves a building with a real-time driver.
+     * Usage: java ElevatorServer [port] [floors] [tickMicros]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int floors = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long tickMicros = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        Controller controller = new Controller(new Elevator(0, floors - 1, 0), new Scheduler(0, floors - 1), 2);
+        RealTimeDriver driver = new RealTimeDriver(controller, tickMicros * 1000, RealTimeDriver.Overrun.CATCH_UP);
+        ElevatorServer server = start(controller, new InetSocketAddress(port));
+        driver.start();
+        System.out.printf("serving floors 0..%d on port %d, one tick per %d us%n", floors - 1, server.port(),
+                tickMicros);
+        while (true) {
+            Thread.sleep(5000);
+            System.out.printf("calls=%d errors=%d connections=%d | %s%n", server.calls(), server.errors(),
+                    server.connections(), driver);
+        }
+    }
+}
@@ -49,6 +49,120 @@ public class ElevatorTest {
         testDuplicateCarCalls();
         testOutOfBoundsCalls();
 
+        // Bitmap Scheduler Tests
+        testFloorBitSetMatchesTreeSet();
+        testFloorBitSetNegativeAndWideRange();
+        testSchedulerViewsAreReadOnly();
+        testOppositeHallCallAboveIdleCabIsServed();
+        testTurnaroundForOppositeCallWastesNoTick();
+        testCachedNeighboursMatchTreeSetLookups();
+
+        // Group Controller Tests
+        testGroupAssignsEachHallCallOnce();
+        testGroupServesAllCalls();
+        testGroupDeterministicAcrossThreads();
+        testOptimizerFindsBestSmallAssignment();
+        testOptimizerKeepsToItsBudget();
+        testGroupBatchAssignmentServesAllCalls();
+
+        // Simulation Engine Tests
+        testEngineMatchesTickLoop();
+        testEngineSkipsQuietTicks();
+
+        // Concurrent Ingestion Tests
+        testInboxValidatesAtSubmit();
+        testInboxStressNoLostOrPhantomCalls();
+        testInboxCallsServedByTickLoop();
+
+        // Latency Statistics Tests
+        testHistogramPercentiles();
+        testWaitAndJourneyRecorded();
+        testEngineRecordsSameStats();
+        testIdleSchedulerAllocatesNoStats();
+
+        // Monte Carlo Tests
+        testTrafficSimulationDeliversRiders();
+        testFullCarLeavesRidersBehind();
+        testRidersStrandedAtTwoFloorsAreDelivered();
+        testSteadyStateRidersAllocateNothing();
+        testMonteCarloReproducibleAcrossParallelism();
+        testMonteCarloCabsReturnToParkingFloor();
+        testTrafficPatternsMatchTheirMix();
+        testTrafficFileRoundTrips();
+
+        // Fleet Engine Tests
+        testFleetMatchesControllers();
+
+        // Dispatch Policy Tests
+        testPoliciesServeEveryRequest();
+        testEngineMatchesTickLoopForEveryPolicy();
+        testScanSweepsToEndFloor();
+        testNearestCarGoesToCloserRequest();
+        testEtaCostServesOldCallFirst();
+
+        // ETA Tests
+        testEtaMatchesBruteForce();
+        testEtaCountsDownWithoutReplanning();
+
+        // Snapshot & Subscription Tests
+        testSnapshotIsStableCopy();
+        testSnapshotCopiesNothingUpFront();
+        testDeltasRebuildState();
+        testBufferedSnapshotsAllocateNothing();
+
+        // Journal Tests
+        testJournalReplaysTickLoop();
+        testJournalReplaysEngineRun();
+        testJournalReplayDetectsDivergence();
+
+        // Checkpoint Tests
+        testCheckpointRestoreContinuesIdentically();
+        testCheckpointEncodesOffTickThread();
+        testCheckpointRejectsMalformedBytes();
+
+        // Fork Tests
+        testForkRunsLikeACopyAndLeavesLiveAlone();
+        testForksAreIndependentOfEachOther();
+
+        // Real-Time Driver Tests
+        testDriverCatchesUpMissedDeadlines();
+        testDriverSkipsMissedDeadlines();
+        testDriverServesCallsFromOtherThreads();
+        testDriverCloseRethrowsTickError();
+
+        // Network Server Tests
+        testServerAcksBatchAndStreamsChanges();
+        testServerUnderLoad();
+
+        // Diagnostics Tests
+        testTickCountersCountEveryBranch();
+        testFlightRecorderEvents();
+        testMetricsMBeanSumsCars();
+
+        // State Board Tests
+        testStateBoardMirrorsBank();
+        testStateBoardReadsAreNeverTorn();
+        testStateBoardRejectsOtherFiles();
+
+        // Tenant Host Tests
+        testHostTicksEachTenantAtItsPeriod();
+        testSlowTenantDoesNotDelayOthers();
+        testFailedOrRemovedTenantStops();
+
+        // Zoned Building Tests
+        testZoneMapRoutesBySkyLobby();
+        testHandoffOverflowKeepsOrderAndPromise();
+        testZonedBuildingDeliversAcrossZones();
+        testZonedBuildingIsDeterministic();
+
+        // Predictive Parking Tests
+        testDemandModelRanksDecayedDemand();
+        testIdleCarParksAtPredictedFloor();
+        testParkingEngineMatchesTickLoop();
+        testGroupParksIdleCarsApart();
+        testParkingCutsWaits();
+        testParkingIsNotJournalledOrCheckpointed();
+
         // Print Summary
         System.out.println("\n" + "=".repeat(60));
         System.out.printf("Tests Run: %d%n", testsRun);
@@ -500,8 +614,2238 @@ public class ElevatorTest {
         });
     }
 
+    // ============ Bitmap Scheduler Tests ============
+
+    private static void testFloorBitSetMatchesTreeSet() {
+        test("FloorBitSet higher/lower agree with TreeSet", () -> {
+            java.util.Random rnd = new java.util.Random(42);
+            FloorBitSet bits = new FloorBitSet(0, 300);
+            java.util.TreeSet<Integer> ref = new java.util.TreeSet<>();
+            for (int i = 0; i < 5000; i++) {
+                int f = rnd.nextInt(301);
+                if (rnd.nextBoolean()) {
+                    assert bits.add(f) == ref.add(f) : "add mismatch at " + f;
+                } else {
+                    assert bits.remove(f) == ref.remove(f) : "remove mismatch at " + f;
+                }
+                int q = rnd.nextInt(305) - 2;
+                Integer hi = ref.higher(q), lo = ref.lower(q);
+                assert bits.higher(q) == (hi == null ? FloorBitSet.NONE : hi) : "higher(" + q + ")";
+                assert bits.lower(q) == (lo == null ? FloorBitSet.NONE : lo) : "lower(" + q + ")";
+                assert bits.size() == ref.size() : "size mismatch";
+            }
+            assert bits.view().equals(ref) : "view should equal reference set";
+            assert bits.view().toString().equals(ref.toString()) : "view should print like TreeSet";
+        });
+    }
+
+    private static void testFloorBitSetNegativeAndWideRange() {
+        test("FloorBitSet handles basements and word boundaries", () -> {
+            FloorBitSet bits = new FloorBitSet(-5, 200);
+            bits.add(-5);
+            bits.add(58); // index 63, last bit of word 0
+            bits.add(59); // index 64, first bit of word 1
+            bits.add(200);
+            assert bits.higher(-6) == -5 : "higher below range";
+            assert bits.higher(58) == 59 : "higher across word boundary";
+            assert bits.lower(59) == 58 : "lower across word boundary";
+            assert bits.lower(-5) == FloorBitSet.NONE : "nothing below min";
+            assert bits.higher(200) == FloorBitSet.NONE : "nothing above max";
+            assert bits.first() == -5 && bits.last() == 200 : "first/last";
+            assert bits.view().headSet(59).size() == 2 : "headSet view";
+            boolean threw = false;
+            try {
+                new FloorBitSet(Integer.MIN_VALUE, Integer.MIN_VALUE + 10); // would make NONE a floor
+            } catch (IllegalArgumentException ex) {
+                threw = true;
+            }
+            assert threw : "a range starting at NONE must be rejected";
+        });
+    }
+
+    private static void testSchedulerViewsAreReadOnly() {
+        test("Scheduler views are live and read-only", () -> {
+            Scheduler s = new Scheduler(0, 10);
+            java.util.SortedSet<Integer> up = s.viewUpHall();
+            s.submitHallCall(4, Direction.UP);
+            assert up.contains(4) && up.size() == 1 : "view should see new calls";
+            boolean threw = false;
+            try {
+                up.add(5);
+            } catch (UnsupportedOperationException ex) {
+                threw = true;
+            }
+            assert threw : "view should reject mutation";
+            s.clearAt(4);
+            assert up.isEmpty() : "view should see cleared calls";
+        });
+    }
+
+    private static void testOppositeHallCallAboveIdleCabIsServed() {
+        test("Idle cab travels to a lone opposite hall call above or below it", () -> {
+            Elevator e = new Elevator(0, 10, 0);
+            Scheduler s = new Scheduler(0, 10);
+            Controller c = new Controller(e, s, 1);
+
+            c.submitHallCall(8, Direction.DOWN);
+            for (int i = 0; i < 20 && s.hasAnyRequests(); i++)
+                c.tick();
+
+            assert e.currentFloor == 8 : "Should reach floor 8, got " + e.currentFloor;
+            assert !s.hasAnyRequests() : "DOWN call should be served";
+
+            // Mirror image: a lone UP call below a cab that last went up.
+            c.submitCarCall(10);
+            for (int i = 0; i < 20 && s.hasAnyRequests(); i++)
+                c.tick();
+            c.submitHallCall(3, Direction.UP);
+            for (int i = 0; i < 20 && s.hasAnyRequests(); i++)
+                c.tick();
+            assert e.currentFloor == 3 && !s.hasAnyRequests() : "UP call below should be served, at " + e.currentFloor;
+        });
+    }
+
+    private static void testTurnaroundForOppositeCallWastesNoTick() {
+        test("Cab turns straight round for an opposite call behind it, never idling", () -> {
+            Elevator e = new Elevator(0, 10, 5);
+            Scheduler s = new Scheduler(0, 10);
+            Controller c = new Controller(e, s, 1);
+            c.submitCarCall(8);
+            c.tick(); // heading UP
+            c.submitHallCall(2, Direction.DOWN); // the only work left behind once 8 is served
+            assert s.hasBehind(8, Direction.UP) : "a DOWN call below is behind a cab going UP";
+            for (int i = 0; i < 40 && s.hasAnyRequests(); i++) {
+                c.tick();
+                assert e.direction != Direction.IDLE || !s.hasAnyRequests() || e.doorOpen
+                        : "idled at " + e.currentFloor + " with work pending: " + c.snapshot();
+            }
+            assert e.currentFloor == 2 && !s.hasAnyRequests() : "DOWN call should be served: " + c.snapshot();
+        });
+    }
+
+    private static void testCachedNeighboursMatchTreeSetLookups() {
+        test("Scheduler's cached neighbours answer like TreeSet lookups", () -> {
+            java.util.Random rnd = new java.util.Random(17);
+            int min = -10, max = 120;
+            Scheduler s = new Scheduler(min, max);
+            java.util.List<java.util.TreeSet<Integer>> ref = java.util.List.of(
+                    new java.util.TreeSet<>(), new java.util.TreeSet<>(), new java.util.TreeSet<>()); // UP, DOWN, car
+            int cab = 50;
+            for (int i = 0; i < 200_000; i++) {
+                int f = min + rnd.nextInt(max - min + 1);
+                switch (rnd.nextInt(8)) {
+                    case 0:
+                        s.submitHallCall(f, Direction.UP);
+                        ref.get(0).add(f);
+                        break;
+                    case 1:
+                        s.submitHallCall(f, Direction.DOWN);
+                        ref.get(1).add(f);
+                        break;
+                    case 2:
+                        s.submitCarCall(f);
+                        ref.get(2).add(f);
+                        break;
+                    case 3: // where the cab stands, or anywhere
+                        int at = rnd.nextBoolean() ? cab : f;
+                        s.clearAt(at);
+                        for (java.util.TreeSet<Integer> r : ref)
+                            r.remove(at);
+                        break;
+                    case 4: // jump, as after skip() or a restore
+                        cab = f;
+                        if (rnd.nextBoolean())
+                            s.anchorAt(cab);
+                        break;
+                    default: // walk
+                        cab = Math.max(min, Math.min(max, cab + rnd.nextInt(3) - 1));
+                }
+                int q = rnd.nextInt(10) == 0 ? f : cab; // mostly at the cab, sometimes elsewhere
+                for (Direction d : Direction.values()) {
+                    boolean ahead = d == Direction.UP ? above(ref, q, 0, 1, 2) : d == Direction.DOWN && below(ref, q, 0, 1, 2);
+                    boolean behind = d == Direction.UP ? below(ref, q, 0, 1, 2) : d == Direction.DOWN && above(ref, q, 0, 1, 2);
+                    boolean stop = ref.get(2).contains(q) || (d == Direction.UP
+                            ? ref.get(0).contains(q) || ref.get(1).contains(q) && !ahead
+                            : d == Direction.DOWN ? ref.get(1).contains(q) || ref.get(0).contains(q) && !ahead
+                                    : ref.get(0).contains(q) || ref.get(1).contains(q));
+                    String where = "step " + i + " " + d + " at " + q;
+                    assert s.hasAhead(q, d) == ahead : "hasAhead " + where;
+                    assert s.hasBehind(q, d) == behind : "hasBehind " + where;
+                    assert s.shouldStopHere(q, d) == stop : "shouldStopHere " + where;
+                    if (d == Direction.IDLE)
+                        continue;
+                    int stopFloor = d == Direction.UP ? nearestAbove(ref, q, 0, 2) : nearestBelow(ref, q, 1, 2);
+                    int anyFloor = d == Direction.UP ? nearestAbove(ref, q, 0, 1, 2) : nearestBelow(ref, q, 0, 1, 2);
+                    boolean car = d == Direction.UP ? above(ref, q, 2) : below(ref, q, 2);
+                    assert s.nextStop(q, d) == stopFloor : "nextStop " + where;
+                    assert s.nextRequest(q, d) == anyFloor : "nextRequest " + where;
+                    assert s.hasCarCallAhead(q, d) == car : "hasCarCallAhead " + where;
+                }
+                Direction idle = above(ref, q, 0, 1, 2) ? Direction.UP : below(ref, q, 0, 1, 2) ? Direction.DOWN : Direction.IDLE;
+                assert s.pickFromIdle(q) == idle : "pickFromIdle at " + q + " step " + i;
+            }
+        });
+    }
+
+    private static boolean above(java.util.List<java.util.TreeSet<Integer>> ref, int floor, int... classes) {
+        return nearestAbove(ref, floor, classes) != FloorBitSet.NONE;
+    }
+
+    private static boolean below(java.util.List<java.util.TreeSet<Integer>> ref, int floor, int... classes) {
+        return nearestBelow(ref, floor, classes) != FloorBitSet.NONE;
+    }
+
+    private static int nearestAbove(java.util.List<java.util.TreeSet<Integer>> ref, int floor, int... classes) {
+        int best = FloorBitSet.NONE;
+        for (int k : classes) {
+            Integer f = ref.get(k).higher(floor);
+            if (f != null && (best == FloorBitSet.NONE || f < best))
+                best = f;
+        }
+        return best;
+    }
+
+    private static int nearestBelow(java.util.List<java.util.TreeSet<Integer>> ref, int floor, int... classes) {
+        int best = FloorBitSet.NONE;
+        for (int k : classes) {
+            Integer f = ref.get(k).lower(floor);
+            if (f != null && f > best)
+                best = f;
+        }
+        return best;
+    }
+
+    // ============ Group Controller Tests ============
+
+    private static void testGroupAssignsEachHallCallOnce() {
+        test("Group assigns each hall call to exactly one car", () -> {
+            GroupController g = new GroupController(new Elevator[] {
+                    new Elevator(0, 20, 0), new Elevator(0, 20, 10), new Elevator(0, 20, 20) }, 1, 1);
+
+            g.submitHallCall(9, Direction.UP);
+            g.submitHallCall(9, Direction.UP); // coalesces
+            g.submitHallCall(19, Direction.DOWN);
+
+            assert g.ownerOf(9, Direction.UP) == 1 : "Nearest car should own floor 9";
+            assert g.ownerOf(19, Direction.DOWN) == 2 : "Nearest car should own floor 19";
+            int owners = 0;
+            for (int i = 0; i < g.size(); i++)
+                owners += g.queue(i).viewUpHall().contains(9) ? 1 : 0;
+            assert owners == 1 : "Exactly one car should hold the call, got " + owners;
+        });
+    }
+
+    private static void testGroupServesAllCalls() {
+        test("Group serves every call and releases ownership", () -> {
+            GroupController g = new GroupController(new Elevator[] {
+                    new Elevator(0, 15, 0), new Elevator(0, 15, 15) }, 1, 2);
+
+            g.submitHallCall(3, Direction.UP);
+            g.submitHallCall(12, Direction.DOWN);
+            g.submitHallCall(7, Direction.DOWN);
+            g.submitCarCall(0, 5);
+            for (int i = 0; i < 60 && g.hasAnyRequests(); i++)
+                g.tick();
+            g.shutdown();
+
+            assert !g.hasAnyRequests() : "All calls should be served";
+            assert g.ownerOf(3, Direction.UP) == -1 : "Ownership should be released";
+            assert g.ownerOf(12, Direction.DOWN) == -1 : "Ownership should be released";
+        });
+    }
+
+    private static void testGroupDeterministicAcrossThreads() {
+        test("Group results are identical on 1 and 16 threads", () -> {
+            String one = runGroupScenario(1);
+            String many = runGroupScenario(16);
+            assert one.equals(many) : "Trajectories differ between 1 and 16 threads";
+        });
+    }
+
+    /** A bank of cars at spread-out floors, each with a car call and a hall call in hand. */
+    private static Scheduler[] busyBank(Elevator[] cabs, int floors) {
+        Scheduler[] queues = new Scheduler[cabs.length];
+        for (int c = 0; c < cabs.length; c++) {
+            cabs[c] = new Elevator(0, floors - 1, (c * 37) % floors);
+            queues[c] = new Scheduler(0, floors - 1);
+            Controller warm = new Controller(cabs[c], queues[c], 2);
+            warm.submitCarCall((c * 11 + 5) % floors);
+            warm.submitHallCall((c * 23 + 3) % (floors - 1), Direction.UP);
+            warm.tick();
+        }
+        return queues;
+    }
+
+    private static void testOptimizerFindsBestSmallAssignment() {
+        test("Assignment optimizer finds the best split of a small burst, never worse than greedy", () -> {
+            Elevator[] cabs = new Elevator[3];
+            Scheduler[] queues = busyBank(cabs, 40);
+            int[] floors = { 2, 9, 17, 25, 31, 38 };
+            Direction[] dirs = { Direction.UP, Direction.DOWN, Direction.UP, Direction.DOWN, Direction.DOWN,
+                    Direction.DOWN };
+            AssignmentOptimizer opt = new AssignmentOptimizer(cabs, queues, new LookPolicy(), 2, null);
+            AssignmentOptimizer.Result r = opt.assign(floors, dirs, 5_000_000_000L, 1);
+
+            long bestCost = Long.MAX_VALUE;
+            int[] cars = new int[floors.length];
+            for (int code = 0; code < 729; code++) { // 3^6 assignments
+                for (int i = 0, x = code; i < cars.length; i++, x /= 3)
+                    cars[i] = x % 3;
+                bestCost = Math.min(bestCost, opt.cost(floors, dirs, cars));
+            }
+            assert r.cost <= r.greedyCost : "Worse than greedy: " + r;
+            assert r.cost == bestCost : "Optimum is " + bestCost + ", found " + r;
+            assert opt.cost(floors, dirs, r.cars) == r.cost : "Reported cost does not match the assignment";
+            for (Scheduler q : queues)
+                assert q.pendingCount() == 2 || q.pendingCount() == 1 : "Optimizer must not touch the queues";
+        });
+    }
+
+    private static void testOptimizerKeepsToItsBudget() {
+        test("Assignment optimizer returns its best so far when the budget runs out", () -> {
+            Elevator[] cabs = new Elevator[16];
+            Scheduler[] queues = busyBank(cabs, 120);
+            int[] floors = new int[60];
+            Direction[] dirs = new Direction[60];
+            for (int i = 0; i < 60; i++) {
+                floors[i] = 1 + 2 * i;
+                dirs[i] = i % 3 == 0 ? Direction.UP : Direction.DOWN;
+            }
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+            try {
+                AssignmentOptimizer opt = new AssignmentOptimizer(cabs, queues, new LookPolicy(), 2, pool);
+                for (int decision = 0; decision < 3; decision++) {
+                    long start = System.nanoTime();
+                    AssignmentOptimizer.Result r = opt.assign(floors, dirs, 10_000_000, decision);
+                    long ms = (System.nanoTime() - start) / 1_000_000;
+                    assert ms < 250 : "Took " + ms + " ms on a 10 ms budget";
+                    assert r.cost <= r.greedyCost : "Worse than greedy: " + r;
+                    assert opt.cost(floors, dirs, r.cars) == r.cost : "Reported cost does not match the assignment";
+                    for (int car : r.cars)
+                        assert car >= 0 && car < cabs.length : "No such car " + car;
+                }
+            } finally {
+                pool.shutdown();
+            }
+        });
+    }
+
+    private static void testGroupBatchAssignmentServesAllCalls() {
+        test("Group with batch assignment holds calls to the next tick and serves them all", () -> {
+            Elevator[] cabs = new Elevator[4];
+            for (int i = 0; i < cabs.length; i++)
+                cabs[i] = new Elevator(0, 30, i * 10);
+            GroupController g = new GroupController(cabs, 2, 2, new LookPolicy(), 5_000_000);
+            for (int f = 1; f < 30; f += 3)
+                g.submitHallCall(f, f % 2 == 0 ? Direction.UP : Direction.DOWN);
+            g.submitHallCall(4, Direction.UP); // coalesces with the held call
+            assert g.hasAnyRequests() : "Held calls are pending";
+            assert g.ownerOf(4, Direction.UP) == -1 : "Held until the next tick";
+            g.tick();
+            assert g.lastAssignment() != null && g.lastAssignment().cars.length == 10
+                    : "One batch of ten calls: " + g.lastAssignment();
+            assert g.ownerOf(4, Direction.UP) >= 0 : "Assigned at the tick";
+            for (int i = 0; i < 500 && g.hasAnyRequests(); i++)
+                g.tick();
+            g.shutdown();
+            assert !g.hasAnyRequests() : "All calls should be served";
+            for (int f = 1; f < 30; f += 3)
+                assert g.ownerOf(f, f % 2 == 0 ? Direction.UP : Direction.DOWN) == -1 : "Ownership released at " + f;
+        });
+    }
+
+    private static String runGroupScenario(int threads) {
+        Elevator[] cabs = new Elevator[8];
+        for (int i = 0; i < cabs.length; i++)
+            cabs[i] = new Elevator(0, 40, i * 5);
+        GroupController g = new GroupController(cabs, 2, threads);
+        java.util.Random rnd = new java.util.Random(7);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < 300; t++) {
+            if (rnd.nextInt(3) == 0)
+                g.submitHallCall(rnd.nextInt(41), rnd.nextBoolean() ? Direction.UP : Direction.DOWN);
+            if (rnd.nextInt(4) == 0)
+                g.submitCarCall(rnd.nextInt(cabs.length), rnd.nextInt(41));
+            g.tick();
+            for (int i = 0; i < g.size(); i++)
+                log.append(g.snapshot(i)).append('\n');
+        }
+        g.shutdown();
+        return log.toString();
+    }
+
+    // ============ Simulation Engine Tests ============
+
+    private static void testEngineMatchesTickLoop() {
+        test("Event engine state matches tick() at every event", () -> {
+            for (long seed = 1; seed <= 20; seed++)
+                assertEngineMatchesTickLoop(new LookPolicy(), seed);
+        });
+    }
+
+    /** Runs the same random arrivals through tick() and the engine, comparing after every tick. */
+    private static void assertEngineMatchesTickLoop(DispatchPolicy policy, long seed) {
+        java.util.Random rnd = new java.util.Random(seed);
+        int n = 60;
+        long[] at = new long[n];
+        int[] floor = new int[n], kind = new int[n];
+        for (int i = 0; i < n; i++) {
+            at[i] = rnd.nextInt(2000);
+            floor[i] = rnd.nextInt(51);
+            kind[i] = rnd.nextInt(3);
+        }
+        int dwell = 1 + rnd.nextInt(4);
+
+        // Reference: plain tick loop, recording the state after every step.
+        Elevator e1 = new Elevator(0, 50, 25);
+        Controller c1 = new Controller(e1, new Scheduler(0, 50), dwell, policy);
+        java.util.Map<Long, String> expected = new java.util.HashMap<>();
+        for (long t = 0; t < 2500; t++) {
+            for (int i = 0; i < n; i++)
+                if (at[i] == t)
+                    submit(c1, kind[i], floor[i]);
+            c1.tick();
+            expected.put(t + 1, c1.snapshot().toString());
+        }
+
+        // Engine: same arrivals, in the same order.
+        Elevator e2 = new Elevator(0, 50, 25);
+        Controller c2 = new Controller(e2, new Scheduler(0, 50), dwell, policy);
+        SimulationEngine engine = new SimulationEngine(c2);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        java.util.Arrays.sort(order, java.util.Comparator.comparingLong(i -> at[i]));
+        for (int i : order) {
+            if (kind[i] == 2)
+                engine.scheduleCarCall(at[i], floor[i]);
+            else
+                engine.scheduleHallCall(at[i], floor[i], kind[i] == 0 ? Direction.UP : Direction.DOWN);
+        }
+        long[] ticks = { 0 }, checked = { 0 }, mismatched = { 0 };
+        engine.runUntil(2500, (time, c) -> {
+            // Arrival events leave the state mid-step; compare after each tick.
+            if (engine.ticksRun() == ticks[0])
+                return;
+            ticks[0] = engine.ticksRun();
+            checked[0]++;
+            if (!c.snapshot().toString().equals(expected.get(time)))
+                mismatched[0]++;
+        });
+        String where = policy + " seed " + seed;
+        assert checked[0] > 0 : "No event boundaries checked for " + where;
+        assert mismatched[0] == 0 : mismatched[0] + " event boundaries differ for " + where;
+        assert c2.snapshot().toString().equals(expected.get(2500L))
+                : "Final state differs for " + where + ": " + c2.snapshot();
+        assert engine.now() == 2500 : "Clock should reach the end";
+        assert c2.counters().toString().equals(c1.counters().toString())
+                : "Tick counters differ for " + where + ": " + c2.counters() + " vs " + c1.counters();
+        for (int f = 0; f <= 50; f++)
+            assert c2.counters().stopsAt(f) == c1.counters().stopsAt(f) : "Stops at " + f + " differ for " + where;
+    }
+
+    private static void submit(Controller c, int kind, int floor) {
+        if (kind == 2)
+            c.submitCarCall(floor);
+        else
+            c.submitHallCall(floor, kind == 0 ? Direction.UP : Direction.DOWN);
+    }
+
+    private static void testEngineSkipsQuietTicks() {
+        test("Event engine skips travel and dwell ticks", () -> {
+            Elevator e = new Elevator(0, 1000, 0);
+            Controller c = new Controller(e, new Scheduler(0, 1000), 5);
+            SimulationEngine engine = new SimulationEngine(c);
+            engine.scheduleCarCall(0, 900);
+            engine.scheduleHallCall(100_000, 10, Direction.DOWN);
+            engine.runUntil(200_000, null);
+
+            assert e.currentFloor == 10 : "Should end at floor 10, got " + e.currentFloor;
+            assert engine.now() == 200_000 : "Clock should reach the end";
+            assert engine.ticksRun() < 20 : "Only event ticks should run, ran " + engine.ticksRun();
+        });
+    }
+
+    // ============ Concurrent Ingestion Tests ============
+
+    private static void testInboxValidatesAtSubmit() {
+        test("Inbox rejects bad calls on the submitting thread", () -> {
+            Controller c = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+            boolean threw = false;
+            try {
+                c.inbox().submitCarCall(11);
+            } catch (IllegalArgumentException ex) {
+                threw = true;
+            }
+            assert threw : "Out-of-range floor should throw at submit";
+            threw = false;
+            try {
+                c.inbox().submitHallCall(3, Direction.IDLE);
+            } catch (IllegalArgumentException ex) {
+                threw = true;
+            }
+            assert threw : "IDLE hall call should throw at submit";
+        });
+    }
+
+    private static void testInboxStressNoLostOrPhantomCalls() {
+        test("Inbox stress: many producers, no lost or phantom calls", () -> {
+            int floors = 1000, producers = 8, presses = 50_000;
+            RequestInbox inbox = new RequestInbox(0, floors - 1);
+            Scheduler s = new Scheduler(0, floors - 1);
+            java.util.BitSet[][] pressed = new java.util.BitSet[producers][3];
+            java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                final int id = p;
+                for (int k = 0; k < 3; k++)
+                    pressed[p][k] = new java.util.BitSet(floors);
+                threads[p] = new Thread(() -> {
+                    java.util.SplittableRandom rnd = new java.util.SplittableRandom(id);
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < presses; i++) {
+                        // Skewed floors so threads collide on the same words.
+                        int f = rnd.nextInt(4) == 0 ? rnd.nextInt(floors) : rnd.nextInt(64);
+                        int k = rnd.nextInt(3);
+                        pressed[id][k].set(f);
+                        if (k == 2)
+                            inbox.submitCarCall(f);
+                        else
+                            inbox.submitHallCall(f, k == 0 ? Direction.UP : Direction.DOWN);
+                    }
+                });
+                threads[p].start();
+            }
+            start.countDown();
+            // Single consumer drains while producers run, like the tick thread.
+            boolean running = true;
+            while (running) {
+                inbox.drainTo(s);
+                running = false;
+                for (Thread t : threads)
+                    running |= t.isAlive();
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+            inbox.drainTo(s);
+
+            java.util.BitSet[] expected = { new java.util.BitSet(), new java.util.BitSet(), new java.util.BitSet() };
+            for (int p = 0; p < producers; p++)
+                for (int k = 0; k < 3; k++)
+                    expected[k].or(pressed[p][k]);
+            java.util.SortedSet<?>[] got = { s.viewUpHall(), s.viewDownHall(), s.viewCarStops() };
+            for (int k = 0; k < 3; k++) {
+                java.util.BitSet actual = new java.util.BitSet();
+                for (Object f : got[k])
+                    actual.set((Integer) f);
+                assert actual.equals(expected[k]) : "Class " + k + " differs: lost or phantom calls";
+            }
+            assert inbox.drainTo(s) == 0 : "Inbox should be empty after final drain";
+        });
+    }
+
+    private static void testInboxCallsServedByTickLoop() {
+        test("Calls published from other threads are served by tick()", () -> {
+            Elevator e = new Elevator(0, 30, 0);
+            Scheduler s = new Scheduler(0, 30);
+            Controller c = new Controller(e, s, 1);
+            Thread[] threads = new Thread[4];
+            for (int p = 0; p < threads.length; p++) {
+                final int id = p;
+                threads[p] = new Thread(() -> {
+                    for (int f = id; f <= 30; f += threads.length)
+                        c.inbox().submitHallCall(f, f == 30 ? Direction.DOWN : Direction.UP);
+                });
+                threads[p].start();
+            }
+            java.util.BitSet served = new java.util.BitSet();
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (served.cardinality() < 31 && System.nanoTime() < deadline) {
+                c.tick();
+                if (e.doorOpen)
+                    served.set(e.currentFloor);
+            }
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+            assert served.cardinality() == 31 : "Every published floor should be served, got " + served;
+            assert !s.hasAnyRequests() : "All published calls should be served";
+        });
+    }
+
+    // ============ Latency Statistics Tests ============
+
+    private static void testHistogramPercentiles() {
+        test("Histogram percentiles stay within bucket error", () -> {
+            LatencyHistogram h = new LatencyHistogram();
+            for (int v = 1; v <= 10_000; v++)
+                h.record(v);
+            assert h.count() == 10_000 : "count";
+            assert h.max() == 10_000 : "max should be exact";
+            long p50 = h.percentile(50), p99 = h.percentile(99);
+            assert Math.abs(p50 - 5_000) <= 5_000 / 8 : "p50 off: " + p50;
+            assert Math.abs(p99 - 9_900) <= 9_900 / 8 : "p99 off: " + p99;
+            assert h.percentile(100) == 10_000 : "p100 should be the max";
+            LatencyHistogram small = new LatencyHistogram();
+            small.record(3);
+            assert small.percentile(50) == 3 : "small values are exact";
+        });
+    }
+
+    private static void testWaitAndJourneyRecorded() {
+        test("Wait and journey times are recorded when calls clear", () -> {
+            Elevator e = new Elevator(0, 10, 0);
+            Scheduler s = new Scheduler(0, 10);
+            Controller c = new Controller(e, s, 1);
+
+            c.submitHallCall(5, Direction.UP);
+            while (!(e.doorOpen && e.currentFloor == 5))
+                c.tick();
+            assert c.now() == 6 : "Doors should open at 5 after 6 ticks, got " + c.now();
+            c.submitCarCall(9);
+            while (!(e.doorOpen && e.currentFloor == 9))
+                c.tick();
+
+            ServiceStats st = s.stats();
+            assert st.waits(Direction.UP).count() == 1 : "one UP wait";
+            assert st.waits(Direction.UP).max() == 6 : "UP wait should be 6, got " + st.waits(Direction.UP).max();
+            assert st.waits(Direction.DOWN).count() == 0 : "no DOWN waits";
+            assert st.journeys().max() == 6 : "journey should be 6, got " + st.journeys().max();
+            assert st.waitsInBand(st.bandOf(5)).count() == 1 : "wait recorded in floor 5's band";
+            assert st.journeysInBand(st.bandOf(9)).count() == 1 : "journey recorded in floor 9's band";
+        });
+    }
+
+    private static void testIdleSchedulerAllocatesNoStats() {
+        test("A scheduler allocates its latency histograms only once something clears", () -> {
+            java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(mx instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported())
+                return; // no allocation counter on this JVM
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) mx;
+            long id = Thread.currentThread().getId();
+            Scheduler[] keep = new Scheduler[1000];
+            long before = sun.getThreadAllocatedBytes(id);
+            for (int i = 0; i < keep.length; i++)
+                keep[i] = new Scheduler(0, 30);
+            long each = (sun.getThreadAllocatedBytes(id) - before) / keep.length;
+            assert each < 4_000 : "An unused scheduler should be small, took " + each + " bytes";
+            Scheduler s = keep[0];
+            s.submitCarCall(3);
+            s.clearAt(3);
+            assert s.stats().journeys().count() == 1 : "the first clear still records";
+        });
+    }
+
+    private static void testEngineRecordsSameStats() {
+        test("Event engine records the same latencies as tick()", () -> {
+            Scheduler s1 = new Scheduler(0, 60), s2 = new Scheduler(0, 60);
+            Controller c1 = new Controller(new Elevator(0, 60, 0), s1, 2);
+            Controller c2 = new Controller(new Elevator(0, 60, 0), s2, 2);
+            SimulationEngine engine = new SimulationEngine(c2);
+            java.util.Random rnd = new java.util.Random(3);
+            long[] at = new long[80];
+            for (int i = 0; i < at.length; i++)
+                at[i] = i * 25L + rnd.nextInt(25);
+            int[] floor = rnd.ints(at.length, 0, 61).toArray();
+            for (int i = 0; i < at.length; i++)
+                engine.scheduleCarCall(at[i], floor[i]);
+            for (long t = 0, i = 0; t < 3000; t++) {
+                while (i < at.length && at[(int) i] == t)
+                    c1.submitCarCall(floor[(int) i++]);
+                c1.tick();
+            }
+            engine.runUntil(3000, null);
+            assert s1.stats().toString().equals(s2.stats().toString()) : "stats differ";
+            assert s1.stats().journeys().count() > 0 : "journeys recorded";
+        });
+    }
+
+    // ============ Monte Carlo Tests ============
+
+    private static void testTrafficSimulationDeliversRiders() {
+        test("Traffic simulation delivers every rider at light load", () -> {
+            Elevator e = new Elevator(0, 15, 0);
+            Controller c = new Controller(e, new Scheduler(0, 15), 2);
+            TrafficSimulation sim = new TrafficSimulation(c, e, new TrafficGenerator(0, 15, 0.01, 10_000, 5));
+            sim.run(12_000); // two thousand quiet ticks to drain the last riders
+
+            assert sim.arrived() > 50 : "Expected traffic, got " + sim.arrived();
+            assert sim.delivered() == sim.arrived() : sim.delivered() + " of " + sim.arrived() + " delivered";
+            assert sim.tripTimes().count() == sim.delivered() : "one trip time per rider";
+            assert e.floorsTravelled() > 0 : "odometer should advance";
+        });
+    }
+
+    private static void testFullCarLeavesRidersBehind() {
+        test("A full car leaves riders queued, and they are all delivered later", () -> {
+            Elevator e = new Elevator(0, 15, 0);
+            Controller c = new Controller(e, new Scheduler(0, 15), 2);
+            TrafficGenerator up = new TrafficGenerator(TrafficGenerator.Pattern.UP_PEAK, 0, 15, 0.2, 5_000, 3);
+            TrafficSimulation sim = new TrafficSimulation(c, e, up, 8, 630, 11);
+            sim.run(5_000);
+            assert sim.leftBehind() > 0 : "Lobby rush should overflow an 8-rider car";
+            assert sim.peakRiders() <= 8 : "Exceeded capacity: " + sim.peakRiders();
+            sim.run(200_000);
+
+            assert sim.delivered() == sim.arrived() : sim.delivered() + " of " + sim.arrived() + " delivered";
+            assert sim.riders() == 0 && sim.load() == 0 : "Car should be empty";
+            assert sim.waitTimes().count() == sim.delivered() && sim.rideTimes().count() == sim.delivered()
+                    : "one wait and one ride per rider";
+
+            Elevator e2 = new Elevator(0, 15, 0);
+            TrafficSimulation unlimited = new TrafficSimulation(new Controller(e2, new Scheduler(0, 15), 2), e2,
+                    new TrafficGenerator(TrafficGenerator.Pattern.UP_PEAK, 0, 15, 0.2, 5_000, 3));
+            unlimited.run(200_000);
+            assert unlimited.leftBehind() == 0 && unlimited.delivered() == sim.delivered() : "same riders, no limit";
+            assert sim.waitTimes().max() > unlimited.waitTimes().max() : "riders left behind should wait longer";
+        });
+    }
+
+    private static void testRidersStrandedAtTwoFloorsAreDelivered() {
+        test("Riders left behind at two floors in a row all press again and are delivered", () -> {
+            long[][] trips = { { 0, 2, 9 }, { 0, 2, 9 }, { 0, 5, 9 } };
+            TrafficSource source = new TrafficSource() {
+                int i = -1;
+
+                public boolean next() {
+                    return ++i < trips.length;
+                }
+
+                public long time() {
+                    return trips[i][0];
+                }
+
+                public int origin() {
+                    return (int) trips[i][1];
+                }
+
+                public int destination() {
+                    return (int) trips[i][2];
+                }
+            };
+            Elevator e = new Elevator(0, 10, 0);
+            Controller c = new Controller(e, new Scheduler(0, 10), 1);
+            TrafficSimulation sim = new TrafficSimulation(c, e, source, 1, Integer.MAX_VALUE, 0);
+            sim.run(1_000);
+            assert sim.arrived() == 3 && sim.delivered() == 3
+                    : sim.delivered() + " of " + sim.arrived() + " delivered; " + c.snapshot();
+            assert sim.leftBehind() >= 2 : "both 2 and 5 should have left someone behind";
+        });
+    }
+
+    private static void testSteadyStateRidersAllocateNothing() {
+        test("Pooled riders: a warmed-up traffic simulation allocates nothing per trip", () -> {
+            java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(mx instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported())
+                return; // no allocation counter on this JVM
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) mx;
+            Elevator e = new Elevator(0, 30, 0);
+            Controller c = new Controller(e, new Scheduler(0, 30), 2);
+            TrafficSimulation sim = new TrafficSimulation(c, e,
+                    new TrafficGenerator(TrafficGenerator.Pattern.LUNCH, 0, 30, 0.02, 400_000, 9), 12, 900, 4);
+            sim.run(100_000); // warm up: grow the pool and compile
+            long id = Thread.currentThread().getId();
+            long before = sun.getThreadAllocatedBytes(id), trips = sim.arrived();
+            sim.run(400_000);
+            long bytes = sun.getThreadAllocatedBytes(id) - before;
+            trips = sim.arrived() - trips;
+            assert trips > 5_000 : "Expected traffic, got " + trips;
+            assert bytes < 4096 : bytes + " bytes allocated over " + trips + " trips";
+        });
+    }
+
+    private static void testMonteCarloReproducibleAcrossParallelism() {
+        test("Monte Carlo results are reproducible per seed at any parallelism", () -> {
+            java.util.List<MonteCarloRunner.Params> grid = new java.util.ArrayList<>();
+            for (int dwell = 1; dwell <= 3; dwell++)
+                grid.add(new MonteCarloRunner.Params(0, 12, dwell, 0, 0.03, 5_000));
+            java.util.List<String> streamed = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+            String serial = new MonteCarloRunner(1, MonteCarloRunner.interfloor())
+                    .run(grid, 4, 99L, r -> streamed.add(r.toString())).toString();
+            String parallel = new MonteCarloRunner(6, MonteCarloRunner.interfloor())
+                    .run(grid, 4, 99L, null).toString();
+
+            assert serial.equals(parallel) : "Summaries differ between 1 and 6 threads";
+            assert streamed.size() == 12 : "Every run should be streamed, got " + streamed.size();
+        });
+    }
+
+    private static void testMonteCarloCabsReturnToParkingFloor() {
+        test("Monte Carlo cabs return to their parking floor whenever idle", () -> {
+            DemandModel home = DemandModel.fixed(0, 12, 6);
+            Elevator e = new Elevator(0, 12, 0);
+            Controller c = new Controller(e, new Scheduler(0, 12), 1);
+            c.parkBy(home);
+            c.submitHallCall(11, Direction.DOWN);
+            for (int t = 0; t < 60; t++)
+                c.tick();
+            assert e.currentFloor == 6 && e.direction == Direction.IDLE : "Should rest at 6: " + c.snapshot();
+            assert home.calls() == 0 && home.predictedFloor(123_456, 0) == 6 : "A fixed model learns nothing";
+
+            java.util.List<MonteCarloRunner.Params> grid = new java.util.ArrayList<>();
+            for (int park : new int[] { 0, 6, 12 })
+                grid.add(new MonteCarloRunner.Params(0, 12, 2, park, 0.01, 5_000));
+            java.util.List<MonteCarloRunner.Summary> out = new MonteCarloRunner(1, MonteCarloRunner.interfloor())
+                    .run(grid, 2, 5L, null);
+            assert out.get(0).meanFloorsTravelled != out.get(1).meanFloorsTravelled
+                    && out.get(1).meanFloorsTravelled != out.get(2).meanFloorsTravelled
+                    : "Parking floor should change how far the cab travels: " + out;
+        });
+    }
+
+    private static void testTrafficPatternsMatchTheirMix() {
+        test("Traffic patterns produce their incoming/outgoing/interfloor mix", () -> {
+            int[][] buildings = { { 0, 20 }, { -3, 40 }, { 5, 12 } };
+            for (TrafficGenerator.Pattern pattern : TrafficGenerator.Pattern.values()) {
+                for (int[] b : buildings) {
+                    int lobby = Math.max(b[0], Math.min(0, b[1]));
+                    TrafficGenerator gen = new TrafficGenerator(pattern, b[0], b[1], 0.5, 400_000, 3);
+                    long trips = 0, in = 0, out = 0, last = 0;
+                    while (gen.next()) {
+                        int o = gen.origin(), d = gen.destination();
+                        assert o != d && o >= b[0] && o <= b[1] && d >= b[0] && d <= b[1]
+                                : pattern + ": bad trip " + o + "->" + d;
+                        assert gen.time() >= last : "Trips out of order";
+                        last = gen.time();
+                        trips++;
+                        if (o == lobby)
+                            in++;
+                        else if (d == lobby)
+                            out++;
+                    }
+                    String where = pattern + " " + b[0] + ".." + b[1];
+                    assert Math.abs(trips - 200_000) < 2_000 : where + ": " + trips + " arrivals at 0.5/tick";
+                    if (pattern == TrafficGenerator.Pattern.INTERFLOOR)
+                        continue;
+                    assert Math.abs((double) in / trips - pattern.incoming) < 0.01 : where + ": incoming " + in;
+                    assert Math.abs((double) out / trips - pattern.outgoing) < 0.01 : where + ": outgoing " + out;
+                }
+            }
+        });
+    }
+
+    private static void testTrafficFileRoundTrips() {
+        test("Traffic written to a file streams back trip for trip", () -> {
+            java.nio.file.Path dir = tempDir();
+            try {
+                java.nio.file.Path file = dir.resolve("day.trips");
+                long written = TrafficFile.write(
+                        new TrafficGenerator(TrafficGenerator.Pattern.LUNCH, -4, 120, 2.0, 500_000, 8), file);
+                TrafficGenerator expected = new TrafficGenerator(TrafficGenerator.Pattern.LUNCH, -4, 120, 2.0, 500_000, 8);
+                long read = 0;
+                try (TrafficFile.Reader in = TrafficFile.open(file)) {
+                    while (in.next()) {
+                        assert expected.next() : "File has more trips than the generator";
+                        assert in.time() == expected.time() && in.origin() == expected.origin()
+                                && in.destination() == expected.destination() : "Trip " + read + " differs";
+                        read++;
+                    }
+                }
+                assert !expected.next() && read == written : "Read " + read + " of " + written;
+                long bytes = java.nio.file.Files.size(file);
+                assert bytes < 5 * written : bytes + " bytes for " + written + " trips";
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            } finally {
+                deleteTree(dir);
+            }
+        });
+    }
+
+    // ============ Fleet Engine Tests ============
+
+    private static void testFleetMatchesControllers() {
+        test("Fleet engine matches one Controller per car", () -> {
+            int cars = 40, top = 150;
+            Fleet fleet = new Fleet(cars, -3, top, 2);
+            Elevator[] cabs = new Elevator[cars];
+            Controller[] ctls = new Controller[cars];
+            java.util.Random rnd = new java.util.Random(11);
+            for (int i = 0; i < cars; i++) {
+                int start = -3 + rnd.nextInt(top + 4);
+                fleet.place(i, start);
+                cabs[i] = new Elevator(-3, top, start);
+                ctls[i] = new Controller(cabs[i], new Scheduler(-3, top), 2);
+            }
+            for (int t = 0; t < 2000; t++) {
+                for (int k = 0; k < 6; k++) {
+                    int car = rnd.nextInt(cars), f = -3 + rnd.nextInt(top + 4), kind = rnd.nextInt(3);
+                    if (kind == 2) {
+                        fleet.submitCarCall(car, f);
+                        ctls[car].submitCarCall(f);
+                    } else {
+                        Direction d = kind == 0 ? Direction.UP : Direction.DOWN;
+                        fleet.submitHallCall(car, f, d);
+                        ctls[car].submitHallCall(f, d);
+                    }
+                }
+                fleet.tick();
+                for (int i = 0; i < cars; i++) {
+                    ctls[i].tick();
+                    if (t % 97 == 0 || i == t % cars) {
+                        String want = ctls[i].snapshot().toString(), got = fleet.snapshot(i).toString();
+                        assert want.equals(got) : "car " + i + " tick " + t + ": " + got + " vs " + want;
+                    }
+                }
+            }
+            for (int i = 0; i < cars; i++) {
+                Elevator view = fleet.elevator(i);
+                assert view.currentFloor == cabs[i].currentFloor && view.direction == cabs[i].direction
+                        && view.doorOpen == cabs[i].doorOpen && view.doorDwellTicks == cabs[i].doorDwellTicks
+                        : "Elevator view differs for car " + i;
+                assert view.floorsTravelled() == cabs[i].floorsTravelled() : "odometer differs for car " + i;
+            }
+        });
+    }
+
+    // ============ Dispatch Policy Tests ============
+
+    private static void testPoliciesServeEveryRequest() {
+        test("Every dispatch policy serves every request, alone and in a group", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+                java.util.Random rnd = new java.util.Random(3);
+                Controller c = new Controller(new Elevator(0, 30, 15), new Scheduler(0, 30), 2, policy);
+                Elevator[] cabs = { new Elevator(0, 30, 0), new Elevator(0, 30, 15), new Elevator(0, 30, 30) };
+                GroupController g = new GroupController(cabs, 2, 1, policy);
+                for (int t = 0; t < 1500; t++) {
+                    if (rnd.nextInt(4) == 0) {
+                        int kind = rnd.nextInt(3), f = rnd.nextInt(31);
+                        submit(c, kind, f);
+                        if (kind == 2)
+                            g.submitCarCall(rnd.nextInt(cabs.length), f);
+                        else
+                            g.submitHallCall(f, kind == 0 ? Direction.UP : Direction.DOWN);
+                    }
+                    c.tick();
+                    g.tick();
+                }
+                for (int t = 0; t < 1000; t++) {
+                    c.tick();
+                    g.tick();
+                }
+                assert !hasPending(c)
+                        : policy + " left requests pending: " + c.snapshot();
+                assert !g.hasAnyRequests() : policy + " group left requests pending";
+            }
+        });
+    }
+
+    private static boolean hasPending(Controller c) {
+        Controller.Snapshot s = c.snapshot();
+        return !(s.up.isEmpty() && s.down.isEmpty() && s.car.isEmpty());
+    }
+
+    private static void testEngineMatchesTickLoopForEveryPolicy() {
+        test("Event engine matches tick() under every dispatch policy", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns())
+                for (long seed = 1; seed <= 8; seed++)
+                    assertEngineMatchesTickLoop(policy, seed);
+        });
+    }
+
+    private static void testScanSweepsToEndFloor() {
+        test("SCAN runs to the end floor before reversing; LOOK turns early", () -> {
+            int[] scanTop = new int[1], lookTop = new int[1];
+            for (DispatchPolicy policy : new DispatchPolicy[] { new ScanPolicy(), new LookPolicy() }) {
+                Elevator e = new Elevator(0, 10, 5);
+                Controller c = new Controller(e, new Scheduler(0, 10), 1, policy);
+                c.submitCarCall(7);
+                c.submitHallCall(2, Direction.UP);
+                int top = 0;
+                for (int t = 0; t < 60; t++) {
+                    c.tick();
+                    top = Math.max(top, e.currentFloor);
+                }
+                assert !hasPending(c) : policy + " should finish: " + c.snapshot();
+                (policy instanceof ScanPolicy ? scanTop : lookTop)[0] = top;
+            }
+            assert scanTop[0] == 10 : "SCAN should reach floor 10, reached " + scanTop[0];
+            assert lookTop[0] == 7 : "LOOK should turn at 7, reached " + lookTop[0];
+        });
+    }
+
+    private static void testNearestCarGoesToCloserRequest() {
+        test("Nearest-car heads for the closer request first", () -> {
+            Elevator e = new Elevator(0, 10, 5);
+            Controller c = new Controller(e, new Scheduler(0, 10), 1, DispatchPolicy.forName("nearest"));
+            c.submitCarCall(9);
+            c.submitCarCall(3);
+            c.tick();
+            c.tick();
+            assert e.currentFloor == 3 : "Expected floor 3, got " + e.currentFloor;
+        });
+    }
+
+    private static void testEtaCostServesOldCallFirst() {
+        test("ETA-cost turns toward a long-waiting call that LOOK would leave for later", () -> {
+            for (DispatchPolicy policy : new DispatchPolicy[] { new EtaCostPolicy(), new LookPolicy() }) {
+                // Doors stay open at 10 for 200 ticks while a call ages at 0; a
+                // fresh call then arrives at 12 just before they close.
+                Elevator e = new Elevator(0, 20, 10);
+                Controller c = new Controller(e, new Scheduler(0, 20), 200, policy);
+                c.submitCarCall(10);
+                c.tick();
+                c.submitHallCall(0, Direction.UP);
+                for (int t = 0; t < 195; t++)
+                    c.tick();
+                c.submitHallCall(12, Direction.DOWN);
+                while (e.doorOpen)
+                    c.tick();
+                c.tick();
+                Direction want = policy instanceof EtaCostPolicy ? Direction.DOWN : Direction.UP;
+                assert e.direction == want : policy + " should head " + want + ", got " + e.direction;
+            }
+        });
+    }
+
+    // ============ ETA Tests ============
+
+    private static void testEtaMatchesBruteForce() {
+        test("ETA agrees with ticking a copy forward, pending or not, for every policy", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+                java.util.Random rnd = new java.util.Random(5);
+                java.util.List<int[]> presses = new java.util.ArrayList<>(); // {tick, kind, floor}
+                Controller c = new Controller(new Elevator(0, 30, 10), new Scheduler(0, 30), 3, policy);
+                for (int t = 0; t < 400; t++) {
+                    if (rnd.nextInt(3) == 0) {
+                        int[] press = { t, rnd.nextInt(3), rnd.nextInt(31) };
+                        presses.add(press);
+                        submit(c, press[1], press[2]);
+                    }
+                    if (t % 23 == 0) {
+                        for (Controller.Eta e : c.pendingEtas()) {
+                            long want = bruteForceEta(policy, presses, t, e.floor, e.direction);
+                            assert e.ticks == want : policy + " t=" + t + " " + e + ", expected " + want;
+                        }
+                        for (int f = 0; f <= 30; f += 3) {
+                            Direction dir = f % 2 == 0 ? Direction.UP : Direction.DOWN;
+                            long want = bruteForceEta(policy, presses, t, f, dir);
+                            assert c.eta(f, dir) == want
+                                    : policy + " t=" + t + " " + dir + " " + f + ": " + c.eta(f, dir) + " vs " + want;
+                            long car = bruteForceEta(policy, presses, t, f, Direction.IDLE);
+                            assert c.carCallEta(f) == car : policy + " t=" + t + " car " + f;
+                        }
+                    }
+                    c.tick();
+                }
+            }
+        });
+    }
+
+    /**
+     * Replays the presses up to tick {@code now} on a fresh controller, presses the
+     * queried call if needed, then ticks until the doors open for it.
+     */
+    private static long bruteForceEta(DispatchPolicy policy, java.util.List<int[]> presses, int now, int floor,
+            Direction cls) {
+        Scheduler s = new Scheduler(0, 30);
+        Controller c = new Controller(new Elevator(0, 30, 10), s, 3, policy);
+        int i = 0;
+        for (int t = 0; t <= now; t++) {
+            for (; i < presses.size() && presses.get(i)[0] == t; i++)
+                submit(c, presses.get(i)[1], presses.get(i)[2]);
+            if (t < now)
+                c.tick();
+        }
+        if (cls == Direction.IDLE)
+            c.submitCarCall(floor);
+        else
+            c.submitHallCall(floor, cls);
+        java.util.SortedSet<Integer> set = cls == Direction.UP ? s.viewUpHall()
+                : cls == Direction.DOWN ? s.viewDownHall() : s.viewCarStops();
+        for (long n = 1; n <= 100_000; n++) {
+            c.tick();
+            if (!set.contains(floor))
+                return n;
+        }
+        return -1;
+    }
+
+    private static void testEtaCountsDownWithoutReplanning() {
+        test("Cached ETAs count down as the car follows its route", () -> {
+            Elevator e = new Elevator(0, 20, 0);
+            Controller c = new Controller(e, new Scheduler(0, 20), 2);
+            c.submitCarCall(15);
+            c.submitHallCall(5, Direction.UP);
+            c.submitHallCall(9, Direction.DOWN);
+            long first = c.eta(9, Direction.DOWN);
+            // Up 5 floors and stop (6 + 2 dwell), up 10 more and stop (11 + 2), then
+            // straight round, down 6 and stop.
+            assert first == 8 + 13 + 7 : "Unexpected ETA " + first;
+            for (int t = 1; t < first; t++) {
+                c.tick();
+                assert c.eta(9, Direction.DOWN) == first - t : "ETA should count down at tick " + t;
+            }
+            c.tick();
+            assert e.currentFloor == 9 && e.doorOpen : "Doors should open at 9 when the ETA runs out";
+        });
+    }
+
+    // ============ Snapshot & Subscription Tests ============
+
+    private static void testSnapshotIsStableCopy() {
+        test("Snapshot does not change when the controller moves on", () -> {
+            Controller c = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+            c.submitCarCall(0);
+            c.submitHallCall(4, Direction.UP);
+            Controller.Snapshot before = c.snapshot();
+            String text = before.toString();
+            c.tick();
+            c.submitCarCall(7);
+            assert before.toString().equals(text) : "Snapshot changed: " + before;
+            assert before.car.contains(0) && !before.car.contains(7) : "Snapshot should hold the old car calls";
+        });
+    }
+
+    private static void testSnapshotCopiesNothingUpFront() {
+        test("Snapshot shares the request bitmaps until the controller changes them", () -> {
+            java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(mx instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported())
+                return; // no allocation counter on this JVM
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) mx;
+            Controller c = new Controller(new Elevator(0, 1_000_000, 0), new Scheduler(0, 1_000_000), 1);
+            c.submitHallCall(500_000, Direction.DOWN);
+            c.snapshot(); // warm up
+            long id = Thread.currentThread().getId();
+            long before = sun.getThreadAllocatedBytes(id);
+            Controller.Snapshot s = c.snapshot();
+            long bytes = sun.getThreadAllocatedBytes(id) - before;
+            assert bytes < 4_000 : "Snapshot of a 1M-floor building copied its bitmaps: " + bytes + " bytes";
+            c.submitHallCall(7, Direction.DOWN);
+            c.tick();
+            assert s.down.size() == 1 && s.down.contains(500_000) && s.floor == 0 : "Snapshot changed: " + s.down;
+        });
+    }
+
+    private static void testDeltasRebuildState() {
+        test("State rebuilt from deltas matches the controller every tick", () -> {
+            Elevator e = new Elevator(0, 40, 20);
+            Controller c = new Controller(e, new Scheduler(0, 40), 2);
+            int[] floor = { e.currentFloor };
+            Direction[] dir = { e.direction };
+            boolean[] open = { false };
+            java.util.List<java.util.SortedSet<Integer>> sets = java.util.List.of(
+                    new java.util.TreeSet<>(), new java.util.TreeSet<>(), new java.util.TreeSet<>());
+            c.addListener((tick, change, f, d) -> {
+                switch (change) {
+                    case FLOOR_CHANGED:
+                        floor[0] = f;
+                        break;
+                    case DIRECTION_CHANGED:
+                        dir[0] = d;
+                        break;
+                    case DOOR_OPENED:
+                    case DOOR_CLOSED:
+                        open[0] = change == StateListener.Change.DOOR_OPENED;
+                        break;
+                    case REQUEST_ADDED:
+                        assert sets.get(d.ordinal()).add(f) : "Duplicate add of " + d + " " + f;
+                        break;
+                    case REQUEST_CLEARED:
+                        assert sets.get(d.ordinal()).remove(f) : "Clear of missing " + d + " " + f;
+                        break;
+                }
+            });
+            SnapshotBuffer buf = new SnapshotBuffer(0, 40);
+            java.util.Random rnd = new java.util.Random(9);
+            for (int t = 0; t < 2000; t++) {
+                int f = rnd.nextInt(41);
+                switch (rnd.nextInt(6)) {
+                    case 0:
+                        c.submitHallCall(f, f == 40 ? Direction.DOWN : Direction.UP);
+                        break;
+                    case 1:
+                        c.inbox().submitCarCall(f);
+                        break;
+                    default:
+                }
+                c.tick();
+                String rebuilt = String.format("floor=%d dir=%s door=%s | up=%s down=%s car=%s", floor[0], dir[0],
+                        open[0] ? "OPEN" : "CLOSED", sets.get(0), sets.get(1), sets.get(2));
+                assert rebuilt.equals(c.snapshot(buf).toString()) : "t=" + t + ": " + rebuilt + " vs " + buf;
+            }
+        });
+    }
+
+    private static void testBufferedSnapshotsAllocateNothing() {
+        test("Polling into a SnapshotBuffer with a listener attached allocates nothing", () -> {
+            java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(mx instanceof com.sun.management.ThreadMXBean)
+                    || !((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported())
+                return; // no allocation counter on this JVM
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) mx;
+            Controller c = new Controller(new Elevator(0, 500, 0), new Scheduler(0, 500), 2);
+            long[] changes = { 0 };
+            c.addListener((tick, change, f, d) -> changes[0]++);
+            SnapshotBuffer buf = new SnapshotBuffer(0, 500);
+            long id = Thread.currentThread().getId();
+            long before = 0;
+            for (int t = 0; t < 40_000; t++) {
+                if (t == 20_000) // after warm-up
+                    before = sun.getThreadAllocatedBytes(id);
+                if (t % 7 == 0)
+                    c.submitHallCall((t * 31) % 501, (t & 8) == 0 ? Direction.UP : Direction.DOWN);
+                c.tick();
+                c.snapshot(buf);
+            }
+            long bytes = sun.getThreadAllocatedBytes(id) - before;
+            assert changes[0] > 0 : "Listener saw nothing";
+            assert bytes < 4096 : bytes + " bytes allocated over 20k polled ticks";
+        });
+    }
+
+    // ============ Journal Tests ============
+
+    private static void testJournalReplaysTickLoop() {
+        test("Journal replays a tick-driven run across segments for every policy", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+                java.nio.file.Path dir = tempDir();
+                try {
+                    Controller c = new Controller(new Elevator(0, 30, 12), new Scheduler(0, 30), 3, policy);
+                    c.submitCarCall(2); // pending before attach: logged as a press at tick 0
+                    Journal j = Journal.attach(c, dir, 4096);
+                    java.util.Random rnd = new java.util.Random(21);
+                    for (int t = 0; t < 3000; t++) {
+                        if (rnd.nextInt(4) == 0)
+                            submit(c, rnd.nextInt(3), rnd.nextInt(31));
+                        c.tick();
+                    }
+                    j.close();
+                    assert j.segments() > 1 : "Small segments should roll, got " + j.segments();
+
+                    JournalReplayer r = JournalReplayer.replay(dir);
+                    assert r.records() == j.records() : policy + ": replayed " + r.records() + " of " + j.records();
+                    assert r.controller().snapshot().toString().equals(c.snapshot().toString())
+                            : policy + ": final state differs: " + r.controller().snapshot() + " vs " + c.snapshot();
+                } finally {
+                    deleteTree(dir);
+                }
+            }
+        });
+    }
+
+    private static void testJournalReplaysEngineRun() {
+        test("Journal replays a run driven by the event engine", () -> {
+            java.nio.file.Path dir = tempDir();
+            try {
+                Controller c = new Controller(new Elevator(0, 200, 0), new Scheduler(0, 200), 4);
+                Journal j = Journal.attach(c, dir);
+                SimulationEngine engine = new SimulationEngine(c);
+                java.util.Random rnd = new java.util.Random(5);
+                for (long at = 0; at < 50_000; at += 1 + rnd.nextInt(400)) {
+                    if (rnd.nextBoolean())
+                        engine.scheduleCarCall(at, rnd.nextInt(201));
+                    else
+                        engine.scheduleHallCall(at, 1 + rnd.nextInt(199), rnd.nextBoolean() ? Direction.UP : Direction.DOWN);
+                }
+                engine.runUntil(60_000, null);
+                j.close();
+                assert engine.ticksSkipped() > 0 : "Engine should have skipped ticks";
+
+                JournalReplayer r = JournalReplayer.replay(dir);
+                assert r.records() == j.records() : "Replayed " + r.records() + " of " + j.records();
+                assert r.controller().snapshot().toString().equals(c.snapshot().toString())
+                        : "Final state differs: " + r.controller().snapshot() + " vs " + c.snapshot();
+            } finally {
+                deleteTree(dir);
+            }
+        });
+    }
+
+    private static void testJournalReplayDetectsDivergence() {
+        test("Replay stops at the first record the controller does not reproduce", () -> {
+            java.nio.file.Path dir = tempDir();
+            try {
+                Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+                Journal j = Journal.attach(c, dir);
+                c.submitCarCall(15);
+                for (int t = 0; t < 40; t++)
+                    c.tick();
+                j.close();
+
+                // Record 3 is the cab's second floor change; say it went elsewhere.
+                try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(
+                        dir.resolve("00000000.journal"), java.nio.file.StandardOpenOption.WRITE)) {
+                    java.nio.ByteBuffer floor = java.nio.ByteBuffer.allocate(4).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+                    ch.write(floor.putInt(0, 9), Journal.HEADER_BYTES + 3 * Journal.RECORD_BYTES + 8);
+                }
+                try {
+                    JournalReplayer.replay(dir);
+                    assert false : "Replay should have diverged";
+                } catch (JournalReplayer.DivergenceException expected) {
+                    assert expected.getMessage().startsWith("record 3 ") : expected.getMessage();
+                }
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            } finally {
+                deleteTree(dir);
+            }
+        });
+    }
+
+    private static java.nio.file.Path tempDir() {
+        try {
+            return java.nio.file.Files.createTempDirectory("journal");
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteTree(java.nio.file.Path dir) {
+        try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(dir)) {
+            for (java.nio.file.Path p : (Iterable<java.nio.file.Path>) files.sorted(java.util.Comparator.reverseOrder())::iterator)
+                java.nio.file.Files.delete(p);
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    // ============ Checkpoint Tests ============
+
+    private static void testCheckpointRestoreContinuesIdentically() {
+        test("Restored controller continues exactly like the original", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+                Controller a = new Controller(new Elevator(-5, 194, 0), new Scheduler(-5, 194), 3, policy);
+                java.util.Random rnd = new java.util.Random(13);
+                for (int t = 0; t < 1500; t++) {
+                    if (rnd.nextInt(3) == 0)
+                        submit(a, rnd.nextInt(3), rnd.nextInt(200) - 5);
+                    a.tick();
+                }
+                byte[] bytes = a.checkpoint().toBytes();
+                Controller b = Checkpoint.fromBytes(bytes).restore();
+                assert bytes.length < 1024 : policy + ": checkpoint is " + bytes.length + " bytes";
+                assert b.policy().toString().equals(policy.toString()) : "Policy not restored: " + b.policy();
+                assert b.now() == a.now() : "Clock not restored";
+                assert b.pendingEtas().toString().equals(a.pendingEtas().toString())
+                        : policy + ": ETAs differ: " + b.pendingEtas() + " vs " + a.pendingEtas();
+                for (int t = 0; t < 1500; t++) {
+                    if (rnd.nextInt(3) == 0) {
+                        int kind = rnd.nextInt(3), f = rnd.nextInt(200) - 5;
+                        submit(a, kind, f);
+                        submit(b, kind, f);
+                    }
+                    a.tick();
+                    b.tick();
+                    assert b.snapshot().toString().equals(a.snapshot().toString())
+                            : policy + " t=" + t + ": " + b.snapshot() + " vs " + a.snapshot();
+                }
+                assert b.cab().floorsTravelled() == a.cab().floorsTravelled() : "Odometer not restored";
+            }
+        });
+    }
+
+    private static void testCheckpointEncodesOffTickThread() {
+        test("Checkpoint keeps the state it was taken with while the controller ticks on", () -> {
+            Controller c = new Controller(new Elevator(0, 199, 100), new Scheduler(0, 199), 2);
+            for (int f = 0; f < 200; f += 7)
+                c.submitHallCall(f, f % 2 == 0 ? Direction.UP : Direction.DOWN);
+            c.submitCarCall(3);
+            c.tick();
+            Checkpoint cp = c.checkpoint();
+            String expected = c.snapshot().toString();
+            java.util.concurrent.atomic.AtomicReference<byte[]> encoded = new java.util.concurrent.atomic.AtomicReference<>();
+            Thread writer = new Thread(() -> encoded.set(cp.toBytes()));
+            writer.start();
+            for (int t = 0; t < 500; t++)
+                c.tick();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            Controller restored = Checkpoint.fromBytes(encoded.get()).restore();
+            assert restored.snapshot().toString().equals(expected)
+                    : "Restored " + restored.snapshot() + ", expected " + expected;
+            assert restored.now() == 1 : "Restored clock " + restored.now();
+        });
+    }
+
+    private static void testCheckpointRejectsMalformedBytes() {
+        test("Checkpoint decoding rejects truncated and corrupt input", () -> {
+            Controller c = new Controller(new Elevator(0, 70, 0), new Scheduler(0, 70), 2);
+            c.submitHallCall(69, Direction.DOWN);
+            byte[] bytes = c.checkpoint().toBytes();
+            for (int cut = 0; cut < bytes.length; cut++) {
+                try {
+                    Checkpoint.fromBytes(java.util.Arrays.copyOf(bytes, cut));
+                    assert false : "Accepted a checkpoint cut to " + cut + " bytes";
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+            byte[] bad = bytes.clone();
+            bad[0] ^= 1;
+            try {
+                Checkpoint.fromBytes(bad);
+                assert false : "Accepted a bad magic number";
+            } catch (IllegalArgumentException expected) {
+            }
+            // Header fields: minFloor at byte 8, maxFloor 12, door dwell 20, dwell 24.
+            int[][] patches = { { 12, Integer.MAX_VALUE }, { 8, Integer.MIN_VALUE }, { 12, 70 + Checkpoint.MAX_FLOORS },
+                    { 20, -1 }, { 24, -5 } };
+            for (int[] patch : patches) {
+                bad = bytes.clone();
+                java.nio.ByteBuffer.wrap(bad).order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(patch[0], patch[1]);
+                long before = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+                try {
+                    Checkpoint.fromBytes(bad);
+                    assert false : "Accepted " + patch[1] + " at byte " + patch[0];
+                } catch (IllegalArgumentException expected) {
+                }
+                long grew = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - before;
+                assert grew < 64 << 20 : "Rejecting a bad header allocated " + grew + " bytes";
+            }
+            Controller tall = new Controller(new Elevator(0, Checkpoint.MAX_FLOORS, 0),
+                    new Scheduler(0, Checkpoint.MAX_FLOORS), 2);
+            try {
+                tall.checkpoint();
+                assert false : "Checkpointed a building the decoder would refuse";
+            } catch (IllegalStateException expected) {
+            }
+        });
+    }
+
+    // ============ Fork Tests ============
+
+    private static void testForkRunsLikeACopyAndLeavesLiveAlone() {
+        test("A fork runs exactly like a full copy and never disturbs the live controller", () -> {
+            for (DispatchPolicy policy : DispatchPolicy.builtIns()) {
+                Controller live = new Controller(new Elevator(-5, 594, 0), new Scheduler(-5, 594), 2, policy);
+                java.util.Random rnd = new java.util.Random(17);
+                for (int t = 0; t < 1500; t++) {
+                    if (rnd.nextInt(3) == 0)
+                        submit(live, rnd.nextInt(3), rnd.nextInt(600) - 5);
+                    live.tick();
+                }
+                String before = live.snapshot().toString(), etas = live.pendingEtas().toString();
+                String stats = live.scheduler().stats().toString();
+                byte[] state = live.checkpoint().toBytes();
+                for (int branch = 0; branch < 8; branch++) {
+                    Controller fork = live.fork(), copy = Checkpoint.fromBytes(state).restore(policy);
+                    for (int t = 0; t < 300; t++) {
+                        if (rnd.nextInt(4) == 0) {
+                            int kind = rnd.nextInt(3), f = rnd.nextInt(600) - 5;
+                            submit(fork, kind, f);
+                            submit(copy, kind, f);
+                        }
+                        fork.tick();
+                        copy.tick();
+                        assert fork.snapshot().toString().equals(copy.snapshot().toString())
+                                : policy + " branch " + branch + " t=" + t + ": " + fork.snapshot() + " vs "
+                                        + copy.snapshot();
+                    }
+                    assert fork.scheduler().stats().toString().equals(copy.scheduler().stats().toString())
+                            : policy + ": fork stats differ from the copy's";
+                }
+                assert live.snapshot().toString().equals(before) : policy + ": live state changed by a fork";
+                assert live.pendingEtas().toString().equals(etas) : policy + ": live ETAs changed by a fork";
+                assert live.scheduler().stats().toString().equals(stats) : policy + ": live stats changed by a fork";
+            }
+        });
+    }
+
+    private static void testForksAreIndependentOfEachOther() {
+        test("Forks, forks of forks and the live controller each keep their own state", () -> {
+            Controller live = new Controller(new Elevator(0, 299, 150), new Scheduler(0, 299), 2);
+            live.submitHallCall(10, Direction.UP);
+            live.submitCarCall(290);
+            live.tick();
+            Controller a = live.fork();
+            String atFork = a.snapshot().toString();
+            live.submitHallCall(200, Direction.DOWN); // live writes after the fork
+            live.submitCarCall(5);
+            for (int t = 0; t < 40; t++)
+                live.tick();
+            assert a.snapshot().toString().equals(atFork) : "Live changes leaked into a fork: " + a.snapshot();
+            assert a.now() == 1 : "Fork clock moved: " + a.now();
+
+            Controller b = a.fork();
+            b.submitCarCall(100);
+            a.submitCarCall(299);
+            assert !a.snapshot().car.contains(100) && !b.snapshot().car.contains(299) : "Sibling writes leaked";
+            assert b.carCallEta(100) >= 0 && a.carCallEta(299) >= 0 : "Forks answer ETAs";
+            assert !live.snapshot().car.contains(100) && !live.snapshot().car.contains(299) : "Fork writes leaked";
+            try {
+                a.inbox();
+                assert false : "A fork should have no inbox";
+            } catch (IllegalStateException expected) {
+                // submit to a fork directly
+            }
+        });
+    }
+
+    // ============ Real-Time Driver Tests ============
+
+    private static final long MS = 1_000_000;
+
+    private static void testDriverCatchesUpMissedDeadlines() {
+        test("Driver runs missed ticks back to back under CATCH_UP", () -> {
+            ManualClock clock = new ManualClock(0);
+            Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+            RealTimeDriver d = new RealTimeDriver(c, MS, RealTimeDriver.Overrun.CATCH_UP, clock);
+            // Each floor change takes 0.2 ms of "work" inside tick().
+            c.addListener((tick, change, f, dir) -> {
+                if (change == StateListener.Change.FLOOR_CHANGED)
+                    clock.advance(MS / 5);
+            });
+            d.submitCarCall(15);
+            runTicks(d, 3);
+            clock.oversleep(3 * MS + MS / 2); // the 4th wake-up is 3.5 periods late
+            runTicks(d, 7);
+
+            assert d.missed() == 3 && d.skipped() == 0 : "missed " + d.missed() + " skipped " + d.skipped();
+            assert d.ticks() == 13 && c.now() == 13 : "Should run 10 + 3 ticks, ran " + d.ticks();
+            assert d.jitter().count() == 10 : "One jitter sample per deadline: " + d.jitter();
+            assert d.jitter().max() >= 3 * MS && d.jitter().max() <= 4 * MS : "Jitter " + d.jitter();
+            assert d.tickTime().max() >= MS / 5 && d.tickTime().max() < MS / 4 : "Tick time " + d.tickTime();
+            // Deadlines stay on the original grid: 13 periods from the start.
+            assert clock.nanoTime() >= 13 * MS && clock.nanoTime() < 14 * MS : "Clock at " + clock.nanoTime();
+        });
+    }
+
+    private static void testDriverSkipsMissedDeadlines() {
+        test("Driver drops missed ticks under SKIP and realigns", () -> {
+            ManualClock clock = new ManualClock(0);
+            Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+            RealTimeDriver d = new RealTimeDriver(c, MS, RealTimeDriver.Overrun.SKIP, clock);
+            runTicks(d, 3);
+            clock.oversleep(3 * MS + MS / 2);
+            runTicks(d, 7);
+
+            assert d.missed() == 3 && d.skipped() == 3 : "missed " + d.missed() + " skipped " + d.skipped();
+            assert d.ticks() == 10 && c.now() == 10 : "Skipped ticks should not run, ran " + d.ticks();
+            assert d.jitter().percentile(50) == 0 : "Only the late tick should be late: " + d.jitter();
+        });
+    }
+
+    private static void runTicks(RealTimeDriver d, long n) {
+        try {
+            d.runTicks(n);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void testDriverServesCallsFromOtherThreads() {
+        test("Driver thread serves calls pressed on other threads", () -> {
+            Controller c = new Controller(new Elevator(0, 30, 0), new Scheduler(0, 30), 1);
+            java.util.concurrent.ConcurrentHashMap<Integer, Boolean> served = new java.util.concurrent.ConcurrentHashMap<>();
+            c.addListener((tick, change, f, dir) -> {
+                if (change == StateListener.Change.REQUEST_CLEARED && dir == Direction.IDLE)
+                    served.put(f, true);
+            });
+            RealTimeDriver d = new RealTimeDriver(c, MS / 10, RealTimeDriver.Overrun.CATCH_UP);
+            d.start();
+            try {
+                Thread[] buttons = new Thread[6];
+                for (int i = 0; i < buttons.length; i++) {
+                    int floor = 5 * i;
+                    buttons[i] = new Thread(() -> d.submitCarCall(floor));
+                    buttons[i].start();
+                }
+                for (Thread b : buttons)
+                    b.join();
+                long giveUp = System.nanoTime() + 10_000 * MS;
+                while (served.size() < buttons.length && System.nanoTime() < giveUp)
+                    Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } finally {
+                d.close();
+            }
+            assert served.size() == 6 : "Served " + served.keySet() + " after " + d.ticks() + " ticks";
+            assert d.ticks() > 0 && d.jitter().count() > 0 : "No ticks recorded";
+        });
+    }
+
+    private static void testDriverCloseRethrowsTickError() {
+        test("Driver close() rethrows an Error thrown by a tick", () -> {
+            Controller c = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+            c.addListener((tick, change, f, dir) -> {
+                throw new AssertionError("bang");
+            });
+            RealTimeDriver d = new RealTimeDriver(c, MS / 10, RealTimeDriver.Overrun.CATCH_UP);
+            d.start();
+            d.submitCarCall(5); // the next tick adds it and throws
+            sleep(50);
+            Throwable thrown = null;
+            try {
+                d.close();
+            } catch (AssertionError e) {
+                thrown = e;
+            }
+            assert thrown != null && "bang".equals(thrown.getMessage()) : "close() should rethrow, got " + thrown;
+        });
+    }
+
+    // ============ Network Server Tests ============
+
+    private static void testServerAcksBatchAndStreamsChanges() {
+        test("Server acks a pipelined batch in order and streams state changes", () -> {
+            Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+            ElevatorServer server = ElevatorServer.start(c, new java.net.InetSocketAddress("127.0.0.1", 0));
+            try (java.net.Socket s = new java.net.Socket("127.0.0.1", server.port())) {
+                s.setSoTimeout(10_000);
+                java.io.BufferedReader in = new java.io.BufferedReader(
+                        new java.io.InputStreamReader(s.getInputStream(), java.nio.charset.StandardCharsets.US_ASCII));
+                s.getOutputStream().write("H 3 U\nC 9\nH 99 U\nH 4 X\nSUB\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                String[] replies = new String[5];
+                for (int i = 0; i < replies.length; i++)
+                    replies[i] = in.readLine();
+                assert java.util.Arrays.asList(replies).equals(java.util.List.of("OK", "OK", "ERR floor out of range",
+                        "ERR usage: H <floor> U|D or C <floor>", "OK")) : java.util.Arrays.toString(replies);
+                assert server.calls() == 2 && server.errors() == 2 : server.calls() + " calls, " + server.errors() + " errors";
+
+                // This thread runs the ticks; the calls land at the first one.
+                c.tick();
+                String[] events = new String[4];
+                for (int i = 0; i < events.length; i++)
+                    events[i] = in.readLine();
+                assert java.util.Arrays.asList(events).equals(java.util.List.of("E 0 REQUEST_ADDED 3 UP",
+                        "E 0 REQUEST_ADDED 9 IDLE", "E 1 DIRECTION_CHANGED 1 UP", "E 1 FLOOR_CHANGED 1 UP"))
+                        : java.util.Arrays.toString(events);
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            } finally {
+                server.close();
+            }
+        });
+    }
+
+    private static void testServerUnderLoad() {
+        test("Server acknowledges every call from many concurrent connections", () -> {
+            Controller c = new Controller(new Elevator(0, 99, 0), new Scheduler(0, 99), 2);
+            RealTimeDriver driver = new RealTimeDriver(c, MS / 10, RealTimeDriver.Overrun.SKIP);
+            ElevatorServer server = ElevatorServer.start(c, new java.net.InetSocketAddress("127.0.0.1", 0));
+            driver.start();
+            try {
+                LoadClient.Result r = LoadClient.run(new java.net.InetSocketAddress("127.0.0.1", server.port()), 200, 4,
+                        300 * MS, 0, 99, 7);
+                assert r.acked >= 800 && r.errors == 0 : r.toString();
+                assert server.calls() == r.acked : server.calls() + " calls served, " + r.acked + " acked";
+                assert server.connections() == 200 : server.connections() + " connections";
+                assert r.latencyNanos.count() == r.acked : "One latency sample per ack";
+            } finally {
+                server.close();
+                driver.close();
+            }
+            assert c.now() > 0 : "Driver never ticked";
+        });
+    }
+
     // ============ Test Helper ============
 
+    // ============ Diagnostics Tests ============
+
+    private static void testTickCountersCountEveryBranch() {
+        test("Tick counters count every branch and each floor's stops", () -> {
+            Controller c = new Controller(new Elevator(0, 10, 5), new Scheduler(0, 10), 2);
+            c.tick(); // idle
+            c.submitCarCall(7);
+            c.submitCarCall(3);
+            for (int t = 0; t < 30; t++)
+                c.tick();
+            TickCounters k = c.counters();
+            // 5 -> 7: start, move, stop, dwell, close; 7 -> 3: reverse, 3 moves, stop,
+            // dwell, close; then come to rest and stay there.
+            assert k.count(TickCounters.Branch.START) == 1 : k.toString();
+            assert k.count(TickCounters.Branch.REVERSE) == 1 : k.toString();
+            assert k.count(TickCounters.Branch.STOP) == 2 : k.toString();
+            assert k.count(TickCounters.Branch.DWELL) == 2 : k.toString();
+            assert k.count(TickCounters.Branch.DOORS_CLOSED) == 2 : k.toString();
+            assert k.count(TickCounters.Branch.MOVE) == 4 : k.toString();
+            assert k.count(TickCounters.Branch.GO_IDLE) == 1 : k.toString();
+            assert k.ticks() == 31 : "Every tick should be counted once: " + k;
+            assert k.stopsAt(7) == 1 && k.stopsAt(3) == 1 && k.stopsAt(5) == 0 : "Per-floor stops";
+            assert c.fork().counters().ticks() == 0 : "A fork counts from the fork on";
+        });
+    }
+
+    private static void testFlightRecorderEvents() {
+        test("Flight recorder sees stops, door cycles, reversals and idle transitions", () -> {
+            java.nio.file.Path file = null;
+            try (jdk.jfr.Recording r = new jdk.jfr.Recording()) {
+                for (String e : new String[] { "elevator.Stop", "elevator.DoorCycle", "elevator.Reversal",
+                        "elevator.Idle" })
+                    r.enable(e);
+                r.start();
+                Controller c = new Controller(new Elevator(0, 10, 5), new Scheduler(0, 10), 2);
+                c.submitCarCall(7);
+                c.submitCarCall(3);
+                for (int t = 0; t < 30; t++)
+                    c.tick();
+                r.stop();
+                file = java.nio.file.Files.createTempFile("elevator", ".jfr");
+                r.dump(file);
+                java.util.Map<String, Integer> seen = new java.util.TreeMap<>();
+                for (jdk.jfr.consumer.RecordedEvent e : jdk.jfr.consumer.RecordingFile.readAllEvents(file))
+                    seen.merge(e.getEventType().getName(), 1, Integer::sum);
+                assert seen.equals(java.util.Map.of("elevator.DoorCycle", 2, "elevator.Idle", 2,
+                        "elevator.Reversal", 1, "elevator.Stop", 2)) : "Events " + seen;
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            } finally {
+                if (file != null)
+                    file.toFile().delete();
+            }
+        });
+    }
+
+    private static void testMetricsMBeanSumsCars() {
+        test("Metrics MBean sums every car's counters over JMX", () -> {
+            GroupController g = new GroupController(new Elevator[] { new Elevator(0, 20, 0), new Elevator(0, 20, 20) },
+                    1, 1);
+            g.submitCarCall(0, 10);
+            g.submitCarCall(1, 10);
+            g.submitHallCall(4, Direction.UP);
+            for (int t = 0; t < 60; t++)
+                g.tick();
+            ControllerMetrics m = ControllerMetrics.of(g).register("elevator:type=Test,name=bank");
+            try {
+                javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+                javax.management.ObjectName on = new javax.management.ObjectName("elevator:type=Test,name=bank");
+                long ticks = (Long) server.getAttribute(on, "Ticks");
+                long stops = (Long) server.getAttribute(on, "Stops");
+                long[] perFloor = (long[]) server.getAttribute(on, "StopsPerFloor");
+                assert ticks == 120 : "Two cars, 60 ticks each: " + ticks;
+                assert stops == g.counters(0).count(TickCounters.Branch.STOP)
+                        + g.counters(1).count(TickCounters.Branch.STOP) : "Stops " + stops;
+                assert perFloor[10] == 2 && perFloor[4] == 1 : java.util.Arrays.toString(perFloor);
+            } catch (javax.management.JMException e) {
+                throw new AssertionError(e);
+            } finally {
+                m.unregister();
+                g.shutdown();
+            }
+        });
+    }
+
+    // ============ State Board Tests ============
+
+    private static void testStateBoardMirrorsBank() {
+        test("State board readers see every car exactly as published", () -> {
+            java.nio.file.Path file = tempFile(".board");
+            try {
+                Elevator[] cabs = { new Elevator(-3, 130, 0), new Elevator(-3, 130, 100), new Elevator(-3, 130, 50) };
+                GroupController g = new GroupController(cabs, 2, 1);
+                StateBoard board = StateBoard.create(file, 3, -3, 130);
+                StateBoardReader r = StateBoardReader.open(file);
+                SnapshotBuffer buf = r.newBuffer();
+                assert r.cars() == 3 && r.minFloor() == -3 && r.maxFloor() == 130 : "Header";
+                assert r.read(1, buf) == 0 : "Nothing published yet";
+                java.util.Random rnd = new java.util.Random(3);
+                for (int t = 1; t <= 400; t++) {
+                    if (rnd.nextInt(3) == 0)
+                        g.submitHallCall(rnd.nextInt(134) - 3, rnd.nextBoolean() ? Direction.UP : Direction.DOWN);
+                    if (rnd.nextInt(3) == 0)
+                        g.submitCarCall(rnd.nextInt(3), rnd.nextInt(134) - 3);
+                    g.tick();
+                    board.publish(g);
+                    for (int car = 0; car < 3; car++) {
+                        assert r.read(car, buf) == t : "Version should count publishes";
+                        assert buf.tick() == t : "Tick " + buf.tick();
+                        assert buf.toString().equals(g.snapshot(car).toString())
+                                : "t=" + t + " car " + car + ": " + buf + " vs " + g.snapshot(car);
+                        assert buf.requestCount(Direction.IDLE) == g.snapshot(car).car.size() : "Counts";
+                    }
+                }
+                g.shutdown();
+            } finally {
+                file.toFile().delete();
+            }
+        });
+    }
+
+    private static void testStateBoardReadsAreNeverTorn() {
+        test("Concurrent state board readers only ever see whole published states", () -> {
+            java.nio.file.Path file = tempFile(".board");
+            try {
+                Controller c = new Controller(new Elevator(0, 300, 0), new Scheduler(0, 300), 1);
+                StateBoard board = StateBoard.create(file, 1, 0, 300);
+                StateBoardReader r = StateBoardReader.open(file);
+                // What the writer published at each tick, recorded before it is published.
+                java.util.concurrent.ConcurrentHashMap<Long, String> published = new java.util.concurrent.ConcurrentHashMap<>();
+                published.put(0L, r.newBuffer().toString());
+                java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+                java.util.concurrent.atomic.AtomicLong reads = new java.util.concurrent.atomic.AtomicLong();
+                java.util.concurrent.ConcurrentLinkedQueue<String> torn = new java.util.concurrent.ConcurrentLinkedQueue<>();
+                Thread[] readers = new Thread[3];
+                for (int i = 0; i < readers.length; i++) {
+                    readers[i] = new Thread(() -> {
+                        SnapshotBuffer buf = r.newBuffer();
+                        while (!done.get()) {
+                            r.read(0, buf);
+                            reads.incrementAndGet();
+                            if (!buf.toString().equals(published.get(buf.tick())))
+                                torn.add(buf.tick() + ": " + buf);
+                        }
+                    });
+                    readers[i].start();
+                }
+                java.util.Random rnd = new java.util.Random(5);
+                for (int t = 0; t < 20_000; t++) {
+                    if (rnd.nextInt(4) == 0)
+                        c.submitCarCall(rnd.nextInt(301));
+                    if (rnd.nextInt(4) == 0)
+                        c.submitHallCall(rnd.nextInt(301), rnd.nextBoolean() ? Direction.UP : Direction.DOWN);
+                    c.tick();
+                    published.put(c.now(), c.snapshot().toString());
+                    board.publish(0, c);
+                }
+                done.set(true);
+                for (Thread t : readers)
+                    t.join();
+                assert torn.isEmpty() : torn.size() + " torn reads, e.g. " + torn.peek();
+                assert reads.get() > 0 : "Readers never ran";
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } finally {
+                file.toFile().delete();
+            }
+        });
+    }
+
+    private static void testStateBoardRejectsOtherFiles() {
+        test("State board reader rejects files that are not boards", () -> {
+            java.nio.file.Path file = tempFile(".board");
+            try {
+                java.nio.file.Files.write(file, new byte[128]);
+                try {
+                    StateBoardReader.open(file);
+                    assert false : "Opened a file of zeros";
+                } catch (IllegalArgumentException expected) {
+                    // no magic
+                }
+                StateBoard board = StateBoard.create(file, 2, 0, 9);
+                Controller c = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+                try {
+                    board.publish(0, c);
+                    assert false : "Published a controller over other floors";
+                } catch (IllegalArgumentException expected) {
+                    // 0..10 is not 0..9
+                }
+                assert StateBoardReader.open(file).version(1) == 0 : "Fresh slots start at version 0";
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            } finally {
+                file.toFile().delete();
+            }
+        });
+    }
+
+    private static java.nio.file.Path tempFile(String suffix) {
+        try {
+            return java.nio.file.Files.createTempFile("elevator", suffix);
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    // ============ Tenant Host Tests ============
+
+    private static void testHostTicksEachTenantAtItsPeriod() {
+        test("Host ticks every tenant at its own period and serves its calls", () -> {
+            TenantHost host = new TenantHost(2);
+            long start = System.nanoTime(); // first deadlines count from add()
+            java.util.List<TenantHost.Tenant> fast = new java.util.ArrayList<>(), slow = new java.util.ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 1);
+                boolean quick = i % 2 == 0;
+                TenantHost.Tenant t = host.add("b" + i, c, quick ? 2 * MS : 10 * MS, RealTimeDriver.Overrun.CATCH_UP);
+                (quick ? fast : slow).add(t);
+                t.submitCarCall(15);
+            }
+            host.start();
+            sleep(500);
+            host.close();
+            long elapsed = System.nanoTime() - start;
+            for (TenantHost.Tenant t : fast) {
+                long due = elapsed / t.periodNanos();
+                assert t.ticks() <= due + 1 && t.ticks() >= due / 2 : t + " should run about " + due + " ticks";
+            }
+            for (TenantHost.Tenant t : slow) {
+                long due = elapsed / t.periodNanos();
+                assert t.ticks() <= due + 1 && t.ticks() >= due / 2 : t + " should run about " + due + " ticks";
+                assert t.controller().snapshot().floor == 15 : t.name + " never reached its call";
+            }
+            assert host.lag().count() > 0 : "Lag should be reported";
+        });
+    }
+
+    private static void testSlowTenantDoesNotDelayOthers() {
+        test("A tenant with slow ticks holds one worker and does not stall the others", () -> {
+            TenantHost host = new TenantHost(2);
+            Controller hog = new Controller(new Elevator(0, 1000, 0), new Scheduler(0, 1000), 1);
+            hog.addListener((tick, change, f, dir) -> sleep(20)); // every tick takes 20 ms or more
+            hog.submitCarCall(1000);
+            TenantHost.Tenant slow = host.add("hog", hog, MS, RealTimeDriver.Overrun.CATCH_UP);
+            java.util.List<TenantHost.Tenant> others = new java.util.ArrayList<>();
+            for (int i = 0; i < 50; i++)
+                others.add(host.add("b" + i, new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1), 5 * MS,
+                        RealTimeDriver.Overrun.CATCH_UP));
+            long start = System.nanoTime();
+            host.start();
+            sleep(400);
+            host.close();
+            long due = (System.nanoTime() - start) / (5 * MS);
+            for (TenantHost.Tenant t : others)
+                assert t.ticks() >= due / 2 : t + " was held up; expected about " + due + " ticks";
+            assert slow.missed() > 100 && slow.ticks() < 30 : "The hog should fall behind alone: " + slow;
+        });
+    }
+
+    private static void testFailedOrRemovedTenantStops() {
+        test("A failing tenant is retired, Errors too, and a removed one stops, while others carry on", () -> {
+            TenantHost host = new TenantHost(1);
+            Controller bad = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+            bad.addListener((tick, change, f, dir) -> {
+                throw new IllegalStateException("boom");
+            });
+            TenantHost.Tenant failed = host.add("bad", bad, MS, RealTimeDriver.Overrun.CATCH_UP);
+            failed.submitCarCall(5); // the first tick adds it and throws
+            Controller worse = new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1);
+            worse.addListener((tick, change, f, dir) -> {
+                throw new AssertionError("bang");
+            });
+            TenantHost.Tenant errored = host.add("worse", worse, MS, RealTimeDriver.Overrun.CATCH_UP);
+            errored.submitCarCall(5);
+            TenantHost.Tenant removed = host.add("gone", new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1),
+                    MS, RealTimeDriver.Overrun.SKIP);
+            TenantHost.Tenant good = host.add("good", new Controller(new Elevator(0, 10, 0), new Scheduler(0, 10), 1),
+                    MS, RealTimeDriver.Overrun.SKIP);
+            host.start();
+            sleep(50);
+            removed.remove();
+            sleep(20); // let a tick already running finish
+            long ticksAtRemoval = removed.ticks();
+            sleep(100);
+            host.close();
+            assert failed.retired() && failed.failure() != null && failed.ticks() == 0 : failed.toString();
+            assert errored.retired() && errored.failure() instanceof AssertionError
+                    && errored.toString().contains("failed: java.lang.AssertionError: bang") : errored.toString();
+            assert removed.retired() && removed.ticks() == ticksAtRemoval : removed.toString();
+            assert good.ticks() > 50 && !good.retired() : good.toString();
+        });
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // ============ Zoned Building Tests ============
+
+    private static void testZoneMapRoutesBySkyLobby() {
+        test("Zone map routes hall calls by floor and, at sky lobbies, by direction", () -> {
+            ZoneMap m = ZoneMap.split(0, 79, 26, 53);
+            assert m.zones() == 3 && m.toString().equals("0..26 26..53 53..79") : m.toString();
+            assert m.zoneOf(5, Direction.UP) == 0 && m.zoneOf(5, Direction.DOWN) == 0 : "Low zone";
+            assert m.zoneOf(26, Direction.DOWN) == 0 && m.zoneOf(26, Direction.UP) == 1 : "Lower sky lobby";
+            assert m.zoneOf(53, Direction.DOWN) == 1 && m.zoneOf(53, Direction.UP) == 2 : "Upper sky lobby";
+            assert m.zoneOf(79, Direction.DOWN) == 2 : "Top floor";
+            assert m.zoneOf(70, 3) == 2 && m.zoneOf(0, 70) == 0 : "Trips start in their origin's zone";
+            assert m.exitFloor(0, 70) == 26 && m.exitFloor(1, 70) == 53 && m.exitFloor(2, 70) == 70 : "Up exits";
+            assert m.exitFloor(2, 3) == 53 && m.exitFloor(1, 3) == 26 && m.exitFloor(0, 3) == 3 : "Down exits";
+            assert ZoneMap.even(0, 79, 4).toString().equals("0..19 19..39 39..59 59..79") : ZoneMap.even(0, 79, 4).toString();
+            try {
+                ZoneMap.split(0, 10, 5, 5);
+                assert false : "Repeated sky lobby accepted";
+            } catch (IllegalArgumentException expected) {
+                // lobbies must ascend strictly
+            }
+        });
+    }
+
+    private static void testHandoffOverflowKeepsOrderAndPromise() {
+        test("Handoff overflows without blocking, keeps order and never over-promises", () -> {
+            Handoff h = new Handoff(4);
+            for (int i = 0; i < 10; i++)
+                h.send(100 + i, i, 1000 + i, i);
+            h.advance(500);
+            assert h.horizon() == 103 : "Only riders in the ring may be promised: " + h.horizon();
+            int seen = 0;
+            for (int round = 0; round < 5 && seen < 10; round++) {
+                for (; h.peekTime() != Long.MAX_VALUE; h.pop(), seen++) {
+                    assert h.peekTime() == 100 + seen && h.peekFloor() == seen && h.peekDestination() == 1000 + seen
+                            && h.peekPressedAt() == seen : "Rider " + seen + " out of order";
+                }
+                h.advance(500); // the producer moves the overflow over
+            }
+            assert seen == 10 : "Received " + seen;
+            assert h.horizon() == 500 : "Empty overflow should promise everything: " + h.horizon();
+        });
+    }
+
+    private static void testZonedBuildingDeliversAcrossZones() {
+        test("Zoned building delivers every trip, transferring at sky lobbies", () -> {
+            ZoneMap map = ZoneMap.split(0, 79, 26, 53);
+            TrafficSource traffic = new TrafficGenerator(TrafficGenerator.Pattern.UP_PEAK, 0, 79, 0.05, 20_000, 21);
+            ZonedBuilding b = new ZonedBuilding(map, 3, 2, new LookPolicy(), 5, traffic);
+            b.run(20_000);
+            b.run(30_000); // no new trips: let the last ones finish
+            assert b.arrived() > 800 : "Arrived " + b.arrived();
+            assert b.delivered() == b.arrived() : b.delivered() + " of " + b.arrived() + " delivered";
+            assert b.transfers() > b.arrived() / 2 : "Up-peak trips above floor 26 must transfer: " + b.transfers();
+            for (int z = 0; z < 3; z++) {
+                assert b.inFlight(z) == 0 : "Riders left in zone " + z;
+                assert !b.bank(z).hasAnyRequests() : "Requests left in zone " + z;
+            }
+            assert b.tripTimes().count() == b.delivered() : "One trip time per delivery";
+            assert b.waitTimes().count() == b.arrived() + b.transfers() : "One wait per leg";
+        });
+    }
+
+    private static void testZonedBuildingIsDeterministic() {
+        test("Zoned building results do not depend on thread timing or run boundaries", () -> {
+            String expected = null;
+            for (int trial = 0; trial < 3; trial++) {
+                ZoneMap map = ZoneMap.even(0, 59, 4);
+                TrafficSource traffic = new TrafficGenerator(0, 59, 0.08, 8_000, 5);
+                ZonedBuilding b = new ZonedBuilding(map, 2, 2, new LookPolicy(), 1, traffic);
+                if (trial == 2) {
+                    for (long t = 997; t < 8_000; t += 997)
+                        b.run(t);
+                }
+                b.run(8_000);
+                String got = b.delivered() + " " + b.transfers() + " " + b.tripTimes() + " " + b.waitTimes();
+                for (int z = 0; z < 4; z++)
+                    for (int car = 0; car < 2; car++)
+                        got += " " + b.bank(z).snapshot(car);
+                assert expected == null || expected.equals(got) : "Trial " + trial + " differs:\n" + got + "\nvs\n" + expected;
+                expected = got;
+            }
+        });
+    }
+
+    // ============ Predictive Parking Tests ============
+
+    private static void testDemandModelRanksDecayedDemand() {
+        test("Demand model ranks floors per time bucket, recent calls counting most", () -> {
+            // 10 buckets of 100 ticks: a 1000-tick day; half-life of one day.
+            DemandModel m = new DemandModel(0, 20, 100, 10, 1000, 0, 3);
+            assert m.predictedFloor(0, 0) == FloorBitSet.NONE : "Nothing recorded yet";
+            for (int i = 0; i < 4; i++)
+                m.record(10 + i, 7, Direction.UP); // day 0, bucket 0
+            for (int i = 0; i < 3; i++)
+                m.record(20 + i, 3, Direction.DOWN);
+            m.record(30, 3, Direction.UP);
+            m.record(150, 12, Direction.UP); // bucket 1
+            assert m.predictedFloor(50, 0) == 3 || m.predictedFloor(50, 0) == 7 : "Top of bucket 0";
+            assert m.predictedFloor(50, 2) == FloorBitSet.NONE : "Only two floors called in bucket 0";
+            assert m.predictedFloor(120, 0) == 12 : "Bucket 1 has its own floors";
+            assert m.predictedFloor(1_050, 0) == m.predictedFloor(50, 0) : "Buckets repeat each day";
+            // Two days later, three calls at floor 15 outweigh four at floor 7 from day 0.
+            for (int i = 0; i < 3; i++)
+                m.record(2_010 + i, 15, Direction.UP);
+            assert m.predictedFloor(2_050, 0) == 15 : "Recent demand should lead: " + m.predictedFloor(2_050, 0);
+            double s = m.score(2_013, 15, Direction.UP);
+            assert s > 2.99 && s < 3.01 : "Fresh calls score about 1 each: " + s;
+            double old = m.score(2_000, 7, Direction.UP);
+            assert old > 0.99 && old < 1.01 : "Four calls two half-lives old score about 1: " + old;
+            // Far in the future the weights are rescaled; the order survives.
+            m.record(2_000_000_010L, 4, Direction.UP);
+            m.record(2_000_000_011L, 4, Direction.UP);
+            m.record(2_000_000_012L, 9, Direction.DOWN);
+            assert m.predictedFloor(2_000_000_050L, 0) == 4 && m.predictedFloor(2_000_000_050L, 1) == 9
+                    : "Order after rescaling";
+            assert m.steadyThrough(120) == 199 : "Prediction holds to the end of the bucket";
+            assert m.calls() == 15 : "Calls " + m.calls();
+        });
+    }
+
+    private static void testIdleCarParksAtPredictedFloor() {
+        test("An idle car parks where the model expects the next call, and serves calls first", () -> {
+            DemandModel m = new DemandModel(0, 20, 100, 10, 1000, 0, 1);
+            for (int i = 0; i < 5; i++)
+                m.record(1_010 + i, 14, Direction.DOWN); // bucket 0: floor 14
+            Elevator cab = new Elevator(0, 20, 2);
+            Controller c = new Controller(cab, new Scheduler(0, 20), 2);
+            c.resume(2_000); // bucket 0 of a later day
+            c.parkBy(m);
+            for (int t = 0; t < 30; t++)
+                c.tick();
+            assert cab.currentFloor == 14 && cab.direction == Direction.IDLE && !cab.doorOpen
+                    : "Should wait at 14: " + c.snapshot();
+            c.submitHallCall(4, Direction.UP);
+            for (int t = 0; t < 15; t++)
+                c.tick();
+            assert c.snapshot().up.isEmpty() : "Parking must not delay calls";
+            for (int t = 0; t < 40; t++)
+                c.tick();
+            assert cab.currentFloor == 14 : "Back to park after serving: " + c.snapshot();
+            assert m.calls() == 6 : "The car's own hall calls teach the model";
+            c.parkBy(null);
+            c.submitCarCall(0);
+            for (int t = 0; t < 40; t++)
+                c.tick();
+            assert cab.currentFloor == 0 : "Without a model the car stays where it stops";
+        });
+    }
+
+    private static void testParkingEngineMatchesTickLoop() {
+        test("Event engine matches tick() with parking, skipping quiet waits", () -> {
+            for (long seed = 1; seed <= 10; seed++) {
+                java.util.Random rnd = new java.util.Random(seed);
+                int n = 80;
+                long[] at = new long[n];
+                int[] floor = new int[n], kind = new int[n];
+                for (int i = 0; i < n; i++) {
+                    at[i] = rnd.nextInt(20_000);
+                    floor[i] = rnd.nextInt(4) == 0 ? 0 : rnd.nextInt(31);
+                    kind[i] = floor[i] == 0 ? 0 : rnd.nextInt(3);
+                }
+                Integer[] order = new Integer[n];
+                for (int i = 0; i < n; i++)
+                    order[i] = i;
+                java.util.Arrays.sort(order, java.util.Comparator.comparingLong(i -> at[i]));
+
+                Controller c1 = new Controller(new Elevator(0, 30, 15), new Scheduler(0, 30), 2);
+                c1.parkBy(new DemandModel(0, 30, 500, 8, 4000, 100, 1));
+                for (long t = 0, i = 0; t < 25_000; t++) {
+                    for (; i < n && at[order[(int) i]] == t; i++)
+                        submit(c1, kind[order[(int) i]], floor[order[(int) i]]);
+                    c1.tick();
+                }
+
+                Controller c2 = new Controller(new Elevator(0, 30, 15), new Scheduler(0, 30), 2);
+                c2.parkBy(new DemandModel(0, 30, 500, 8, 4000, 100, 1));
+                SimulationEngine engine = new SimulationEngine(c2);
+                for (int i : order) {
+                    if (kind[i] == 2)
+                        engine.scheduleCarCall(at[i], floor[i]);
+                    else
+                        engine.scheduleHallCall(at[i], floor[i], kind[i] == 0 ? Direction.UP : Direction.DOWN);
+                }
+                engine.runUntil(25_000, null);
+                assert c2.snapshot().toString().equals(c1.snapshot().toString())
+                        : "seed " + seed + ": " + c2.snapshot() + " vs " + c1.snapshot();
+                assert c2.counters().toString().equals(c1.counters().toString())
+                        : "seed " + seed + ": " + c2.counters() + " vs " + c1.counters();
+                assert engine.ticksRun() < 12_000 : "Parked waits should be skipped, ran " + engine.ticksRun();
+            }
+        });
+    }
+
+    private static void testGroupParksIdleCarsApart() {
+        test("A bank parks its idle cars at the hottest floors, nearest car first", () -> {
+            DemandModel m = new DemandModel(0, 30, 1000, 1, 100_000, 0, 2);
+            GroupController g = new GroupController(
+                    new Elevator[] { new Elevator(0, 30, 0), new Elevator(0, 30, 30) }, 1, 1);
+            g.parkBy(m);
+            for (int i = 0; i < 3; i++) {
+                g.submitHallCall(5, Direction.UP);
+                g.submitHallCall(25, Direction.DOWN);
+                g.submitHallCall(25, Direction.UP);
+                for (int t = 0; t < 80; t++)
+                    g.tick();
+            }
+            assert m.predictedFloor(0, 0) == 25 && m.predictedFloor(0, 1) == 5 : "Model learned from the bank";
+            assert g.cab(1).currentFloor == 25 && g.cab(0).currentFloor == 5
+                    : "Cars should wait at 5 and 25: " + g.snapshot(0) + " / " + g.snapshot(1);
+            g.shutdown();
+
+            // Batch assignment holds a call until the next tick; repeat presses are one call.
+            DemandModel batch = new DemandModel(0, 30, 1000, 1, 100_000, 0, 2);
+            GroupController held = new GroupController(
+                    new Elevator[] { new Elevator(0, 30, 0), new Elevator(0, 30, 30) }, 1, 1, new LookPolicy(), MS);
+            held.parkBy(batch);
+            for (int i = 0; i < 4; i++)
+                held.submitHallCall(12, Direction.UP);
+            held.tick();
+            held.submitHallCall(12, Direction.UP); // now owned: coalesced
+            assert batch.calls() == 1 : "Repeat presses of a held call counted " + batch.calls() + " times";
+            held.shutdown();
+        });
+    }
+
+    private static void testParkingCutsWaits() {
+        test("Predictive parking cuts simulated waits on a working day", () -> {
+            double[] mean = new double[2];
+            long[] p50 = new long[2];
+            for (int parked = 0; parked < 2; parked++) {
+                Elevator cab = new Elevator(0, 19, 0);
+                Controller c = new Controller(cab, new Scheduler(0, 19), 3);
+                long day = DemandModel.DailyTraffic.DAY;
+                if (parked == 1)
+                    c.parkBy(new DemandModel(0, 19, day / 48, 48, 2 * day, day / 96, 1));
+                TrafficSimulation sim = new TrafficSimulation(c, cab, new DemandModel.DailyTraffic(0, 19, 4, 1));
+                sim.run(day);
+                sim.waitTimes().reset();
+                sim.run(4 * day);
+                mean[parked] = sim.waitTimes().mean();
+                p50[parked] = sim.waitTimes().percentile(50);
+            }
+            assert mean[1] < 0.95 * mean[0] && p50[1] < p50[0]
+                    : "Parked mean " + mean[1] + " p50 " + p50[1] + " vs " + mean[0] + " p50 " + p50[0];
+        });
+    }
+
+    private static void testParkingIsNotJournalledOrCheckpointed() {
+        test("Parking refuses a journal either way round, and a checkpoint restores without it", () -> {
+            DemandModel m = new DemandModel(0, 20, 100, 1, 1000, 0, 1);
+            m.record(0, 7, Direction.UP);
+            java.nio.file.Path dir = tempDir();
+            try {
+                Controller parked = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+                parked.parkBy(m);
+                try {
+                    Journal.attach(parked, dir);
+                    assert false : "Journal should refuse a parked controller";
+                } catch (IllegalStateException expected) {
+                }
+
+                Controller journalled = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+                Journal j = Journal.attach(journalled, dir);
+                try {
+                    journalled.parkBy(m);
+                    assert false : "parkBy should refuse a journalled controller";
+                } catch (IllegalStateException expected) {
+                }
+                for (int t = 0; t < 20; t++)
+                    journalled.tick();
+                j.close();
+                assert journalled.cab().currentFloor == 0 : "The refused model must not move the car";
+                JournalReplayer.replay(dir); // still replays
+            } finally {
+                deleteTree(dir);
+            }
+
+            Controller c = new Controller(new Elevator(0, 20, 0), new Scheduler(0, 20), 2);
+            c.parkBy(m);
+            c.tick();
+            Controller restored = Checkpoint.fromBytes(c.checkpoint().toBytes()).restore();
+            for (int t = 0; t < 20; t++) {
+                c.tick();
+                restored.tick();
+            }
+            assert c.cab().currentFloor == 7 : "Live car parks at 7: " + c.snapshot();
+            assert restored.cab().currentFloor == 1 : "Restored car stays put: " + restored.snapshot();
+            restored.parkBy(m);
+            for (int t = 0; t < 20; t++)
+                restored.tick();
+            assert restored.cab().currentFloor == 7 : "Parks again once told to: " + restored.snapshot();
+        });
+    }
+
     private static void test(String name, Runnable testLogic) {
         testsRun++;
         try {
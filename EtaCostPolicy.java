@@ -0,0 +1,101 @@
+/**
+ * Cost-based dispatch: whenever no rider aboard is bound ahead, compare sweeping
+ * up first with sweeping down first, and take the plan with the lower estimated
+ * wait over every pending request. A request's estimated wait is its age plus the
+ * floors the plan travels before reaching it; the waits are squared before
+ * summing, so old calls weigh more and cannot be passed over forever. Stops follow
+ * LOOK in both the arriving and the chosen direction.
+ *
+ * In a group, a hall call goes to the car where it adds the least: its own ETA,
+ * including the stops queued before it, plus one dwell for every request the car
+ * reaches after it, unless the car already stops at that floor.
+ */
+public final class EtaCostPolicy implements DispatchPolicy {
+    private static final Direction[] CLASSES = { Direction.UP, Direction.DOWN, Direction.IDLE };
+
+    @Override
+    public boolean shouldStop(Scheduler s, int floor, Direction dir) {
+        // Serve what LOOK would serve on arrival, and also anything the plan is
+        // about to head off with, so the car never turns away from a call here.
+        if (s.shouldStopHere(floor, dir))
+            return true;
+        Direction plan = plan(s, floor, dir, 0);
+        return plan != Direction.IDLE && s.shouldStopHere(floor, plan);
+    }
+
+    @Override
+    public Direction nextDirection(Scheduler s, int floor, Direction dir) {
+        return plan(s, floor, dir, 0);
+    }
+
+    @Override
+    public int quietFloors(Scheduler s, int floor, Direction dir) {
+        // Each floor travelled shortens every wait under the chosen plan by as much
+        // as time lengthens it, and lengthens every wait under the other plan, so
+        // the choice holds until the car reaches the next request of any class. A
+        // call left behind here changes the comparison, so step past it first. The
+        // next tick decides with the clock one tick on.
+        if (s.shouldStopHere(floor, Direction.IDLE) || plan(s, floor, dir, 1) != dir)
+            return 0;
+        return Math.abs(s.nextRequest(floor, dir) - floor);
+    }
+
+    @Override
+    public long assignmentCost(Elevator cab, Scheduler s, int floor, Direction dir, int dwellTicks) {
+        Direction heading = s.hasAnyRequests() ? cab.direction : Direction.IDLE;
+        int cur = cab.currentFloor, top = s.highestRequest(), bottom = s.lowestRequest();
+        long eta = LookPolicy.travel(cur, heading, top, bottom, floor, dir);
+        long before = 0, after = 0;
+        boolean shared = false;
+        for (Direction cls : CLASSES) {
+            FloorBitSet set = s.requests(cls);
+            for (int r = set.first(); r != FloorBitSet.NONE; r = set.higher(r)) {
+                long t = LookPolicy.travel(cur, heading, top, bottom, r, cls);
+                if (t < eta)
+                    before++;
+                else if (t > eta)
+                    after++;
+                else if (r == floor)
+                    shared = true;
+            }
+        }
+        long doors = cab.doorOpen ? cab.doorDwellTicks : 0;
+        return eta + doors + dwellTicks * (before + (shared ? 0 : after));
+    }
+
+    /**
+     * The direction to take from here, or IDLE when nothing is pending elsewhere,
+     * judged {@code ahead} ticks after the scheduler's clock.
+     */
+    private static Direction plan(Scheduler s, int floor, Direction dir, int ahead) {
+        if (dir != Direction.IDLE && s.hasCarCallAhead(floor, dir))
+            return dir; // never carry riders away from their stops
+        boolean up = s.hasAhead(floor, Direction.UP), down = s.hasAhead(floor, Direction.DOWN);
+        if (!up || !down)
+            return up ? Direction.UP : down ? Direction.DOWN : Direction.IDLE;
+        long now = s.clock() + ahead;
+        double costUp = cost(s, floor, Direction.UP, now), costDown = cost(s, floor, Direction.DOWN, now);
+        if (costUp != costDown)
+            return costUp < costDown ? Direction.UP : Direction.DOWN;
+        return dir == Direction.DOWN ? Direction.DOWN : Direction.UP;
+    }
+
+    /** Sum of squared estimated waits if the car sets off in {@code first} now. */
+    private static double cost(Scheduler s, int floor, Direction first, long now) {
+        int top = s.highestRequest(), bottom = s.lowestRequest();
+        double sum = 0;
+        for (Direction cls : CLASSES) {
+            FloorBitSet set = s.requests(cls);
+            for (int r = set.first(); r != FloorBitSet.NONE; r = set.higher(r)) {
+                double wait = now - s.pressedAt(cls, r) + LookPolicy.travel(floor, first, top, bottom, r, cls);
+                sum += wait * wait;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "ETA";
+    }
+}
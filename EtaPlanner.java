@@ -0,0 +1,120 @@
+/**
+ * Answers "how many ticks until the doors open for this call" by walking the
+ * car's planned route stop by stop, never tick by tick.
+ *
+ * From the cab's state the walk asks the dispatch policy the same questions
+ * Controller.tick() does, but jumps whole legs at once using the policy's
+ * quietFloors(): for LOOK that is straight to the next stop or turnaround, so a
+ * route costs O(stops) bitmap scans. A stop costs one tick plus the dwell; going
+ * idle before a turn costs one tick. With no new presses the real car follows the
+ * same route, so the answers agree exactly with ticking a copy forward.
+ *
+ * The ETA of every pending request is cached per plan and aged by the ticks run
+ * since; clears along the route keep the plan valid, and only a new request
+ * (Scheduler.version()) makes the next query walk again. Presses still sitting
+ * in the RequestInbox are not counted until a tick drains them.
+ */
+final class EtaPlanner {
+    /** Returned when the policy would leave the call unserved with no new presses. */
+    static final long NEVER = -1;
+
+    private final Elevator cab;
+    private final Scheduler live;
+    private final DispatchPolicy policy;
+    private final int dwellTicks;
+    private final Scheduler scratch; // reused copy the walk clears as it goes
+
+    // Cached plan: first stop per floor, in ticks after plannedAt. An entry is
+    // valid only when its stamp equals plan, so a new plan never clears arrays.
+    private final long[] firstStop;
+    private final long[] stamp;
+    private long plan;
+    private long plannedAt = -1, plannedVersion = -1;
+
+    EtaPlanner(Elevator cab, Scheduler live, DispatchPolicy policy, int dwellTicks) {
+        this.cab = cab;
+        this.live = live;
+        this.policy = policy;
+        this.dwellTicks = dwellTicks;
+        this.scratch = new Scheduler(live.minFloor(), live.maxFloor());
+        int floors = live.maxFloor() - live.minFloor() + 1;
+        this.firstStop = new long[floors];
+        this.stamp = new long[floors];
+    }
+
+    /**
+     * Ticks until a request of class {@code cls} (UP/DOWN hall call, IDLE for a car
+     * call) at {@code floor} is served, pressing it now if it is not pending.
+     */
+    long eta(int floor, Direction cls, long now) {
+        if (live.requests(cls).contains(floor)) {
+            refresh(now);
+            long at = stamp[floor - live.minFloor()] == plan ? firstStop[floor - live.minFloor()] : NEVER;
+            return at == NEVER ? NEVER : at - (now - plannedAt);
+        }
+        // A new call can change the route before it is reached, so walk with it added.
+        scratch.copyRequestsFrom(live);
+        if (cls == Direction.IDLE)
+            scratch.submitCarCall(floor);
+        else
+            scratch.submitHallCall(floor, cls);
+        return walk(now, floor);
+    }
+
+    /** Re-plans if a request was added since the cached plan, or time went backwards. */
+    private void refresh(long now) {
+        if (plannedVersion == live.version() && plannedAt >= 0 && plannedAt <= now)
+            return;
+        scratch.copyRequestsFrom(live);
+        plan++;
+        walk(now, FloorBitSet.NONE);
+        plannedAt = now;
+        plannedVersion = live.version();
+    }
+
+    /**
+     * Follows the route on the scratch copy. Records the first stop at every floor
+     * in the cached plan, or, with a target floor, returns as soon as the car stops
+     * there. Returns NEVER if the target is not reached.
+     */
+    private long walk(long now, int target) {
+        int p = cab.currentFloor;
+        Direction d = cab.direction;
+        long t = cab.doorOpen ? Math.max(cab.doorDwellTicks, 1) : 0;
+        int floors = live.maxFloor() - live.minFloor() + 1;
+        // Safety net for policies that never settle: enough for every request to
+        // cost a full building sweep.
+        long budget = 2L * (scratch.pendingCount() + 2) * (floors + 2);
+        while (scratch.hasAnyRequests() && budget-- > 0) {
+            scratch.setClock(now + t + 1);
+            if (policy.shouldStop(scratch, p, d)) {
+                if (p == target)
+                    return t + 1;
+                if (target == FloorBitSet.NONE && stamp[p - live.minFloor()] != plan) {
+                    firstStop[p - live.minFloor()] = t + 1;
+                    stamp[p - live.minFloor()] = plan;
+                }
+                scratch.clearAt(p);
+                t += 1 + dwellTicks;
+                continue;
+            }
+            Direction next = policy.nextDirection(scratch, p, d);
+            if (next == Direction.IDLE) {
+                if (d == Direction.IDLE)
+                    break; // resting with work left: the policy will not serve it
+                d = Direction.IDLE;
+                t++;
+                continue;
+            }
+            d = next;
+            int step = d == Direction.UP ? 1 : -1;
+            p += step;
+            t++;
+            scratch.setClock(now + t);
+            int quiet = policy.quietFloors(scratch, p, d);
+            p += step * quiet;
+            t += quiet;
+        }
+        return NEVER;
+    }
+}
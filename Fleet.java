@@ -0,0 +1,246 @@
+/**
+ * Many independent cars stored as parallel primitive arrays instead of one
+ * Elevator object per cab, for city-scale studies with tens of thousands of cars.
+ *
+ * tick() runs the same door/stop/move logic as Controller.tick() for every car,
+ * split into passes: a branch-light door countdown over all cars, a decision pass
+ * that only visits cars with closed doors, and a move pass that adds each car's
+ * step to its floor. The first and last passes are straight array loops the JIT
+ * can unroll and vectorize.
+ *
+ * Each car's hall and car calls live in one flat bitmap per request class, at
+ * car * wordsPerCar. Hall calls are submitted to a specific car; assigning them
+ * is up to the caller.
+ */
+public final class Fleet {
+    private static final byte UP = (byte) Direction.UP.ordinal();
+    private static final byte DOWN = (byte) Direction.DOWN.ordinal();
+    private static final byte IDLE = (byte) Direction.IDLE.ordinal();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public final int minFloor, maxFloor;
+    private final int cars;
+    private final int dwellTicks;
+    private final int wordsPerCar;
+    private final int nbits;
+
+    // Cab state, one slot per car.
+    final int[] floor;
+    final byte[] direction; // Direction ordinal
+    final byte[] doorOpen;  // 0 or 1
+    final int[] dwell;
+    final long[] travelled;
+    private final byte[] busy; // doors were open at the start of this tick
+    private final byte[] step; // -1, 0 or +1 floors this tick
+
+    // Requests: bitmaps over floor - minFloor, wordsPerCar words per car.
+    private final long[] upHall, downHall, carStops;
+
+    public Fleet(int cars, int minFloor, int maxFloor, int dwellTicks) {
+        if (cars < 1)
+            throw new IllegalArgumentException("need at least one car");
+        if (minFloor > maxFloor)
+            throw new IllegalArgumentException("min > max");
+        this.cars = cars;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.dwellTicks = Math.max(1, dwellTicks);
+        this.nbits = maxFloor - minFloor + 1;
+        this.wordsPerCar = (nbits + 63) >>> 6;
+        this.floor = new int[cars];
+        this.direction = new byte[cars];
+        this.doorOpen = new byte[cars];
+        this.dwell = new int[cars];
+        this.travelled = new long[cars];
+        this.busy = new byte[cars];
+        this.step = new byte[cars];
+        java.util.Arrays.fill(floor, minFloor);
+        java.util.Arrays.fill(direction, IDLE);
+        this.upHall = new long[cars * wordsPerCar];
+        this.downHall = new long[cars * wordsPerCar];
+        this.carStops = new long[cars * wordsPerCar];
+    }
+
+    public int size() {
+        return cars;
+    }
+
+    public void place(int car, int f) {
+        validate(f);
+        floor[car] = f;
+    }
+
+    public void submitHallCall(int car, int f, Direction dir) {
+        validate(f);
+        if (dir == Direction.UP)
+            set(upHall, car, f);
+        else if (dir == Direction.DOWN)
+            set(downHall, car, f);
+        else
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+    }
+
+    public void submitCarCall(int car, int f) {
+        validate(f);
+        set(carStops, car, f);
+    }
+
+    private void validate(int f) {
+        if (f < minFloor || f > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + f);
+    }
+
+    private void set(long[] bits, int car, int f) {
+        int i = f - minFloor;
+        bits[car * wordsPerCar + (i >>> 6)] |= 1L << i;
+    }
+
+    /** Advance every car by one tick, with the same rules as Controller.tick(). */
+    public void tick() {
+        final int n = cars;
+
+        // 1) Doors: count down dwell and close at zero. Cars whose doors were open
+        // do nothing else this tick.
+        for (int i = 0; i < n; i++) {
+            int open = doorOpen[i];
+            int d = dwell[i] - open;
+            dwell[i] = d;
+            doorOpen[i] = (byte) (d > 0 ? open : 0);
+            busy[i] = (byte) open;
+        }
+
+        // 2) Stop or pick a direction, for cars with closed doors.
+        for (int i = 0; i < n; i++) {
+            step[i] = 0;
+            if (busy[i] == 0)
+                decide(i);
+        }
+
+        // 3) Move.
+        for (int i = 0; i < n; i++) {
+            int s = step[i];
+            floor[i] += s;
+            travelled[i] += s & 1;
+        }
+    }
+
+    private void decide(int car) {
+        int base = car * wordsPerCar;
+        int k = floor[car] - minFloor;
+        byte d = direction[car];
+
+        if (shouldStopHere(base, k, d)) {
+            clear(base, k);
+            doorOpen[car] = 1;
+            dwell[car] = dwellTicks;
+            return;
+        }
+
+        if (d == IDLE)
+            d = pickFromIdle(base, k);
+        if (d != IDLE) {
+            if (hasAhead(base, k, d)) {
+                step[car] = (byte) (d == UP ? 1 : -1);
+            } else if (hasBehind(base, k, d)) {
+                d = d == UP ? DOWN : UP;
+                step[car] = (byte) (d == UP ? 1 : -1);
+            } else {
+                d = IDLE;
+            }
+        }
+        direction[car] = d;
+    }
+
+    // ---- Scheduler rules over the flat bitmaps; k is floor - minFloor ----
+
+    private static boolean has(long[] bits, int base, int k) {
+        return (bits[base + (k >>> 6)] & (1L << k)) != 0;
+    }
+
+    private boolean above(long[] bits, int base, int k) {
+        return k + 1 < nbits && FloorBitSet.nextSetBit(bits, base, wordsPerCar, k + 1) >= 0;
+    }
+
+    private static boolean below(long[] bits, int base, int k) {
+        return FloorBitSet.previousSetBit(bits, base, k - 1) >= 0;
+    }
+
+    private boolean shouldStopHere(int base, int k, byte d) {
+        if (has(carStops, base, k))
+            return true;
+        if (d == UP)
+            return has(upHall, base, k) || (has(downHall, base, k) && !hasAhead(base, k, d));
+        if (d == DOWN)
+            return has(downHall, base, k) || (has(upHall, base, k) && !hasAhead(base, k, d));
+        return has(upHall, base, k) || has(downHall, base, k);
+    }
+
+    private boolean hasAhead(int base, int k, byte d) {
+        if (d == UP)
+            return above(upHall, base, k) || above(carStops, base, k) || above(downHall, base, k);
+        return below(downHall, base, k) || below(carStops, base, k) || below(upHall, base, k);
+    }
+
+    private boolean hasBehind(int base, int k, byte d) {
+        if (d == UP)
+            return below(upHall, base, k) || below(carStops, base, k) || below(downHall, base, k);
+        return above(downHall, base, k) || above(carStops, base, k) || above(upHall, base, k);
+    }
+
+    private byte pickFromIdle(int base, int k) {
+        if (above(upHall, base, k) || above(downHall, base, k) || above(carStops, base, k))
+            return UP;
+        if (below(upHall, base, k) || below(downHall, base, k) || below(carStops, base, k))
+            return DOWN;
+        return IDLE;
+    }
+
+    private void clear(int base, int k) {
+        long mask = ~(1L << k);
+        int w = base + (k >>> 6);
+        upHall[w] &= mask;
+        downHall[w] &= mask;
+        carStops[w] &= mask;
+    }
+
+    public boolean hasAnyRequests(int car) {
+        int base = car * wordsPerCar;
+        for (int w = base; w < base + wordsPerCar; w++)
+            if ((upHall[w] | downHall[w] | carStops[w]) != 0)
+                return true;
+        return false;
+    }
+
+    // ---- adapters for inspection ----
+
+    public int floor(int car) {
+        return floor[car];
+    }
+
+    public Direction direction(int car) {
+        return DIRECTIONS[direction[car]];
+    }
+
+    public boolean doorOpen(int car) {
+        return doorOpen[car] != 0;
+    }
+
+    /** A detached Elevator holding one car's current state. */
+    public Elevator elevator(int car) {
+        Elevator e = new Elevator(minFloor, maxFloor, floor[car]);
+        e.direction = direction(car);
+        e.doorOpen = doorOpen[car] != 0;
+        e.doorDwellTicks = dwell[car];
+        e.floorsTravelled = travelled[car];
+        return e;
+    }
+
+    /** One car's state in the same form as Controller.snapshot(); copies the request sets. */
+    public Controller.Snapshot snapshot(int car) {
+        int base = car * wordsPerCar;
+        return new Controller.Snapshot(floor[car], direction(car), doorOpen[car] != 0,
+                FloorBitSet.copyOf(minFloor, maxFloor, upHall, base).view(),
+                FloorBitSet.copyOf(minFloor, maxFloor, downHall, base).view(),
+                FloorBitSet.copyOf(minFloor, maxFloor, carStops, base).view());
+    }
+}
@@ -0,0 +1,330 @@
+import java.util.*;
+
+/**
+ * A set of floors in a fixed building range, packed into a long[] bitmap indexed
+ * by floor - minFloor. Lookups are word-level bit scans; nothing allocates except
+ * the read-only view.
+ *
+ * {@link #fork()} shares the bitmap with the copy until either side writes, so
+ * forking is O(1) and the first write after it pays for one array copy.
+ */
+public final class FloorBitSet {
+    /**
+     * Returned by higher/lower/first/last when there is no such floor. It is
+     * never a floor: ranges may not start at Integer.MIN_VALUE.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    final int minFloor, maxFloor;
+    private final int nbits;
+    long[] words;
+    private int size;
+    private boolean shared; // words may also belong to a fork; copy before writing
+
+    public FloorBitSet(int minFloor, int maxFloor) {
+        if (minFloor > maxFloor)
+            throw new IllegalArgumentException("min > max");
+        if (minFloor == NONE)
+            throw new IllegalArgumentException("Lowest floor must be above Integer.MIN_VALUE");
+        long span = (long) maxFloor - minFloor + 1;
+        if (span > Integer.MAX_VALUE - 63)
+            throw new IllegalArgumentException("Floor range too large: " + span);
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.nbits = (int) span;
+        this.words = new long[(nbits + 63) >>> 6];
+    }
+
+    /** A standalone copy of the bitmap stored at words[base, base + wordCount). */
+    static FloorBitSet copyOf(int minFloor, int maxFloor, long[] words, int base) {
+        FloorBitSet s = new FloorBitSet(minFloor, maxFloor);
+        System.arraycopy(words, base, s.words, 0, s.words.length);
+        for (long w : s.words)
+            s.size += Long.bitCount(w);
+        return s;
+    }
+
+    private FloorBitSet(FloorBitSet from) {
+        this.minFloor = from.minFloor;
+        this.maxFloor = from.maxFloor;
+        this.nbits = from.nbits;
+        this.words = from.words;
+        this.size = from.size;
+        this.shared = true;
+    }
+
+    /** An independent copy that shares storage with this set until either is written. */
+    FloorBitSet fork() {
+        shared = true;
+        return new FloorBitSet(this);
+    }
+
+    private void own() {
+        if (shared) {
+            words = words.clone();
+            shared = false;
+        }
+    }
+
+    /** Overwrites this set with another over the same floor range. */
+    void copyFrom(FloorBitSet other) {
+        if (other.minFloor != minFloor || other.maxFloor != maxFloor)
+            throw new IllegalArgumentException("floor ranges differ");
+        if (shared) {
+            words = new long[words.length];
+            shared = false;
+        }
+        System.arraycopy(other.words, 0, words, 0, words.length);
+        size = other.size;
+    }
+
+    public boolean contains(int floor) {
+        if (floor < minFloor || floor > maxFloor)
+            return false;
+        int i = floor - minFloor;
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /** Adds a floor; returns true if it was not already present. */
+    public boolean add(int floor) {
+        check(floor);
+        int i = floor - minFloor;
+        long bit = 1L << i;
+        long w = words[i >>> 6];
+        if ((w & bit) != 0)
+            return false;
+        own();
+        words[i >>> 6] = w | bit;
+        size++;
+        return true;
+    }
+
+    /** Removes a floor; returns true if it was present. */
+    public boolean remove(int floor) {
+        if (floor < minFloor || floor > maxFloor)
+            return false;
+        int i = floor - minFloor;
+        long bit = 1L << i;
+        long w = words[i >>> 6];
+        if ((w & bit) == 0)
+            return false;
+        own();
+        words[i >>> 6] = w & ~bit;
+        size--;
+        return true;
+    }
+
+    /** Overwrites one word of the bitmap, e.g. when loading it from elsewhere. */
+    void setWord(int i, long w) {
+        own();
+        size += Long.bitCount(w) - Long.bitCount(words[i]);
+        words[i] = w;
+    }
+
+    public void clear() {
+        if (shared) {
+            words = new long[words.length];
+            shared = false;
+        } else {
+            Arrays.fill(words, 0L);
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Smallest floor strictly above {@code floor}, or {@link #NONE}. */
+    public int higher(int floor) {
+        if (size == 0 || floor >= maxFloor)
+            return NONE;
+        int from = floor < minFloor ? 0 : floor - minFloor + 1;
+        int i = nextSetBit(words, from);
+        return i < 0 ? NONE : minFloor + i;
+    }
+
+    /** Largest floor strictly below {@code floor}, or {@link #NONE}. */
+    public int lower(int floor) {
+        if (size == 0 || floor <= minFloor)
+            return NONE;
+        int from = floor > maxFloor ? nbits - 1 : floor - minFloor - 1;
+        int i = previousSetBit(words, from);
+        return i < 0 ? NONE : minFloor + i;
+    }
+
+    /** Lowest floor in the set, or {@link #NONE}. */
+    public int first() {
+        return firstIn(minFloor, maxFloor);
+    }
+
+    /** Highest floor in the set, or {@link #NONE}. */
+    public int last() {
+        return lastIn(minFloor, maxFloor);
+    }
+
+    private void check(int floor) {
+        if (floor < minFloor || floor > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+    }
+
+    // ---- word-level scans, shared with other bitmap users ----
+
+    /** Index of the first set bit at or after {@code from}, or -1. */
+    static int nextSetBit(long[] words, int from) {
+        return nextSetBit(words, 0, words.length, from);
+    }
+
+    /** Index of the last set bit at or before {@code from}, or -1. */
+    static int previousSetBit(long[] words, int from) {
+        return previousSetBit(words, 0, from);
+    }
+
+    /**
+     * Like {@link #nextSetBit(long[], int)} over the bitmap stored in
+     * words[base, base + len); bit indexes are relative to base.
+     */
+    static int nextSetBit(long[] words, int base, int len, int from) {
+        int u = from >>> 6;
+        if (u >= len)
+            return -1;
+        long w = words[base + u] & (-1L << from);
+        while (true) {
+            if (w != 0)
+                return (u << 6) + Long.numberOfTrailingZeros(w);
+            if (++u == len)
+                return -1;
+            w = words[base + u];
+        }
+    }
+
+    /** Like {@link #previousSetBit(long[], int)} over the bitmap starting at words[base]. */
+    static int previousSetBit(long[] words, int base, int from) {
+        if (from < 0)
+            return -1;
+        int u = from >>> 6;
+        long w = words[base + u] & (-1L >>> -(from + 1));
+        while (true) {
+            if (w != 0)
+                return (u + 1) * 64 - 1 - Long.numberOfLeadingZeros(w);
+            if (u-- == 0)
+                return -1;
+            w = words[base + u];
+        }
+    }
+
+    // ---- read-only SortedSet adapter ----
+
+    /** Live, read-only view of this set, like Collections.unmodifiableSortedSet. */
+    public SortedSet<Integer> view() {
+        return new View(minFloor, maxFloor);
+    }
+
+    private final class View extends AbstractSet<Integer> implements SortedSet<Integer> {
+        private final int lo, hi; // inclusive bounds in floor space
+
+        View(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int next = firstIn(lo, hi);
+
+                @Override
+                public boolean hasNext() {
+                    return next != NONE;
+                }
+
+                @Override
+                public Integer next() {
+                    if (next == NONE)
+                        throw new NoSuchElementException();
+                    int f = next;
+                    next = f >= hi ? NONE : firstIn(f + 1, hi);
+                    return f;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            if (lo == minFloor && hi == maxFloor)
+                return size;
+            int n = 0;
+            for (int f = firstIn(lo, hi); f != NONE; f = f >= hi ? NONE : firstIn(f + 1, hi))
+                n++;
+            return n;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Integer))
+                return false;
+            int f = (Integer) o;
+            return f >= lo && f <= hi && FloorBitSet.this.contains(f);
+        }
+
+        @Override
+        public Comparator<? super Integer> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<Integer> subSet(Integer from, Integer to) {
+            if (from > to)
+                throw new IllegalArgumentException("fromKey > toKey");
+            return new View(Math.max(lo, from), Math.min(hi, below(to)));
+        }
+
+        @Override
+        public SortedSet<Integer> headSet(Integer to) {
+            return new View(lo, Math.min(hi, below(to)));
+        }
+
+        @Override
+        public SortedSet<Integer> tailSet(Integer from) {
+            return new View(Math.max(lo, from), hi);
+        }
+
+        private int below(int to) {
+            return to == Integer.MIN_VALUE ? to : to - 1; // empty range when lo > hi
+        }
+
+        @Override
+        public Integer first() {
+            int f = firstIn(lo, hi);
+            if (f == NONE)
+                throw new NoSuchElementException();
+            return f;
+        }
+
+        @Override
+        public Integer last() {
+            int f = lastIn(lo, hi);
+            if (f == NONE)
+                throw new NoSuchElementException();
+            return f;
+        }
+    }
+
+    private int firstIn(int lo, int hi) {
+        if (lo > hi)
+            return NONE;
+        int f = contains(lo) ? lo : higher(lo);
+        return f != NONE && f <= hi ? f : NONE;
+    }
+
+    private int lastIn(int lo, int hi) {
+        if (lo > hi)
+            return NONE;
+        int f = contains(hi) ? hi : lower(hi);
+        return f != NONE && f >= lo ? f : NONE;
+    }
+}
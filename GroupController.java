@@ -0,0 +1,275 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a bank of cars that share one hall-call pool. Every hall call is owned by
+ * exactly one car; car calls stay with the car they were pressed in.
+ *
+ * Each car keeps its own Scheduler holding the hall calls it owns plus its car
+ * calls, so the per-car part of a tick touches only that car's state and can run
+ * in parallel. Ownership is released in car order afterwards, so results do not
+ * depend on the number of threads.
+ *
+ * Given an assignment budget, hall calls are not assigned as they are pressed but
+ * held until the next tick and assigned together by an AssignmentOptimizer, so a
+ * burst is shared out as a whole. The optimizer's workers race, so that mode is
+ * not deterministic across thread counts.
+ */
+public final class GroupController {
+    static final int UNASSIGNED = -1;
+
+    private final Elevator[] cabs;
+    private final Scheduler[] queues;
+    private final Controller[] cars;
+    private final int minFloor, maxFloor;
+    private final int dwellTicks;
+    private final DispatchPolicy policy;
+
+    // Shared hall-call pool: owning car per floor offset, or UNASSIGNED.
+    private final int[] upOwner, downOwner;
+
+    private final ForkJoinPool pool; // null when ticking on the caller's thread
+
+    // Batch assignment: calls pressed since the last tick, and who shares them out.
+    private final AssignmentOptimizer optimizer; // null to assign each call as it is pressed
+    private final long assignBudgetNanos;
+    private final FloorBitSet heldUp, heldDown;
+    private AssignmentOptimizer.Result lastAssignment;
+    private long decisions;
+
+    // Idle parking: where cars with nothing to do wait, and which cars are spoken for.
+    private DemandModel parking; // null to leave idle cars where they stop
+    private boolean[] parked;
+
+    public GroupController(Elevator[] cabs, int dwellTicks, int parallelism) {
+        this(cabs, dwellTicks, parallelism, new LookPolicy());
+    }
+
+    /** Every car runs {@code policy}, which also assigns new hall calls. */
+    public GroupController(Elevator[] cabs, int dwellTicks, int parallelism, DispatchPolicy policy) {
+        this(cabs, dwellTicks, parallelism, policy, 0);
+    }
+
+    /**
+     * With {@code assignBudgetNanos} > 0, hall calls are held and assigned in a
+     * batch at the start of each tick, searching for at most that long.
+     */
+    public GroupController(Elevator[] cabs, int dwellTicks, int parallelism, DispatchPolicy policy,
+            long assignBudgetNanos) {
+        if (cabs.length == 0)
+            throw new IllegalArgumentException("need at least one car");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        if (assignBudgetNanos < 0)
+            throw new IllegalArgumentException("assignment budget must be >= 0");
+        this.minFloor = cabs[0].minFloor;
+        this.maxFloor = cabs[0].maxFloor;
+        this.dwellTicks = Math.max(1, dwellTicks);
+        this.policy = policy;
+        this.cabs = cabs.clone();
+        this.queues = new Scheduler[cabs.length];
+        this.cars = new Controller[cabs.length];
+        for (int i = 0; i < cabs.length; i++) {
+            if (cabs[i].minFloor != minFloor || cabs[i].maxFloor != maxFloor)
+                throw new IllegalArgumentException("all cars must serve the same floors");
+            queues[i] = new Scheduler(minFloor, maxFloor);
+            cars[i] = new Controller(cabs[i], queues[i], this.dwellTicks, policy);
+        }
+        this.upOwner = new int[maxFloor - minFloor + 1];
+        this.downOwner = new int[maxFloor - minFloor + 1];
+        Arrays.fill(upOwner, UNASSIGNED);
+        Arrays.fill(downOwner, UNASSIGNED);
+        this.pool = parallelism == 1 || cabs.length == 1 ? null : new ForkJoinPool(parallelism);
+        this.assignBudgetNanos = assignBudgetNanos;
+        this.optimizer = assignBudgetNanos == 0 ? null
+                : new AssignmentOptimizer(this.cabs, queues, policy, this.dwellTicks, pool);
+        this.heldUp = new FloorBitSet(minFloor, maxFloor);
+        this.heldDown = new FloorBitSet(minFloor, maxFloor);
+    }
+
+    /** Assigns a hall call to one car; a call that is already pending coalesces. */
+    public void submitHallCall(int floor, Direction dir) {
+        validate(floor);
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        int[] owner = dir == Direction.UP ? upOwner : downOwner;
+        if (owner[floor - minFloor] != UNASSIGNED)
+            return;
+        if (optimizer != null) {
+            // Assigned next tick; a repeat press before then is the same call.
+            if ((dir == Direction.UP ? heldUp : heldDown).add(floor) && parking != null)
+                parking.record(cars[0].now(), floor, dir);
+            return;
+        }
+        if (parking != null)
+            parking.record(cars[0].now(), floor, dir);
+        int car = bestCar(floor, dir);
+        owner[floor - minFloor] = car;
+        queues[car].submitHallCall(floor, dir);
+    }
+
+    public void submitCarCall(int car, int floor) {
+        queues[car].submitCarCall(floor);
+    }
+
+    private void validate(int f) {
+        if (f < minFloor || f > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + f);
+    }
+
+    /**
+     * Parks idle cars at the floors {@code model} expects hall calls from next,
+     * hottest first, each going to the nearest idle car, and teaches the model from
+     * the bank's hall calls. Pass null to leave idle cars where they stop.
+     */
+    public void parkBy(DemandModel model) {
+        this.parking = model;
+        this.parked = model == null ? null : new boolean[cars.length];
+        for (Controller c : cars)
+            c.parkBy(model, -1);
+    }
+
+    /** Advance every car by one tick. */
+    public void tick() {
+        // 0) Share out the hall calls held since the last tick.
+        if (optimizer != null && !(heldUp.isEmpty() && heldDown.isEmpty()))
+            assignHeld();
+        if (parking != null)
+            assignParking();
+
+        // 1) Per-car work: each Controller reads and writes only its own cab and queue.
+        if (pool == null) {
+            for (Controller c : cars)
+                c.tick();
+        } else {
+            pool.submit(() -> IntStream.range(0, cars.length).parallel().forEach(i -> cars[i].tick())).join();
+        }
+
+        // 2) Merge in car order: release hall calls a car cleared this tick. A car
+        // only ever clears at its current floor, so this is O(cars).
+        for (int i = 0; i < cars.length; i++) {
+            int f = cabs[i].currentFloor;
+            int k = f - minFloor;
+            if (upOwner[k] == i && !queues[i].hasHallCall(f, Direction.UP))
+                upOwner[k] = UNASSIGNED;
+            if (downOwner[k] == i && !queues[i].hasHallCall(f, Direction.DOWN))
+                downOwner[k] = UNASSIGNED;
+        }
+    }
+
+    /** Gives each of the model's hot floors, hottest first, to the nearest car with nothing to do. */
+    private void assignParking() {
+        int idle = 0;
+        for (int i = 0; i < cars.length; i++) {
+            parked[i] = queues[i].hasAnyRequests(); // busy cars are not available
+            if (!parked[i])
+                idle++;
+            cars[i].parkBy(parking, -1);
+        }
+        long next = cars[0].now() + 1;
+        for (int rank = 0; rank < idle; rank++) {
+            int target = parking.predictedFloor(next, rank);
+            if (target == FloorBitSet.NONE)
+                break;
+            int best = -1;
+            for (int i = 0; i < cars.length; i++)
+                if (!parked[i] && (best < 0
+                        || Math.abs(cabs[i].currentFloor - target) < Math.abs(cabs[best].currentFloor - target)))
+                    best = i;
+            parked[best] = true;
+            cars[best].parkBy(parking, rank);
+        }
+    }
+
+    private void assignHeld() {
+        int n = heldUp.size() + heldDown.size(), i = 0;
+        int[] floors = new int[n];
+        Direction[] dirs = new Direction[n];
+        for (int f = heldUp.first(); f != FloorBitSet.NONE; f = heldUp.higher(f), i++) {
+            floors[i] = f;
+            dirs[i] = Direction.UP;
+        }
+        for (int f = heldDown.first(); f != FloorBitSet.NONE; f = heldDown.higher(f), i++) {
+            floors[i] = f;
+            dirs[i] = Direction.DOWN;
+        }
+        heldUp.clear();
+        heldDown.clear();
+        lastAssignment = optimizer.assign(floors, dirs, assignBudgetNanos, decisions++);
+        for (i = 0; i < n; i++) {
+            int car = lastAssignment.cars[i];
+            (dirs[i] == Direction.UP ? upOwner : downOwner)[floors[i] - minFloor] = car;
+            queues[car].submitHallCall(floors[i], dirs[i]);
+        }
+    }
+
+    /** What the optimizer made of the last batch of held calls, or null if none yet. */
+    public AssignmentOptimizer.Result lastAssignment() {
+        return lastAssignment;
+    }
+
+    /** Lowest-cost car for a new hall call; ties go to the lower car index. */
+    private int bestCar(int floor, Direction dir) {
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int i = 0; i < cabs.length; i++) {
+            long c = cost(i, floor, dir);
+            if (c < bestCost) {
+                bestCost = c;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** Estimated ticks for car i to answer a hall call, as the dispatch policy sees it. */
+    long cost(int i, int floor, Direction dir) {
+        return policy.assignmentCost(cabs[i], queues[i], floor, dir, dwellTicks);
+    }
+
+    /** Car that owns a pending hall call, or -1 if none is pending or it is held for the next tick. */
+    public int ownerOf(int floor, Direction dir) {
+        validate(floor);
+        return (dir == Direction.UP ? upOwner : downOwner)[floor - minFloor];
+    }
+
+    public boolean hasAnyRequests() {
+        if (!(heldUp.isEmpty() && heldDown.isEmpty()))
+            return true;
+        for (Scheduler q : queues)
+            if (q.hasAnyRequests())
+                return true;
+        return false;
+    }
+
+    public int size() {
+        return cars.length;
+    }
+
+    public Elevator cab(int car) {
+        return cabs[car];
+    }
+
+    public Scheduler queue(int car) {
+        return queues[car];
+    }
+
+    public Controller.Snapshot snapshot(int car) {
+        return cars[car].snapshot();
+    }
+
+    Controller controller(int car) {
+        return cars[car];
+    }
+
+    public TickCounters counters(int car) {
+        return cars[car].counters();
+    }
+
+    /** Stops the worker pool, if any. */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+}
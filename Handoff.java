@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * One-way channel of riders between two threads of a ZonedBuilding: from the
+ * thread feeding trips into a zone, or from one zone to its neighbour across a
+ * sky lobby. Each rider is (time, floor, destination, pressed-at): the tick at
+ * which it presses the hall button on the receiving side, the floor it presses
+ * it on, where it is going, and when its trip began.
+ *
+ * Riders travel through a single-producer, single-consumer ring of longs, so
+ * sending and receiving allocate nothing and take no lock. If the ring is full
+ * the producer parks riders in a private overflow and moves them over later;
+ * it never waits, so two zones sending to each other cannot deadlock.
+ *
+ * The producer also publishes a horizon: a promise that it has sent every rider
+ * with a time at or before it. The consumer may run a tick only once every
+ * channel into it has promised that tick, which keeps zones causally in step
+ * with no other shared state. Riders are sent in time order.
+ */
+final class Handoff {
+    private static final int FIELDS = 4;
+
+    private final long[] ring; // FIELDS longs per rider
+    private final int mask; // riders - 1
+    private volatile long head; // next rider to receive; written by the consumer
+    private volatile long tail; // next free rider slot; written by the producer
+    private volatile long horizon = Long.MIN_VALUE;
+
+    // Producer-only overflow, a FIFO of riders the ring had no room for.
+    private long[] spill = new long[FIELDS * 16];
+    private int spillHead, spillTail; // rider indexes
+    private long cachedHead; // producer's last look at head
+
+    Handoff(int riders) {
+        if (riders < 2 || Integer.bitCount(riders) != 1)
+            throw new IllegalArgumentException("ring size must be a power of two >= 2");
+        this.ring = new long[FIELDS * riders];
+        this.mask = riders - 1;
+    }
+
+    /** Producer: sends a rider whose time is no earlier than any sent before. */
+    void send(long time, int floor, int destination, long pressedAt) {
+        if (spillHead == spillTail && offer(time, floor, destination, pressedAt))
+            return;
+        if (FIELDS * (spillTail + 1) > spill.length) {
+            if (spillHead > 0) { // slide the live part down before growing
+                System.arraycopy(spill, FIELDS * spillHead, spill, 0, FIELDS * (spillTail - spillHead));
+                spillTail -= spillHead;
+                spillHead = 0;
+            }
+            if (FIELDS * (spillTail + 1) > spill.length)
+                spill = Arrays.copyOf(spill, 2 * spill.length);
+        }
+        int s = FIELDS * spillTail++;
+        spill[s] = time;
+        spill[s + 1] = floor;
+        spill[s + 2] = destination;
+        spill[s + 3] = pressedAt;
+    }
+
+    private boolean offer(long time, long floor, long destination, long pressedAt) {
+        long t = tail;
+        if (t - cachedHead > mask) {
+            cachedHead = head;
+            if (t - cachedHead > mask)
+                return false;
+        }
+        int i = FIELDS * (int) (t & mask);
+        ring[i] = time;
+        ring[i + 1] = floor;
+        ring[i + 2] = destination;
+        ring[i + 3] = pressedAt;
+        tail = t + 1; // volatile write publishes the fields
+        return true;
+    }
+
+    /**
+     * Producer: moves what it can from the overflow into the ring, then promises
+     * every rider up to {@code upTo}, or up to just before the first rider still
+     * in the overflow.
+     */
+    void advance(long upTo) {
+        while (spillHead < spillTail) {
+            int s = FIELDS * spillHead;
+            if (!offer(spill[s], spill[s + 1], spill[s + 2], spill[s + 3]))
+                break;
+            spillHead++;
+        }
+        if (spillHead == spillTail)
+            spillHead = spillTail = 0;
+        else
+            upTo = Math.min(upTo, spill[FIELDS * spillHead] - 1);
+        if (upTo > horizon)
+            horizon = upTo;
+    }
+
+    /** Consumer: every rider with a time at or before this has been sent. */
+    long horizon() {
+        return horizon;
+    }
+
+    /** Consumer: time of the next rider received, or Long.MAX_VALUE if none is waiting. */
+    long peekTime() {
+        long h = head;
+        return h == tail ? Long.MAX_VALUE : ring[FIELDS * (int) (h & mask)];
+    }
+
+    /** Consumer: floor of the rider at peekTime(). */
+    int peekFloor() {
+        return (int) ring[FIELDS * (int) (head & mask) + 1];
+    }
+
+    /** Consumer: destination of the rider at peekTime(). */
+    int peekDestination() {
+        return (int) ring[FIELDS * (int) (head & mask) + 2];
+    }
+
+    /** Consumer: trip start of the rider at peekTime(). */
+    long peekPressedAt() {
+        return ring[FIELDS * (int) (head & mask) + 3];
+    }
+
+    /** Consumer: done with the rider at peekTime(). */
+    void pop() {
+        head = head + 1;
+    }
+}
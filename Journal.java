@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of everything a Controller does: requests added and
+ * cleared, floor and direction changes, doors opening and closing. It listens to
+ * the controller's state changes, so every press is logged however it arrived.
+ * Repeat presses of a pending call change nothing and are not logged.
+ *
+ * Records are 16 bytes, little-endian: tick (long), floor (int), change ordinal
+ * + 1 (byte; 0 marks the end), direction ordinal (byte), two reserved bytes.
+ * They go into memory-mapped segment files of a fixed size, named 00000000.journal
+ * and up, each starting with a 64-byte header describing the controller. An
+ * append is a few stores into the mapping: no allocation and no system call
+ * except when rolling to a new segment.
+ *
+ * Attach before the controller's first tick. JournalReplayer reads it back.
+ * A controller parked by a DemandModel cannot be journalled: its parking moves
+ * depend on what the model has learned, which the journal does not record.
+ */
+public final class Journal implements StateListener, AutoCloseable {
+    static final int MAGIC = 0x4A564C45; // "ELVJ"
+    static final short FORMAT = 1;
+    static final int HEADER_BYTES = 64, RECORD_BYTES = 16;
+    static final int POLICY_BYTES = 24;
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Controller controller;
+    private final byte[] header = new byte[HEADER_BYTES];
+
+    private MappedByteBuffer out;
+    private int segment = -1;
+    private int pos;
+    private long records;
+
+    private Journal(Path dir, long segmentBytes, Controller controller) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.controller = controller;
+    }
+
+    /** Starts a journal in {@code dir} for a controller that has not ticked yet. */
+    public static Journal attach(Controller controller, Path dir) {
+        return attach(controller, dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public static Journal attach(Controller controller, Path dir, long segmentBytes) {
+        if (controller.now() != 0)
+            throw new IllegalStateException("attach the journal before the first tick");
+        if (controller.parking() != null)
+            throw new IllegalStateException("a journal cannot replay parking moves");
+        if (segmentBytes < HEADER_BYTES + RECORD_BYTES || segmentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("bad segment size: " + segmentBytes);
+        Journal j = new Journal(dir, segmentBytes - (segmentBytes - HEADER_BYTES) % RECORD_BYTES, controller);
+        j.encodeHeader();
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        j.roll();
+        // Requests pending at attach time replay as presses at tick 0.
+        Elevator cab = controller.cab();
+        SnapshotBuffer state = controller.snapshot(new SnapshotBuffer(cab.minFloor, cab.maxFloor));
+        for (Direction cls : new Direction[] { Direction.UP, Direction.DOWN, Direction.IDLE })
+            for (int f = state.firstRequest(cls); f != FloorBitSet.NONE; f = state.nextRequest(cls, f))
+                j.onChange(0, Change.REQUEST_ADDED, f, cls);
+        controller.addListener(j);
+        return j;
+    }
+
+    private void encodeHeader() {
+        Elevator cab = controller.cab();
+        java.nio.ByteBuffer h = java.nio.ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        h.putInt(MAGIC).putShort(FORMAT).putShort((short) RECORD_BYTES);
+        h.putInt(0); // segment number, filled per segment
+        h.putInt(cab.minFloor).putInt(cab.maxFloor).putInt(cab.currentFloor);
+        h.putInt(controller.dwellTicks()).put((byte) cab.direction.ordinal());
+        byte[] name = controller.policy().toString().getBytes(StandardCharsets.US_ASCII);
+        h.put((byte) Math.min(name.length, POLICY_BYTES)).put(name, 0, Math.min(name.length, POLICY_BYTES));
+    }
+
+    @Override
+    public void onChange(long tick, Change change, int floor, Direction dir) {
+        if (pos + RECORD_BYTES > segmentBytes)
+            roll();
+        MappedByteBuffer b = out;
+        int p = pos;
+        b.putLong(p, tick);
+        b.putInt(p + 8, floor);
+        b.put(p + 12, (byte) (change.ordinal() + 1));
+        b.put(p + 13, (byte) dir.ordinal());
+        pos = p + RECORD_BYTES;
+        records++;
+    }
+
+    private void roll() {
+        if (out != null)
+            out.force();
+        segment++;
+        Path file = segmentPath(dir, segment);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            out = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.put(0, header);
+        out.putInt(8, segment);
+        pos = HEADER_BYTES;
+    }
+
+    static Path segmentPath(Path dir, int segment) {
+        return dir.resolve(String.format("%08d.journal", segment));
+    }
+
+    /** Records written so far. */
+    public long records() {
+        return records;
+    }
+
+    /** Segment files written so far. */
+    public int segments() {
+        return segment + 1;
+    }
+
+    /** Writes mapped pages back to disk. */
+    public void flush() {
+        out.force();
+    }
+
+    /** Detaches from the controller and flushes. The files stay readable. */
+    @Override
+    public void close() {
+        controller.removeListener(this);
+        flush();
+    }
+}
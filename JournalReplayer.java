@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds a Journal back through a fresh Controller and checks that it produces
+ * exactly the recorded sequence of state changes.
+ *
+ * Requests added are the inputs: each is pressed again at its recorded tick.
+ * Every other record is an output the controller must emit itself, in order and
+ * at the same tick. Between records the controller is ticked, or fast-forwarded
+ * with skip() where nothing can happen, so stretches of dwell and idle time cost
+ * nothing. A floor change spanning several floors marks a run driven by the
+ * SimulationEngine and is replayed as one skip.
+ */
+public final class JournalReplayer implements StateListener {
+    private static final StateListener.Change[] CHANGES = StateListener.Change.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /** Thrown when the replayed controller departs from the journal. */
+    public static final class DivergenceException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        DivergenceException(String message) {
+            super(message);
+        }
+    }
+
+    private final Path directory;
+    private final Controller controller;
+    private final Elevator cab;
+
+    // The current record, decoded in place.
+    private MappedByteBuffer in;
+    private int segment = -1;
+    private int pos;
+    private boolean hasRecord;
+    private long tick;
+    private int floor;
+    private StateListener.Change change;
+    private Direction dir;
+    private long index;
+
+    private JournalReplayer(Path directory, Controller controller) {
+        this.directory = directory;
+        this.controller = controller;
+        this.cab = controller.cab();
+    }
+
+    /** Replays the journal in {@code dir} with the dispatch policy named in its header. */
+    public static JournalReplayer replay(Path dir) {
+        return replay(dir, null);
+    }
+
+    /**
+     * Replays with the given policy, for journals written with a custom one; null
+     * means the built-in policy named in the header. Returns once every record has
+     * been matched; throws DivergenceException at the first mismatch.
+     */
+    public static JournalReplayer replay(Path dir, DispatchPolicy policy) {
+        MappedByteBuffer first = map(Journal.segmentPath(dir, 0));
+        if (first.getInt(0) != Journal.MAGIC || first.getShort(4) != Journal.FORMAT
+                || first.getShort(6) != Journal.RECORD_BYTES)
+            throw new IllegalArgumentException("not a journal: " + dir);
+        int minFloor = first.getInt(12), maxFloor = first.getInt(16), startFloor = first.getInt(20);
+        int dwell = first.getInt(24);
+        Direction direction = DIRECTIONS[first.get(28)];
+        byte[] name = new byte[first.get(29)];
+        first.get(30, name);
+        if (policy == null)
+            policy = DispatchPolicy.forName(new String(name, StandardCharsets.US_ASCII));
+
+        Elevator e = new Elevator(minFloor, maxFloor, startFloor);
+        e.direction = direction;
+        Controller c = new Controller(e, new Scheduler(minFloor, maxFloor), dwell, policy);
+        JournalReplayer r = new JournalReplayer(dir, c);
+        r.in = first;
+        r.segment = 0;
+        r.pos = Journal.HEADER_BYTES;
+        r.run();
+        return r;
+    }
+
+    private void run() {
+        advance();
+        controller.addListener(this);
+        while (hasRecord) {
+            long at = tick;
+            if (at < controller.now())
+                throw diverged("record is in the past");
+            if (change == StateListener.Change.REQUEST_ADDED) {
+                idleUntil(at);
+                press(floor, dir); // emits the record, which onChange() consumes
+            } else if (change == StateListener.Change.FLOOR_CHANGED && moving() && at - controller.now() > 1) {
+                if (at - controller.now() > controller.quietTicks())
+                    throw diverged("skip runs past a stop or turn");
+                controller.skip((int) (at - controller.now()));
+            } else {
+                idleUntil(at - 1);
+                controller.tick();
+            }
+        }
+        controller.removeListener(this);
+    }
+
+    private boolean moving() {
+        return !cab.doorOpen && cab.direction != Direction.IDLE;
+    }
+
+    /** Brings the clock to {@code t} through ticks that must change nothing. */
+    private void idleUntil(long t) {
+        while (controller.now() < t) {
+            int quiet = moving() ? 0 : controller.quietTicks();
+            if (quiet > 0)
+                controller.skip((int) Math.min(quiet, t - controller.now()));
+            else
+                controller.tick(); // anything it emits must match the next record
+        }
+    }
+
+    private void press(int f, Direction cls) {
+        if (cls == Direction.IDLE)
+            controller.submitCarCall(f);
+        else
+            controller.submitHallCall(f, cls);
+    }
+
+    @Override
+    public void onChange(long t, StateListener.Change c, int f, Direction d) {
+        if (!hasRecord)
+            throw diverged("unexpected " + c + " " + d + " " + f + " at tick " + t + " after the end");
+        if (t != tick || c != change || f != floor || d != dir)
+            throw diverged("got " + c + " " + d + " " + f + " at tick " + t);
+        advance();
+    }
+
+    private DivergenceException diverged(String what) {
+        return new DivergenceException("record " + index + " (" + change + " " + dir + " " + floor + " at tick "
+                + tick + "): " + what);
+    }
+
+    /** Decodes the next record, moving to the next segment when this one ends. */
+    private void advance() {
+        if (hasRecord)
+            index++;
+        while (true) {
+            if (pos + Journal.RECORD_BYTES <= in.limit() && in.get(pos + 12) != 0) {
+                tick = in.getLong(pos);
+                floor = in.getInt(pos + 8);
+                change = CHANGES[in.get(pos + 12) - 1];
+                dir = DIRECTIONS[in.get(pos + 13)];
+                pos += Journal.RECORD_BYTES;
+                hasRecord = true;
+                return;
+            }
+            Path next = Journal.segmentPath(directory, segment + 1);
+            if (pos + Journal.RECORD_BYTES <= in.limit() || !Files.exists(next)) {
+                hasRecord = false;
+                return;
+            }
+            in = map(next);
+            segment++;
+            pos = Journal.HEADER_BYTES;
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            return b;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Records matched. */
+    public long records() {
+        return index;
+    }
+
+    /** The controller after the last record, for comparing final state. */
+    public Controller controller() {
+        return controller;
+    }
+
+    /** Replays a journal directory and prints the replay rate. */
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        JournalReplayer r = replay(Path.of(args[0]));
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("replayed %d records over %d ticks in %.3f s (%.1f M records/s)%n", r.records(),
+                r.controller.now(), secs, r.records() / secs / 1e6);
+    }
+}
@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-memory, log-bucketed histogram of non-negative latencies (ticks or
+ * nanoseconds). Values below 2^subBits are counted exactly; above that each
+ * power-of-two range is split into 2^subBits linear sub-buckets, so the relative
+ * error is at most 2^-subBits. Recording is a few shifts and an array increment
+ * and never allocates.
+ *
+ * Single writer; readers on other threads may see a slightly stale picture.
+ */
+public final class LatencyHistogram {
+    private final int subBits;
+    private final int sub;
+    private final long[] counts;
+    private long total;
+    private long sum;
+    private long max;
+
+    /** 3 sub-bucket bits (12.5% error) up to 2^32: about 2KB. */
+    public LatencyHistogram() {
+        this(3, 1L << 32);
+    }
+
+    public LatencyHistogram(int subBits, long highestTrackable) {
+        if (subBits < 1 || subBits > 10)
+            throw new IllegalArgumentException("subBits must be in 1..10");
+        this.subBits = subBits;
+        this.sub = 1 << subBits;
+        this.counts = new long[indexOf(Math.max(highestTrackable, sub)) + 1];
+    }
+
+    private int indexOf(long v) {
+        if (v < sub)
+            return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - subBits;
+        return sub + shift * sub + (int) (v >>> shift) - sub;
+    }
+
+    /** Highest value that lands in the same bucket as index i. */
+    private long upperBound(int i) {
+        if (i < sub)
+            return i;
+        int shift = (i - sub) / sub;
+        long lower = (long) (sub + (i - sub) % sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        int i = indexOf(value);
+        counts[i < counts.length ? i : counts.length - 1]++;
+        total++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Smallest bucket bound at or below which {@code p} percent of values fall,
+     * capped at the exact max. 0 when empty.
+     */
+    public long percentile(double p) {
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /** Adds another histogram with the same layout into this one. */
+    public void add(LatencyHistogram other) {
+        if (other.subBits != subBits || other.counts.length != counts.length)
+            throw new IllegalArgumentException("histogram layouts differ");
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0L);
+        total = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%d p90=%d p99=%d max=%d",
+                total, percentile(50), percentile(90), percentile(99), max);
+    }
+}
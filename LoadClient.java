@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Load generator for ElevatorServer. Opens many connections from one selector
+ * thread and keeps a fixed window of calls in flight on each, sending a new call
+ * as each reply arrives. Measures request-to-acknowledgement latency (from the
+ * write of a call to the read of its reply) and sustained calls per second.
+ */
+public final class LoadClient {
+    /** What one load run achieved. */
+    public static final class Result {
+        public final int connections;
+        public final long acked, errors;
+        public final double seconds;
+        public final LatencyHistogram latencyNanos;
+
+        Result(int connections, long acked, long errors, double seconds, LatencyHistogram latencyNanos) {
+            this.connections = connections;
+            this.acked = acked;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public double callsPerSecond() {
+            return acked / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("connections=%d acked=%d errors=%d %.0f calls/s latency(us) p50=%.1f p99=%.1f max=%.1f",
+                    connections, acked, errors, callsPerSecond(), latencyNanos.percentile(50) / 1e3,
+                    latencyNanos.percentile(99) / 1e3, latencyNanos.max() / 1e3);
+        }
+    }
+
+    /** One connection: calls written but not yet acknowledged, oldest first. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final long[] sentAt;
+        long sent, acked;
+        final ByteBuffer in = ByteBuffer.allocate(4096);
+        final ByteBuffer out;
+
+        Connection(SocketChannel channel, int window) {
+            this.channel = channel;
+            this.sentAt = new long[window];
+            this.out = ByteBuffer.allocate(16 * window); // a call is at most 16 bytes
+        }
+    }
+
+    private LoadClient() {
+    }
+
+    /**
+     * Runs {@code connections} clients against {@code server} for the given time,
+     * each with {@code window} calls in flight, to random floors in
+     * [minFloor, maxFloor]. Outstanding calls are drained before returning.
+     */
+    public static Result run(InetSocketAddress server, int connections, int window, long durationNanos,
+            int minFloor, int maxFloor, long seed) {
+        if (connections < 1 || window < 1)
+            throw new IllegalArgumentException("need at least one connection and one call in flight");
+        SplittableRandom rnd = new SplittableRandom(seed);
+        LatencyHistogram latency = new LatencyHistogram(3, 1L << 36);
+        long errors = 0, acked = 0;
+        try (Selector selector = Selector.open()) {
+            Connection[] conns = new Connection[connections];
+            for (int i = 0; i < connections; i++) {
+                SocketChannel ch = SocketChannel.open(server);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ch.configureBlocking(false);
+                conns[i] = new Connection(ch, window);
+                ch.register(selector, SelectionKey.OP_READ, conns[i]);
+            }
+            long start = System.nanoTime(), end = start + durationNanos;
+            long drainBy = end + 10_000_000_000L; // give stragglers 10 s
+            for (Connection c : conns) {
+                send(c, window, rnd, minFloor, maxFloor);
+                flush(c.channel.keyFor(selector), c);
+            }
+            long inFlight = (long) connections * window;
+            while (inFlight > 0 && System.nanoTime() < drainBy) {
+                selector.select(100);
+                boolean sending = System.nanoTime() < end;
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Connection c = (Connection) key.attachment();
+                    if (key.isWritable())
+                        flush(key, c);
+                    if (!key.isReadable())
+                        continue;
+                    if (c.channel.read(c.in) < 0)
+                        throw new IOException("server closed a connection");
+                    c.in.flip();
+                    int replies = 0;
+                    long now = System.nanoTime();
+                    for (int i = c.in.position(); i < c.in.limit(); i++) {
+                        if (c.in.get(i) != '\n')
+                            continue;
+                        if (c.in.get(c.in.position()) != 'O')
+                            errors++;
+                        latency.record(now - c.sentAt[(int) (c.acked++ % window)]);
+                        c.in.position(i + 1);
+                        replies++;
+                    }
+                    c.in.compact();
+                    acked += replies;
+                    inFlight -= replies;
+                    if (sending && replies > 0) {
+                        send(c, replies, rnd, minFloor, maxFloor);
+                        inFlight += replies;
+                    }
+                    flush(key, c);
+                }
+            }
+            double seconds = (Math.min(System.nanoTime(), drainBy) - start) / 1e9;
+            for (Connection c : conns)
+                c.channel.close();
+            if (inFlight > 0)
+                throw new IllegalStateException(inFlight + " calls were never acknowledged");
+            return new Result(connections, acked, errors, seconds, latency);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(Connection c, int n, SplittableRandom rnd, int minFloor, int maxFloor) {
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            int floor = minFloor + rnd.nextInt(maxFloor - minFloor + 1);
+            String call;
+            if (rnd.nextBoolean())
+                call = "C " + floor + "\n";
+            else
+                call = "H " + floor + (floor == maxFloor || (floor > minFloor && rnd.nextBoolean()) ? " D\n" : " U\n");
+            c.out.put(call.getBytes(StandardCharsets.US_ASCII));
+            c.sentAt[(int) (c.sent++ % c.sentAt.length)] = now;
+        }
+    }
+
+    private static void flush(SelectionKey key, Connection c) throws IOException {
+        c.out.flip();
+        c.channel.write(c.out);
+        c.out.compact();
+        key.interestOps(c.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Usage: java LoadClient [host] [port] [connections] [window] [seconds] [floors]
+     */
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        int floors = args.length > 5 ? Integer.parseInt(args[5]) : 100;
+        System.out.println(run(new InetSocketAddress(host, port), connections, window, seconds * 1_000_000_000L, 0,
+                floors - 1, 1));
+    }
+}
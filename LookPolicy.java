@@ -0,0 +1,76 @@
+/**
+ * The original LOOK rules: keep going while anything is ahead, serving car stops
+ * and same-direction hall calls on the way; pick up an opposite hall call only at
+ * the turnaround; reverse when nothing is ahead but work remains behind.
+ */
+public final class LookPolicy implements DispatchPolicy {
+    @Override
+    public boolean shouldStop(Scheduler s, int floor, Direction dir) {
+        return s.shouldStopHere(floor, dir);
+    }
+
+    @Override
+    public Direction nextDirection(Scheduler s, int floor, Direction dir) {
+        if (dir == Direction.IDLE)
+            dir = s.pickFromIdle(floor);
+        if (dir == Direction.IDLE)
+            return Direction.IDLE;
+        if (s.hasAhead(floor, dir))
+            return dir;
+        if (s.hasBehind(floor, dir))
+            return dir == Direction.UP ? Direction.DOWN : Direction.UP;
+        return Direction.IDLE;
+    }
+
+    @Override
+    public int quietFloors(Scheduler s, int floor, Direction dir) {
+        if (s.shouldStopHere(floor, dir) || !s.hasAhead(floor, dir))
+            return 0;
+        return Math.abs(s.nextDecisionFloor(floor, dir) - floor);
+    }
+
+    @Override
+    public String toString() {
+        return "LOOK";
+    }
+
+    /**
+     * Sweep-based assignment cost shared by LOOK and SCAN: floors travelled to the
+     * call when turning at {@code top} and {@code bottom}, plus the remaining dwell
+     * and one dwell per stop already queued.
+     */
+    static long sweepCost(Elevator cab, Scheduler s, int floor, Direction dir, int dwellTicks, int top, int bottom) {
+        Direction heading = s.hasAnyRequests() ? cab.direction : Direction.IDLE;
+        long travel = travel(cab.currentFloor, heading, top, bottom, floor, dir);
+        long doors = cab.doorOpen ? cab.doorDwellTicks : 0;
+        return travel + doors + (long) s.pendingCount() * dwellTicks;
+    }
+
+    /**
+     * Floors a car at {@code cur} heading {@code dir} travels before reaching a
+     * request at {@code r} of class {@code cls} (UP or DOWN hall call, IDLE for a
+     * car call), sweeping out to {@code top}/{@code bottom} before each turn. An
+     * idle car goes straight there. Turn points never fall short of cur or r.
+     */
+    static long travel(int cur, Direction dir, int top, int bottom, int r, Direction cls) {
+        if (dir == Direction.UP) {
+            int hi = Math.max(Math.max(top, r), cur);
+            if (r >= cur && cls != Direction.DOWN)
+                return r - cur;
+            if (cls != Direction.UP)
+                return (long) (hi - cur) + (hi - r);
+            int lo = Math.min(bottom, r);
+            return (long) (hi - cur) + (hi - lo) + (r - lo);
+        }
+        if (dir == Direction.DOWN) {
+            int lo = Math.min(Math.min(bottom, r), cur);
+            if (r <= cur && cls != Direction.UP)
+                return cur - r;
+            if (cls != Direction.DOWN)
+                return (long) (cur - lo) + (r - lo);
+            int hi = Math.max(top, r);
+            return (long) (cur - lo) + (hi - lo) + (hi - r);
+        }
+        return Math.abs((long) cur - r);
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.ArrayDeque;
+
+/**
+ * A Clock that only moves when told to, for deterministic tests and
+ * faster-than-real-time runs. Sleeping jumps straight to the deadline, plus any
+ * oversleep queued with {@link #oversleep}, which models a thread waking late.
+ * Code under test can call {@link #advance} to model work that takes time.
+ */
+public final class ManualClock implements Clock {
+    private long now;
+    private final ArrayDeque<Long> oversleeps = new ArrayDeque<>();
+
+    public ManualClock(long start) {
+        this.now = start;
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public synchronized void sleepUntil(long deadline) {
+        Long late = oversleeps.poll();
+        now = Math.max(now, deadline) + (late == null ? 0 : late);
+    }
+
+    public synchronized void advance(long nanos) {
+        if (nanos < 0)
+            throw new IllegalArgumentException("time cannot go backwards");
+        now += nanos;
+    }
+
+    /** Makes the next sleep wake {@code nanos} after its deadline. */
+    public synchronized void oversleep(long nanos) {
+        if (nanos < 0)
+            throw new IllegalArgumentException("oversleep must be >= 0");
+        oversleeps.add(nanos);
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs many independent simulated days over a grid of parameters on a fork-join
+ * pool. Every run builds its own Elevator, Scheduler and Controller and draws its
+ * traffic from a seed derived only from (base seed, replication), so results are
+ * identical whatever the parallelism or completion order. Replication r sees the
+ * same seed at every grid point (common random numbers), so differences between
+ * points come from the parameters rather than from the traffic.
+ *
+ * Per-run results are streamed to a listener on the calling thread as runs
+ * finish; per-point aggregates are returned in grid order.
+ */
+public final class MonteCarloRunner {
+    /** One point of the parameter grid. */
+    public static final class Params {
+        public final int minFloor, maxFloor;
+        public final int dwellTicks;
+        public final int parkingFloor; // where the cab starts, and returns to whenever it is idle
+        public final double arrivalsPerTick;
+        public final long ticks;
+        public final DispatchPolicy policy;
+
+        public Params(int minFloor, int maxFloor, int dwellTicks, int parkingFloor, double arrivalsPerTick,
+                long ticks) {
+            this(minFloor, maxFloor, dwellTicks, parkingFloor, arrivalsPerTick, ticks, new LookPolicy());
+        }
+
+        public Params(int minFloor, int maxFloor, int dwellTicks, int parkingFloor, double arrivalsPerTick,
+                long ticks, DispatchPolicy policy) {
+            if (parkingFloor < minFloor || parkingFloor > maxFloor)
+                throw new IllegalArgumentException("parking floor out of range: " + parkingFloor);
+            if (policy == null)
+                throw new IllegalArgumentException("policy is required");
+            this.minFloor = minFloor;
+            this.maxFloor = maxFloor;
+            this.dwellTicks = dwellTicks;
+            this.parkingFloor = parkingFloor;
+            this.arrivalsPerTick = arrivalsPerTick;
+            this.ticks = ticks;
+            this.policy = policy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s floors=%d..%d dwell=%d park=%d rate=%.3f ticks=%d",
+                    policy, minFloor, maxFloor, dwellTicks, parkingFloor, arrivalsPerTick, ticks);
+        }
+    }
+
+    /** Builds the traffic for one run from its seed. */
+    public interface TrafficFactory {
+        TrafficSource create(Params p, long seed);
+    }
+
+    public interface Listener {
+        void onRun(RunResult r);
+    }
+
+    /** Outcome of one simulated day. */
+    public static final class RunResult {
+        public final int point;
+        public final int replication;
+        public final long seed;
+        public final Params params;
+        public final long delivered;
+        public final double throughputPer1000Ticks;
+        public final long floorsTravelled;
+        public final LatencyHistogram waits;
+        public final LatencyHistogram tripTimes;
+
+        RunResult(int point, int replication, long seed, Params params, long delivered, long floorsTravelled,
+                LatencyHistogram waits, LatencyHistogram tripTimes) {
+            this.point = point;
+            this.replication = replication;
+            this.seed = seed;
+            this.params = params;
+            this.delivered = delivered;
+            this.throughputPer1000Ticks = delivered * 1000.0 / params.ticks;
+            this.floorsTravelled = floorsTravelled;
+            this.waits = waits;
+            this.tripTimes = tripTimes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "#%d.%d delivered=%d thr=%.1f/1k wait p50=%d p90=%d p99=%d floors=%d",
+                    point, replication, delivered, throughputPer1000Ticks, waits.percentile(50),
+                    waits.percentile(90), waits.percentile(99), floorsTravelled);
+        }
+    }
+
+    /** All replications of one grid point, pooled. */
+    public static final class Summary {
+        public final Params params;
+        public final int runs;
+        public final double meanThroughputPer1000Ticks;
+        public final double meanFloorsTravelled;
+        public final LatencyHistogram waits = new LatencyHistogram();
+        public final LatencyHistogram tripTimes = new LatencyHistogram();
+
+        Summary(Params params, List<RunResult> results) {
+            this.params = params;
+            this.runs = results.size();
+            double thr = 0, floors = 0;
+            for (RunResult r : results) {
+                thr += r.throughputPer1000Ticks;
+                floors += r.floorsTravelled;
+                waits.add(r.waits);
+                tripTimes.add(r.tripTimes);
+            }
+            this.meanThroughputPer1000Ticks = runs == 0 ? 0 : thr / runs;
+            this.meanFloorsTravelled = runs == 0 ? 0 : floors / runs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s | runs=%d thr=%.1f/1k wait p50=%d p90=%d p99=%d trip p50=%d floors=%.0f",
+                    params, runs, meanThroughputPer1000Ticks, waits.percentile(50), waits.percentile(90),
+                    waits.percentile(99), tripTimes.percentile(50), meanFloorsTravelled);
+        }
+    }
+
+    private final int parallelism;
+    private final TrafficFactory traffic;
+
+    public MonteCarloRunner(int parallelism, TrafficFactory traffic) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        this.parallelism = parallelism;
+        this.traffic = traffic;
+    }
+
+    /** Uniform interfloor traffic at each point's arrival rate. */
+    public static TrafficFactory interfloor() {
+        return traffic(TrafficGenerator.Pattern.INTERFLOOR);
+    }
+
+    /** Traffic of one daily pattern at each point's arrival rate. */
+    public static TrafficFactory traffic(TrafficGenerator.Pattern pattern) {
+        return (p, seed) -> new TrafficGenerator(pattern, p.minFloor, p.maxFloor, p.arrivalsPerTick, p.ticks, seed);
+    }
+
+    /** Runs every point {@code replications} times; results stream to the listener as they complete. */
+    public List<Summary> run(List<Params> grid, int replications, long baseSeed, Listener listener) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            CompletionService<RunResult> done = new ExecutorCompletionService<>(pool);
+            for (int p = 0; p < grid.size(); p++)
+                for (int r = 0; r < replications; r++) {
+                    final int point = p, rep = r;
+                    done.submit(() -> runOne(point, rep, grid.get(point), seedFor(baseSeed, rep)));
+                }
+            List<List<RunResult>> byPoint = new ArrayList<>();
+            for (int p = 0; p < grid.size(); p++)
+                byPoint.add(new ArrayList<>(Collections.nCopies(replications, (RunResult) null)));
+            for (int n = grid.size() * replications; n > 0; n--) {
+                RunResult r = take(done);
+                byPoint.get(r.point).set(r.replication, r);
+                if (listener != null)
+                    listener.onRun(r);
+            }
+            List<Summary> out = new ArrayList<>();
+            for (int p = 0; p < grid.size(); p++)
+                out.add(new Summary(grid.get(p), byPoint.get(p)));
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static RunResult take(CompletionService<RunResult> done) {
+        try {
+            return done.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("simulation run failed", e.getCause());
+        }
+    }
+
+    /** Simulates one day; deterministic in (params, seed). */
+    RunResult runOne(int point, int rep, Params p, long seed) {
+        Elevator cab = new Elevator(p.minFloor, p.maxFloor, p.parkingFloor);
+        Scheduler scheduler = new Scheduler(p.minFloor, p.maxFloor);
+        Controller controller = new Controller(cab, scheduler, p.dwellTicks, p.policy);
+        controller.parkBy(DemandModel.fixed(p.minFloor, p.maxFloor, p.parkingFloor));
+        TrafficSimulation sim = new TrafficSimulation(controller, cab, traffic.create(p, seed));
+        sim.run(p.ticks);
+        return new RunResult(point, rep, seed, p, sim.delivered(), cab.floorsTravelled(),
+                scheduler.stats().allWaits(), sim.tripTimes());
+    }
+
+    /** Independent, well-mixed seed per replication (SplitMix64 finalizer). */
+    static long seedFor(long baseSeed, int rep) {
+        long z = baseSeed + 0x9E3779B97F4A7C15L * (rep + 1L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Small demo sweep over dispatch policy and parking floor. */
+    public static void main(String[] args) {
+        List<Params> grid = new ArrayList<>();
+        for (DispatchPolicy policy : DispatchPolicy.builtIns())
+            for (int park : new int[] { 0, 10, 20 })
+                grid.add(new Params(0, 20, 2, park, 0.02, 20_000, policy));
+        MonteCarloRunner runner = new MonteCarloRunner(Runtime.getRuntime().availableProcessors(), interfloor());
+        for (Summary s : runner.run(grid, 8, 1L, null))
+            System.out.println(s);
+    }
+}
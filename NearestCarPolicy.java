@@ -0,0 +1,47 @@
+/**
+ * Nearest-first: stop at any request on the current floor and head for the
+ * closest pending request of any class, keeping the current direction on a tie.
+ * In a group, each hall call goes to the car physically closest to it.
+ *
+ * Short trips are fast, but a steady stream of nearby requests can keep a far
+ * one waiting indefinitely.
+ */
+public final class NearestCarPolicy implements DispatchPolicy {
+    @Override
+    public boolean shouldStop(Scheduler s, int floor, Direction dir) {
+        return s.shouldStopHere(floor, Direction.IDLE); // any request here
+    }
+
+    @Override
+    public Direction nextDirection(Scheduler s, int floor, Direction dir) {
+        int above = s.nextRequest(floor, Direction.UP);
+        int below = s.nextRequest(floor, Direction.DOWN);
+        if (above == FloorBitSet.NONE)
+            return below == FloorBitSet.NONE ? Direction.IDLE : Direction.DOWN;
+        if (below == FloorBitSet.NONE)
+            return Direction.UP;
+        long up = (long) above - floor, down = (long) floor - below;
+        if (up != down)
+            return up < down ? Direction.UP : Direction.DOWN;
+        return dir == Direction.DOWN ? Direction.DOWN : Direction.UP;
+    }
+
+    @Override
+    public int quietFloors(Scheduler s, int floor, Direction dir) {
+        // Moving toward the nearest request only makes it nearer, so the choice
+        // holds until the car reaches it.
+        if (shouldStop(s, floor, dir) || nextDirection(s, floor, dir) != dir)
+            return 0;
+        return Math.abs(s.nextRequest(floor, dir) - floor);
+    }
+
+    @Override
+    public long assignmentCost(Elevator cab, Scheduler s, int floor, Direction dir, int dwellTicks) {
+        return Math.abs((long) cab.currentFloor - floor);
+    }
+
+    @Override
+    public String toString() {
+        return "NEAREST";
+    }
+}
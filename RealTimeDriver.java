@@ -0,0 +1,179 @@
+/**
+ * Runs a Controller in real time: one tick() per period on a dedicated thread,
+ * with requests from any thread landing in the controller's RequestInbox.
+ *
+ * Every tick records how late it started against its deadline (jitter) and how
+ * long it ran, both in nanoseconds. A tick that starts a whole period or more late
+ * has missed deadlines. CATCH_UP then runs the missed ticks back to back, so the
+ * controller's clock keeps pace with the wall clock. SKIP drops them and resumes
+ * on the next period boundary, so the cab never moves faster than the period
+ * allows but controller time falls behind. Both count every missed deadline.
+ *
+ * Counters and histograms are written only by the tick thread; other threads may
+ * read a slightly stale picture.
+ */
+public final class RealTimeDriver implements AutoCloseable {
+    /** What to do about deadlines that passed while a tick was late. */
+    public enum Overrun {
+        CATCH_UP, SKIP
+    }
+
+    private final Controller controller;
+    private final long periodNanos;
+    private final Overrun overrun;
+    private final Clock clock;
+
+    private final LatencyHistogram jitter = new LatencyHistogram(3, 1L << 36);
+    private final LatencyHistogram tickTime = new LatencyHistogram(3, 1L << 36);
+    private volatile long ticks, missed, skipped;
+    private long deadline = Long.MIN_VALUE; // next tick's start; unset until the first run
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile Throwable failure;
+
+    public RealTimeDriver(Controller controller, long periodNanos, Overrun overrun) {
+        this(controller, periodNanos, overrun, Clock.SYSTEM);
+    }
+
+    public RealTimeDriver(Controller controller, long periodNanos, Overrun overrun, Clock clock) {
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("period must be positive");
+        if (overrun == null || clock == null)
+            throw new IllegalArgumentException("overrun policy and clock are required");
+        this.controller = controller;
+        this.periodNanos = periodNanos;
+        this.overrun = overrun;
+        this.clock = clock;
+    }
+
+    /** Starts ticking on a new thread named "elevator-tick"; the first tick is one period from now. */
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+        running = true;
+        thread = new Thread(this::loop, "elevator-tick");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void loop() {
+        try {
+            while (running)
+                runOne();
+        } catch (InterruptedException e) {
+            // close() wakes us up to stop
+        } catch (Throwable e) {
+            failure = e; // Errors too, or the thread would die with nothing for close() to report
+        }
+    }
+
+    /**
+     * Runs {@code n} deadlines on the calling thread instead of a dedicated one;
+     * with a ManualClock this is a deterministic, faster-than-real-time run.
+     */
+    public void runTicks(long n) throws InterruptedException {
+        synchronized (this) {
+            if (thread != null)
+                throw new IllegalStateException("driver is running on its own thread");
+        }
+        for (long i = 0; i < n; i++)
+            runOne();
+    }
+
+    /** Waits for the next deadline and handles it: one tick, or a catch-up burst. */
+    private void runOne() throws InterruptedException {
+        if (deadline == Long.MIN_VALUE)
+            deadline = clock.nanoTime() + periodNanos;
+        clock.sleepUntil(deadline);
+        long start = clock.nanoTime();
+        long late = start - deadline;
+        jitter.record(late);
+        long behind = late / periodNanos; // deadlines that passed while we were late
+        if (behind > 0) {
+            missed += behind;
+            if (overrun == Overrun.SKIP) {
+                skipped += behind;
+                deadline += behind * periodNanos;
+                behind = 0;
+            }
+        }
+        for (long i = 0; i <= behind; i++) {
+            long t0 = i == 0 ? start : clock.nanoTime();
+            controller.tick();
+            tickTime.record(clock.nanoTime() - t0);
+            ticks++;
+        }
+        deadline += (behind + 1) * periodNanos;
+    }
+
+    /** Thread-safe; takes effect at the next tick. */
+    public void submitHallCall(int floor, Direction dir) {
+        controller.inbox().submitHallCall(floor, dir);
+    }
+
+    /** Thread-safe; takes effect at the next tick. */
+    public void submitCarCall(int floor) {
+        controller.inbox().submitCarCall(floor);
+    }
+
+    /** Stops the tick thread and waits for it; rethrows anything a tick threw. */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            running = false;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // stopping anyway; let the caller see it
+            }
+        }
+        Throwable f = failure;
+        if (f instanceof RuntimeException)
+            throw (RuntimeException) f;
+        if (f instanceof Error)
+            throw (Error) f;
+        if (f != null)
+            throw new IllegalStateException("tick failed", f);
+    }
+
+    public Controller controller() {
+        return controller;
+    }
+
+    /** Start lateness of every deadline handled, in nanoseconds. */
+    public LatencyHistogram jitter() {
+        return jitter;
+    }
+
+    /** Time spent in each tick(), in nanoseconds. */
+    public LatencyHistogram tickTime() {
+        return tickTime;
+    }
+
+    /** Ticks run, including catch-up ticks. */
+    public long ticks() {
+        return ticks;
+    }
+
+    /** Deadlines that passed before their tick could start. */
+    public long missed() {
+        return missed;
+    }
+
+    /** Missed deadlines dropped under SKIP; never run. */
+    public long skipped() {
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ticks=%d missed=%d skipped=%d jitter(ns): %s tick(ns): %s", ticks, missed, skipped,
+                jitter, tickTime);
+    }
+}
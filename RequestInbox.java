@@ -0,0 +1,113 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Lock-free landing area for requests pressed on other threads (hall buttons,
+ * cab panels, dispatcher APIs). Producers set one atomic bit per (class, floor),
+ * so repeated presses coalesce just like the Scheduler's sets; the tick thread
+ * drains the bits into the Scheduler at the start of each tick.
+ *
+ * A summary bitmap marks which words may hold bits, so a drain costs O(words
+ * touched) rather than O(floors). Any number of threads may submit; only one
+ * thread may drain.
+ */
+public final class RequestInbox {
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle DIRTY;
+
+    static {
+        try {
+            DIRTY = MethodHandles.lookup().findVarHandle(RequestInbox.class, "dirty", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int UP = 0, DOWN = 1, CAR = 2;
+
+    private final int minFloor, maxFloor;
+    private final int wordsPerClass;
+    private final long[] bits;    // [class * wordsPerClass + word]
+    private final long[] summary; // bit j set => bits[j] may be non-zero
+    private volatile boolean dirty; // accessed through DIRTY
+
+    public RequestInbox(int minFloor, int maxFloor) {
+        if (minFloor > maxFloor)
+            throw new IllegalArgumentException("min > max");
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.wordsPerClass = (int) (((long) maxFloor - minFloor + 64) >>> 6);
+        this.bits = new long[3 * wordsPerClass];
+        this.summary = new long[(bits.length + 63) >>> 6];
+    }
+
+    /** Thread-safe; validates the floor and direction before publishing. */
+    public void submitHallCall(int floor, Direction dir) {
+        validate(floor);
+        if (dir == Direction.UP)
+            publish(UP, floor);
+        else if (dir == Direction.DOWN)
+            publish(DOWN, floor);
+        else
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+    }
+
+    /** Thread-safe; validates the floor before publishing. */
+    public void submitCarCall(int floor) {
+        validate(floor);
+        publish(CAR, floor);
+    }
+
+    private void validate(int f) {
+        if (f < minFloor || f > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + f);
+    }
+
+    private void publish(int cls, int floor) {
+        int i = floor - minFloor;
+        int w = cls * wordsPerClass + (i >>> 6);
+        long bit = 1L << i;
+        // Reading first keeps repeated presses of a held button off the atomic path.
+        if (((long) LONGS.getVolatile(bits, w) & bit) == 0)
+            LONGS.getAndBitwiseOr(bits, w, bit);
+        long sbit = 1L << w;
+        if (((long) LONGS.getVolatile(summary, w >>> 6) & sbit) == 0)
+            LONGS.getAndBitwiseOr(summary, w >>> 6, sbit);
+        // Set after the bits: a drain that clears the flag and then misses these
+        // bits leaves the flag set for the next drain.
+        if (!(boolean) DIRTY.getVolatile(this))
+            DIRTY.setVolatile(this, true);
+    }
+
+    /**
+     * Moves every published request into the scheduler. Returns how many (class,
+     * floor) bits were drained. Must only be called from the tick thread.
+     */
+    public int drainTo(Scheduler scheduler) {
+        if (!(boolean) DIRTY.getVolatile(this) || !(boolean) DIRTY.getAndSet(this, false))
+            return 0;
+        int drained = 0;
+        for (int s = 0; s < summary.length; s++) {
+            if ((long) LONGS.getVolatile(summary, s) == 0)
+                continue;
+            long sw = (long) LONGS.getAndSet(summary, s, 0L);
+            while (sw != 0) {
+                int w = (s << 6) + Long.numberOfTrailingZeros(sw);
+                sw &= sw - 1;
+                long word = (long) LONGS.getAndSet(bits, w, 0L);
+                int cls = w / wordsPerClass;
+                int base = minFloor + ((w - cls * wordsPerClass) << 6);
+                while (word != 0) {
+                    int floor = base + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (cls == CAR)
+                        scheduler.submitCarCall(floor);
+                    else
+                        scheduler.submitHallCall(floor, cls == UP ? Direction.UP : Direction.DOWN);
+                    drained++;
+                }
+            }
+        }
+        return drained;
+    }
+}
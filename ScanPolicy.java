@@ -0,0 +1,49 @@
+/**
+ * SCAN: while any request is pending, sweep all the way to the top or bottom floor
+ * before reversing, serving car stops and same-direction hall calls on the way.
+ * Opposite hall calls wait for the return sweep, or are served at the end floor.
+ * Waits are more even than LOOK's at the cost of extra travel.
+ */
+public final class ScanPolicy implements DispatchPolicy {
+    @Override
+    public boolean shouldStop(Scheduler s, int floor, Direction dir) {
+        if (dir == Direction.IDLE || atEnd(s, floor, dir))
+            return s.shouldStopHere(floor, Direction.IDLE); // any request here
+        return s.requests(Direction.IDLE).contains(floor) || s.hasHallCall(floor, dir);
+    }
+
+    @Override
+    public Direction nextDirection(Scheduler s, int floor, Direction dir) {
+        if (!s.hasAnyRequests())
+            return Direction.IDLE;
+        if (dir == Direction.IDLE)
+            return s.pickFromIdle(floor);
+        if (atEnd(s, floor, dir))
+            return dir == Direction.UP ? Direction.DOWN : Direction.UP;
+        return dir;
+    }
+
+    @Override
+    public int quietFloors(Scheduler s, int floor, Direction dir) {
+        if (shouldStop(s, floor, dir) || nextDirection(s, floor, dir) != dir)
+            return 0;
+        int end = dir == Direction.UP ? s.maxFloor() : s.minFloor();
+        int stop = s.nextStop(floor, dir);
+        int target = stop == FloorBitSet.NONE ? end : stop;
+        return Math.abs(target - floor);
+    }
+
+    @Override
+    public long assignmentCost(Elevator cab, Scheduler s, int floor, Direction dir, int dwellTicks) {
+        return LookPolicy.sweepCost(cab, s, floor, dir, dwellTicks, s.maxFloor(), s.minFloor());
+    }
+
+    private static boolean atEnd(Scheduler s, int floor, Direction dir) {
+        return dir == Direction.UP ? floor == s.maxFloor() : floor == s.minFloor();
+    }
+
+    @Override
+    public String toString() {
+        return "SCAN";
+    }
+}
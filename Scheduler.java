@@ -2,31 +2,152 @@ import java.util.*;
 
 public final class Scheduler {
     // Hall calls are split by direction; car calls are destinations pressed inside
-    // the cab.
-    private final NavigableSet<Integer> upHall = new TreeSet<>();
-    private final NavigableSet<Integer> downHall = new TreeSet<>();
-    private final NavigableSet<Integer> carStops = new TreeSet<>();
+    // the cab. Each class is a bitmap over the building, so lookups never box.
+    private final FloorBitSet upHall;
+    private final FloorBitSet downHall;
+    private final FloorBitSet carStops;
 
     private final int minFloor, maxFloor;
 
+    // When each pending request was first pressed, indexed by floor - minFloor.
+    // Duplicate presses keep the original stamp, so waits measure the first press.
+    private final Stamps upSince, downSince, carSince;
+    private long now; // ticks, advanced by the Controller
+    private long version; // bumped whenever a new request is added
+    private StateListener listener; // told about adds and clears; null for none
+    private ServiceStats stats; // about 22KB of histograms, so created on first use
+
+    // Nearest pending floor of each class strictly above and below the anchor
+    // floor (the cab's, normally), indexed UP, DOWN, CAR. Submits and clears keep
+    // it current, and it slides one floor at a time with the cab, so the queries a
+    // tick makes at the cab's floor cost no bitmap scans unless the cab passes a
+    // request. Queries at other floors scan directly and leave it alone.
+    private final FloorBitSet[] sets;
+    private final int[] above = new int[3], below = new int[3];
+    private int anchor;
+    private boolean anchored;
+
     public Scheduler(int minFloor, int maxFloor) {
         this.minFloor = minFloor;
         this.maxFloor = maxFloor;
+        this.upHall = new FloorBitSet(minFloor, maxFloor);
+        this.downHall = new FloorBitSet(minFloor, maxFloor);
+        this.carStops = new FloorBitSet(minFloor, maxFloor);
+        int floors = maxFloor - minFloor + 1;
+        this.upSince = new Stamps(floors);
+        this.downSince = new Stamps(floors);
+        this.carSince = new Stamps(floors);
+        this.sets = new FloorBitSet[] { upHall, downHall, carStops };
+    }
+
+    private Scheduler(Scheduler from) {
+        this.minFloor = from.minFloor;
+        this.maxFloor = from.maxFloor;
+        this.upHall = from.upHall.fork();
+        this.downHall = from.downHall.fork();
+        this.carStops = from.carStops.fork();
+        this.upSince = from.upSince.fork();
+        this.downSince = from.downSince.fork();
+        this.carSince = from.carSince.fork();
+        this.now = from.now;
+        this.version = from.version;
+        this.sets = new FloorBitSet[] { upHall, downHall, carStops };
+        System.arraycopy(from.above, 0, above, 0, 3);
+        System.arraycopy(from.below, 0, below, 0, 3);
+        this.anchor = from.anchor;
+        this.anchored = from.anchored;
+    }
+
+    /**
+     * An independent copy of the pending requests, press times, clock and cached
+     * neighbours in O(1): storage is shared until either side writes. The copy has
+     * no listener and starts with empty stats. Call on the thread that owns this
+     * scheduler.
+     */
+    Scheduler fork() {
+        return new Scheduler(this);
+    }
+
+    /**
+     * Press times in pages of 64 floors. A fork shares every page; the first write
+     * to a page copies the page table and that page only, so a what-if branch
+     * that presses a few buttons copies a few pages however tall the building.
+     */
+    private static final class Stamps {
+        private long[][] pages;
+        private boolean[] owned; // pages this table may write in place
+        private boolean sharedTable;
+
+        Stamps(int floors) {
+            this.pages = new long[(floors + 63) >>> 6][64];
+            this.owned = new boolean[pages.length];
+            Arrays.fill(owned, true);
+        }
+
+        private Stamps(long[][] pages) {
+            this.pages = pages;
+            this.sharedTable = true;
+        }
+
+        Stamps fork() {
+            sharedTable = true;
+            return new Stamps(pages);
+        }
+
+        long get(int i) {
+            return pages[i >>> 6][i & 63];
+        }
+
+        void set(int i, long v) {
+            int p = i >>> 6;
+            if (sharedTable) {
+                pages = pages.clone();
+                owned = new boolean[pages.length];
+                sharedTable = false;
+            }
+            if (!owned[p]) {
+                pages[p] = pages[p].clone();
+                owned[p] = true;
+            }
+            pages[p][i & 63] = v;
+        }
     }
 
     public void submitHallCall(int floor, Direction dir) {
         validate(floor);
-        if (dir == Direction.UP)
-            upHall.add(floor);
-        else if (dir == Direction.DOWN)
-            downHall.add(floor);
-        else
+        if (dir == Direction.UP) {
+            if (upHall.add(floor)) {
+                upSince.set(floor - minFloor, now);
+                added(floor, dir, UP);
+            }
+        } else if (dir == Direction.DOWN) {
+            if (downHall.add(floor)) {
+                downSince.set(floor - minFloor, now);
+                added(floor, dir, DOWN);
+            }
+        } else {
             throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        }
     }
 
     public void submitCarCall(int floor) {
         validate(floor);
-        carStops.add(floor);
+        if (carStops.add(floor)) {
+            carSince.set(floor - minFloor, now);
+            added(floor, Direction.IDLE, CAR);
+        }
+    }
+
+    private void added(int floor, Direction cls, int k) {
+        if (anchored) {
+            if (floor > anchor && (above[k] == NONE || floor < above[k]))
+                above[k] = floor;
+            else if (floor < anchor && (below[k] == NONE || floor > below[k]))
+                below[k] = floor;
+        }
+        version++;
+        if (listener != null)
+            listener.onChange(now, StateListener.Change.REQUEST_ADDED, floor, cls);
     }
 
     private void validate(int f) {
@@ -36,60 +157,221 @@ public final class Scheduler {
 
     /**
      * Stop here if it’s a car stop OR a matching-direction hall call (or any hall
-     * call when idle).
+     * call when idle). An opposite-direction hall call is picked up only at the
+     * turnaround, once nothing remains ahead.
      */
     public boolean shouldStopHere(int floor, Direction dir) {
         if (carStops.contains(floor))
             return true;
         if (dir == Direction.UP)
-            return upHall.contains(floor);
+            return upHall.contains(floor) || (downHall.contains(floor) && !hasAhead(floor, dir));
         if (dir == Direction.DOWN)
-            return downHall.contains(floor);
+            return downHall.contains(floor) || (upHall.contains(floor) && !hasAhead(floor, dir));
         // IDLE: if there’s any hall call here, open.
         return upHall.contains(floor) || downHall.contains(floor);
     }
 
-    /** Clear all requests that are satisfied at this floor. */
+    /** Clear all requests that are satisfied at this floor, recording their latency. */
     public void clearAt(int floor) {
-        carStops.remove(floor);
-        upHall.remove(floor);
-        downHall.remove(floor);
+        int i = floor - minFloor;
+        if (carStops.remove(floor)) {
+            stats().recordJourney(floor, now - carSince.get(i));
+            cleared(floor, Direction.IDLE, CAR);
+        }
+        if (upHall.remove(floor)) {
+            stats().recordWait(Direction.UP, floor, now - upSince.get(i));
+            cleared(floor, Direction.UP, UP);
+        }
+        if (downHall.remove(floor)) {
+            stats().recordWait(Direction.DOWN, floor, now - downSince.get(i));
+            cleared(floor, Direction.DOWN, DOWN);
+        }
+    }
+
+    private void cleared(int floor, Direction cls, int k) {
+        // The cab clears where it stands, which is never a cached neighbour.
+        if (anchored && floor == above[k])
+            above[k] = sets[k].higher(anchor);
+        else if (anchored && floor == below[k])
+            below[k] = sets[k].lower(anchor);
+        if (listener != null)
+            listener.onChange(now, StateListener.Change.REQUEST_CLEARED, floor, cls);
+    }
+
+    /** Where request adds and clears are reported; the owning Controller fans them out. */
+    void setListener(StateListener listener) {
+        this.listener = listener;
+    }
+
+    /** Sets the time used to stamp new requests and measure cleared ones. */
+    void setClock(long now) {
+        this.now = now;
+    }
+
+    /** Wait and journey latencies of every request cleared so far. */
+    public ServiceStats stats() {
+        if (stats == null)
+            stats = new ServiceStats(minFloor, maxFloor, ServiceStats.DEFAULT_BANDS);
+        return stats;
+    }
+
+    /**
+     * First floor strictly ahead where the cab must decide something: the next
+     * matching hall call or car stop, or the farthest request (the turnaround).
+     * Only meaningful while {@link #hasAhead} is true.
+     */
+    int nextDecisionFloor(int floor, Direction dir) {
+        if (dir == Direction.UP)
+            return minOf(nextStop(floor, dir), highestRequest());
+        return Math.max(nextStop(floor, dir), lowestRequest());
+    }
+
+    /** First car stop or same-direction hall call strictly ahead, or FloorBitSet.NONE. */
+    int nextStop(int floor, Direction dir) {
+        if (dir == Direction.UP)
+            return minOf(above(UP, floor), above(CAR, floor));
+        return Math.max(below(DOWN, floor), below(CAR, floor));
+    }
+
+    /** First request of any class strictly ahead, or FloorBitSet.NONE. */
+    int nextRequest(int floor, Direction dir) {
+        if (dir == Direction.UP)
+            return minOf(above(UP, floor), minOf(above(DOWN, floor), above(CAR, floor)));
+        return Math.max(below(UP, floor), Math.max(below(DOWN, floor), below(CAR, floor)));
+    }
+
+    boolean hasCarCallAhead(int floor, Direction dir) {
+        if (dir == Direction.UP)
+            return above(CAR, floor) != NONE;
+        return dir == Direction.DOWN && below(CAR, floor) != NONE;
+    }
+
+    /** The requests of one class: UP or DOWN hall calls, or car calls for IDLE. */
+    FloorBitSet requests(Direction cls) {
+        return cls == Direction.UP ? upHall : cls == Direction.DOWN ? downHall : carStops;
+    }
+
+    /** When a pending request of the given class (as in {@link #requests}) was first pressed. */
+    long pressedAt(Direction cls, int floor) {
+        Stamps since = cls == Direction.UP ? upSince : cls == Direction.DOWN ? downSince : carSince;
+        return since.get(floor - minFloor);
+    }
+
+    long clock() {
+        return now;
+    }
+
+    /** Changes whenever a request is added; repeat presses and clears leave it alone. */
+    long version() {
+        return version;
+    }
+
+    /** Makes this scheduler's requests, press times and clock a copy of another's. */
+    void copyRequestsFrom(Scheduler other) {
+        upHall.copyFrom(other.upHall);
+        downHall.copyFrom(other.downHall);
+        carStops.copyFrom(other.carStops);
+        // Only pending stamps matter, so copy those rather than the whole range.
+        copyStamps(upHall, other.upSince, upSince);
+        copyStamps(downHall, other.downSince, downSince);
+        copyStamps(carStops, other.carSince, carSince);
+        now = other.now;
+        version++;
+        anchored = false; // every set changed
+    }
+
+    /** Copies the pending requests into caller-owned sets over the same floors. */
+    void copyRequestsTo(FloorBitSet up, FloorBitSet down, FloorBitSet car) {
+        up.copyFrom(upHall);
+        down.copyFrom(downHall);
+        car.copyFrom(carStops);
+    }
+
+    private void copyStamps(FloorBitSet pending, Stamps from, Stamps to) {
+        for (int f = pending.first(); f != NONE; f = pending.higher(f))
+            to.set(f - minFloor, from.get(f - minFloor));
+    }
+
+    boolean hasHallCall(int floor, Direction dir) {
+        return dir == Direction.UP ? upHall.contains(floor) : dir == Direction.DOWN && downHall.contains(floor);
+    }
+
+    /** Number of pending (floor, class) requests. */
+    int pendingCount() {
+        return upHall.size() + downHall.size() + carStops.size();
+    }
+
+    /** Highest requested floor of any class, or FloorBitSet.NONE. */
+    int highestRequest() {
+        return Math.max(upHall.last(), Math.max(downHall.last(), carStops.last()));
+    }
+
+    /** Lowest requested floor of any class, or FloorBitSet.NONE. */
+    int lowestRequest() {
+        return minOf(upHall.first(), minOf(downHall.first(), carStops.first()));
+    }
+
+    private static int minOf(int a, int b) {
+        if (a == NONE)
+            return b;
+        if (b == NONE)
+            return a;
+        return Math.min(a, b);
+    }
+
+    int minFloor() {
+        return minFloor;
+    }
+
+    int maxFloor() {
+        return maxFloor;
     }
 
     public boolean hasAnyRequests() {
         return !(upHall.isEmpty() && downHall.isEmpty() && carStops.isEmpty());
     }
 
-    /** Are there requests strictly ahead of currentFloor in the given direction? */
+    /**
+     * Are there requests strictly ahead of currentFloor in the given direction?
+     * Opposite-direction hall calls count too: the cab travels to them and turns.
+     */
     public boolean hasAhead(int floor, Direction dir) {
         if (dir == Direction.UP) {
-            return (firstAbove(upHall, floor) != null) ||
-                    (firstAbove(carStops, floor) != null);
+            return (above(UP, floor) != NONE) ||
+                    (above(CAR, floor) != NONE) ||
+                    (above(DOWN, floor) != NONE);
         } else if (dir == Direction.DOWN) {
-            return (firstBelow(downHall, floor) != null) ||
-                    (firstBelow(carStops, floor) != null);
+            return (below(DOWN, floor) != NONE) ||
+                    (below(CAR, floor) != NONE) ||
+                    (below(UP, floor) != NONE);
         }
         return false;
     }
 
-    /** Are there requests strictly behind currentFloor in the given direction? */
+    /**
+     * Are there requests strictly behind currentFloor in the given direction?
+     * Hall calls of either direction count, as in hasAhead, so a cab whose only
+     * remaining work is an opposite call behind it turns there and then.
+     */
     public boolean hasBehind(int floor, Direction dir) {
         if (dir == Direction.UP) {
-            return (firstBelow(upHall, floor) != null) ||
-                    (firstBelow(carStops, floor) != null);
+            return (below(UP, floor) != NONE) ||
+                    (below(CAR, floor) != NONE) ||
+                    (below(DOWN, floor) != NONE);
         } else if (dir == Direction.DOWN) {
-            return (firstAbove(downHall, floor) != null) ||
-                    (firstAbove(carStops, floor) != null);
+            return (above(DOWN, floor) != NONE) ||
+                    (above(CAR, floor) != NONE) ||
+                    (above(UP, floor) != NONE);
         }
         return false;
     }
 
     /** Choose an initial direction from idle (prefer above, then below). */
     public Direction pickFromIdle(int floor) {
-        boolean anyAbove = (firstAbove(upHall, floor) != null) || (firstAbove(downHall, floor) != null) ||
-                (firstAbove(carStops, floor) != null);
-        boolean anyBelow = (firstBelow(upHall, floor) != null) || (firstBelow(downHall, floor) != null) ||
-                (firstBelow(carStops, floor) != null);
+        boolean anyAbove = (above(UP, floor) != NONE) || (above(DOWN, floor) != NONE) ||
+                (above(CAR, floor) != NONE);
+        boolean anyBelow = (below(UP, floor) != NONE) || (below(DOWN, floor) != NONE) ||
+                (below(CAR, floor) != NONE);
         if (anyAbove)
             return Direction.UP;
         if (anyBelow)
@@ -97,24 +379,69 @@ public final class Scheduler {
         return Direction.IDLE;
     }
 
-    private Integer firstAbove(NavigableSet<Integer> s, int floor) {
-        return s.higher(floor);
+    private static final int NONE = FloorBitSet.NONE;
+    private static final int UP = 0, DOWN = 1, CAR = 2;
+
+    /**
+     * Moves the cached neighbours to {@code floor}: free when it is the anchor,
+     * a scan only past a request when it is one floor away, six scans otherwise.
+     * The Controller calls this with the cab's floor every tick.
+     */
+    void anchorAt(int floor) {
+        if (anchored && floor == anchor)
+            return;
+        if (anchored && floor == anchor + 1 && anchor != Integer.MAX_VALUE) {
+            for (int k = 0; k < 3; k++) {
+                if (sets[k].contains(anchor))
+                    below[k] = anchor;
+                if (above[k] == floor)
+                    above[k] = sets[k].higher(floor);
+            }
+        } else if (anchored && floor == anchor - 1 && anchor != Integer.MIN_VALUE) {
+            for (int k = 0; k < 3; k++) {
+                if (sets[k].contains(anchor))
+                    above[k] = anchor;
+                if (below[k] == floor)
+                    below[k] = sets[k].lower(floor);
+            }
+        } else {
+            for (int k = 0; k < 3; k++) {
+                above[k] = sets[k].higher(floor);
+                below[k] = sets[k].lower(floor);
+            }
+        }
+        anchor = floor;
+        anchored = true;
     }
 
-    private Integer firstBelow(NavigableSet<Integer> s, int floor) {
-        return s.lower(floor);
+    /** Nearest request of class k strictly above {@code floor}, or NONE. */
+    private int above(int k, int floor) {
+        if (anchored && (floor == anchor || floor == anchor + 1 || floor == anchor - 1)) {
+            anchorAt(floor);
+            return above[k];
+        }
+        return sets[k].higher(floor);
+    }
+
+    /** Nearest request of class k strictly below {@code floor}, or NONE. */
+    private int below(int k, int floor) {
+        if (anchored && (floor == anchor || floor == anchor + 1 || floor == anchor - 1)) {
+            anchorAt(floor);
+            return below[k];
+        }
+        return sets[k].lower(floor);
     }
 
-    // For logging/inspection
+    // For logging/inspection: live, read-only views over the bitmaps.
     public SortedSet<Integer> viewUpHall() {
-        return Collections.unmodifiableSortedSet(upHall);
+        return upHall.view();
     }
 
     public SortedSet<Integer> viewDownHall() {
-        return Collections.unmodifiableSortedSet(downHall);
+        return downHall.view();
     }
 
     public SortedSet<Integer> viewCarStops() {
-        return Collections.unmodifiableSortedSet(carStops);
+        return carStops.view();
     }
 }
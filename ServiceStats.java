@@ -0,0 +1,100 @@
+/**
+ * Service-level latencies recorded as requests are satisfied:
+ * - wait: hall call pressed until the doors open for it, per direction and per
+ *   band of origin floors;
+ * - journey: car call pressed until the doors open at that destination, per band
+ *   of destination floors.
+ *
+ * Memory is fixed at construction: one small histogram per direction plus one
+ * per band for each metric.
+ */
+public final class ServiceStats {
+    public static final int DEFAULT_BANDS = 4;
+
+    private final int minFloor, maxFloor;
+    private final int bandSize;
+    private final LatencyHistogram waitUp = new LatencyHistogram();
+    private final LatencyHistogram waitDown = new LatencyHistogram();
+    private final LatencyHistogram journey = new LatencyHistogram();
+    private final LatencyHistogram[] waitByBand;
+    private final LatencyHistogram[] journeyByBand;
+
+    public ServiceStats(int minFloor, int maxFloor, int bands) {
+        int floors = maxFloor - minFloor + 1;
+        bands = Math.max(1, Math.min(bands, floors));
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.bandSize = (floors + bands - 1) / bands;
+        bands = (floors + bandSize - 1) / bandSize;
+        this.waitByBand = new LatencyHistogram[bands];
+        this.journeyByBand = new LatencyHistogram[bands];
+        for (int b = 0; b < bands; b++) {
+            waitByBand[b] = new LatencyHistogram();
+            journeyByBand[b] = new LatencyHistogram();
+        }
+    }
+
+    void recordWait(Direction dir, int floor, long ticks) {
+        (dir == Direction.UP ? waitUp : waitDown).record(ticks);
+        waitByBand[band(floor)].record(ticks);
+    }
+
+    void recordJourney(int floor, long ticks) {
+        journey.record(ticks);
+        journeyByBand[band(floor)].record(ticks);
+    }
+
+    private int band(int floor) {
+        return (floor - minFloor) / bandSize;
+    }
+
+    /** Hall-call wait for one direction. */
+    public LatencyHistogram waits(Direction dir) {
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall calls are UP or DOWN");
+        return dir == Direction.UP ? waitUp : waitDown;
+    }
+
+    public LatencyHistogram journeys() {
+        return journey;
+    }
+
+    public int bands() {
+        return waitByBand.length;
+    }
+
+    /** Band index for a floor; bands are equal runs of floors from the bottom. */
+    public int bandOf(int floor) {
+        return band(floor);
+    }
+
+    public LatencyHistogram waitsInBand(int band) {
+        return waitByBand[band];
+    }
+
+    public LatencyHistogram journeysInBand(int band) {
+        return journeyByBand[band];
+    }
+
+    /** Hall-call waits in both directions combined, in a new histogram. */
+    public LatencyHistogram allWaits() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(waitUp);
+        h.add(waitDown);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("wait UP   ").append(waitUp).append('\n');
+        sb.append("wait DOWN ").append(waitDown).append('\n');
+        sb.append("journey   ").append(journey).append('\n');
+        for (int b = 0; b < waitByBand.length; b++) {
+            int lo = minFloor + b * bandSize;
+            sb.append(String.format("band %d-%d: wait %s | journey %s%n",
+                    lo, Math.min(lo + bandSize - 1, maxFloor), waitByBand[b], journeyByBand[b]));
+        }
+        return sb.toString();
+    }
+}
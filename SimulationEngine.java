@@ -0,0 +1,172 @@
+/**
+ * Event-driven driver for a Controller. Instead of calling tick() once per time
+ * step, it keeps a priority queue of timed events (request arrivals and the
+ * controller's next meaningful tick) and jumps straight from one to the next.
+ *
+ * Time is measured in ticks: at time t, requests scheduled for t are submitted
+ * first, then tick number t runs. The state seen at every event boundary is the
+ * same as calling tick() t times.
+ */
+public final class SimulationEngine {
+    /** Called after each event, with the time it completed at. */
+    public interface Observer {
+        void onEvent(long time, Controller controller);
+    }
+
+    private static final int HALL_UP = 0, HALL_DOWN = 1, CAR = 2, TICK = 3;
+    private static final long TICK_LAST = 1L << 62; // orders a tick after requests at the same time
+
+    // Pending events as a binary min-heap over parallel arrays, ordered by time,
+    // then requests before the tick, then FIFO by sequence number. Nothing is
+    // allocated per event once the arrays have grown to the working size.
+    private long[] time = new long[64];
+    private long[] order = new long[64]; // TICK_LAST for ticks | seq
+    private int[] kind = new int[64];
+    private int[] floor = new int[64];
+    private int size;
+
+    private final Controller controller;
+    private long nextTick = -1; // sequence number of the controller's live tick event, or -1
+    private long now;
+    private long seq;
+    private long ticksRun, ticksSkipped;
+
+    public SimulationEngine(Controller controller) {
+        this.controller = controller;
+        scheduleNextTick();
+    }
+
+    public void scheduleHallCall(long at, int floor, Direction dir) {
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        schedule(at, dir == Direction.UP ? HALL_UP : HALL_DOWN, floor);
+    }
+
+    public void scheduleCarCall(long at, int floor) {
+        schedule(at, CAR, floor);
+    }
+
+    private void schedule(long at, int kind, int floor) {
+        if (at < now)
+            throw new IllegalArgumentException("Cannot schedule in the past: " + at + " < " + now);
+        push(at, seq++, kind, floor);
+    }
+
+    /** Process every event before {@code end}; afterwards {@link #now()} == end. */
+    public void runUntil(long end, Observer observer) {
+        while (size > 0 && time[0] < end) {
+            long t = time[0], o = order[0];
+            int k = kind[0], f = floor[0];
+            pop();
+            if (k == TICK && (o & ~TICK_LAST) != nextTick)
+                continue; // superseded by a later reschedule
+            advanceTo(t);
+            if (k == TICK) {
+                controller.tick();
+                ticksRun++;
+                now++;
+            } else if (k == CAR) {
+                controller.submitCarCall(f);
+            } else {
+                controller.submitHallCall(f, k == HALL_UP ? Direction.UP : Direction.DOWN);
+            }
+            scheduleNextTick();
+            if (observer != null)
+                observer.onEvent(now, controller);
+        }
+        advanceTo(end);
+    }
+
+    /** Fast-forward through quiet ticks; only valid up to the next queued event. */
+    private void advanceTo(long t) {
+        if (t > now) {
+            long n = t - now;
+            controller.skip((int) Math.min(n, Integer.MAX_VALUE));
+            ticksSkipped += n;
+            now = t;
+        }
+    }
+
+    /**
+     * (Re)compute when the controller next does something other than a quiet tick.
+     * Any previously queued tick event is left in place and ignored when popped.
+     */
+    private void scheduleNextTick() {
+        int quiet = controller.quietTicks();
+        if (quiet == Integer.MAX_VALUE) {
+            nextTick = -1;
+            return;
+        }
+        nextTick = seq++;
+        push(now + quiet, TICK_LAST | nextTick, TICK, 0);
+    }
+
+    private void push(long t, long o, int k, int f) {
+        if (size == time.length) {
+            int n = size * 2;
+            time = java.util.Arrays.copyOf(time, n);
+            order = java.util.Arrays.copyOf(order, n);
+            kind = java.util.Arrays.copyOf(kind, n);
+            floor = java.util.Arrays.copyOf(floor, n);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(t, o, time[parent], order[parent]))
+                break;
+            move(parent, i);
+            i = parent;
+        }
+        set(i, t, o, k, f);
+    }
+
+    /** Removes the earliest event. */
+    private void pop() {
+        int last = --size;
+        if (last == 0)
+            return;
+        long t = time[last], o = order[last];
+        int k = kind[last], f = floor[last];
+        int i = 0;
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= last)
+                break;
+            if (c + 1 < last && before(time[c + 1], order[c + 1], time[c], order[c]))
+                c++;
+            if (!before(time[c], order[c], t, o))
+                break;
+            move(c, i);
+            i = c;
+        }
+        set(i, t, o, k, f);
+    }
+
+    private static boolean before(long t1, long o1, long t2, long o2) {
+        return t1 != t2 ? t1 < t2 : o1 < o2;
+    }
+
+    private void move(int from, int to) {
+        set(to, time[from], order[from], kind[from], floor[from]);
+    }
+
+    private void set(int i, long t, long o, int k, int f) {
+        time[i] = t;
+        order[i] = o;
+        kind[i] = k;
+        floor[i] = f;
+    }
+
+    public long now() {
+        return now;
+    }
+
+    /** Ticks actually executed, as opposed to skipped. */
+    public long ticksRun() {
+        return ticksRun;
+    }
+
+    public long ticksSkipped() {
+        return ticksSkipped;
+    }
+}
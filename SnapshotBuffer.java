@@ -0,0 +1,75 @@
+/**
+ * Caller-owned copy of one car's state, refilled in place by
+ * Controller.snapshot(SnapshotBuffer). Filling copies the request bitmaps word by
+ * word and allocates nothing, so a monitor can poll every tick for free.
+ *
+ * Fill it on the thread that runs tick(); once filled it is a plain copy that
+ * can be handed to another thread, unlike the live Scheduler views.
+ */
+public final class SnapshotBuffer {
+    public final int minFloor, maxFloor;
+
+    long tick;
+    int floor;
+    Direction direction = Direction.IDLE;
+    boolean doorOpen;
+    int doorDwellTicks;
+    final FloorBitSet up, down, car;
+
+    public SnapshotBuffer(int minFloor, int maxFloor) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.up = new FloorBitSet(minFloor, maxFloor);
+        this.down = new FloorBitSet(minFloor, maxFloor);
+        this.car = new FloorBitSet(minFloor, maxFloor);
+    }
+
+    public long tick() {
+        return tick;
+    }
+
+    public int floor() {
+        return floor;
+    }
+
+    public Direction direction() {
+        return direction;
+    }
+
+    public boolean doorOpen() {
+        return doorOpen;
+    }
+
+    public int doorDwellTicks() {
+        return doorDwellTicks;
+    }
+
+    /** Is a request of this class pending? UP/DOWN for hall calls, IDLE for car calls. */
+    public boolean hasRequest(Direction cls, int floor) {
+        return requests(cls).contains(floor);
+    }
+
+    public int requestCount(Direction cls) {
+        return requests(cls).size();
+    }
+
+    /** Lowest pending floor of the class, or FloorBitSet.NONE; iterate with {@link #nextRequest}. */
+    public int firstRequest(Direction cls) {
+        return requests(cls).first();
+    }
+
+    public int nextRequest(Direction cls, int after) {
+        return requests(cls).higher(after);
+    }
+
+    private FloorBitSet requests(Direction cls) {
+        return cls == Direction.UP ? up : cls == Direction.DOWN ? down : car;
+    }
+
+    /** Same format as Controller.Snapshot; allocates, so keep it off hot paths. */
+    @Override
+    public String toString() {
+        return String.format("floor=%d dir=%s door=%s | up=%s down=%s car=%s",
+                floor, direction, doorOpen ? "OPEN" : "CLOSED", up.view(), down.view(), car.view());
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes every car's state into a memory-mapped file that monitors in other
+ * processes read with StateBoardReader: floor, direction, doors, dwell and the
+ * pending request bitmaps, rewritten after each tick. Publishing is a few dozen
+ * stores into the mapping: no allocation, no system call and no lock.
+ *
+ * Layout, little-endian: a 64-byte header (magic, format, car count, floor
+ * range, bitmap words per request class, slot size), then one slot per car,
+ * 64-byte aligned so cars never share a cache line. A slot holds a sequence
+ * number (long), tick (long), floor (int), direction ordinal (byte), door open
+ * (byte), dwell ticks left (int), then the UP, DOWN and car-call bitmaps as
+ * longs over the floor range.
+ *
+ * Each slot is guarded by a seqlock. The writer makes the sequence odd, writes
+ * the slot and makes it even again; a reader copies the slot and keeps the copy
+ * only if the sequence was even and unchanged throughout. One thread per board
+ * publishes, normally the one running tick().
+ */
+public final class StateBoard {
+    static final int MAGIC = 0x42534C45; // "ELSB"
+    static final short FORMAT = 1;
+    static final int HEADER_BYTES = 64, SLOT_ALIGN = 64;
+    // Slot field offsets.
+    static final int SEQ = 0, TICK = 8, FLOOR = 16, DIRECTION = 20, DOOR = 21, DWELL = 24, BITMAPS = 32;
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer out;
+    private final int cars, minFloor, maxFloor, words, slotBytes;
+    private final SnapshotBuffer[] scratch; // per car, refilled from the controller before copying out
+    private final long[] seq; // the last even sequence written to each slot
+
+    private StateBoard(MappedByteBuffer out, int cars, int minFloor, int maxFloor) {
+        this.out = out;
+        this.cars = cars;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.words = wordsFor(minFloor, maxFloor);
+        this.slotBytes = slotBytes(words);
+        this.scratch = new SnapshotBuffer[cars];
+        for (int i = 0; i < cars; i++)
+            scratch[i] = new SnapshotBuffer(minFloor, maxFloor);
+        this.seq = new long[cars];
+    }
+
+    /**
+     * Maps {@code file}, creating or reusing it, with one slot per car. Readers
+     * already mapping the file see every slot restart from sequence 0.
+     */
+    public static StateBoard create(Path file, int cars, int minFloor, int maxFloor) {
+        if (cars <= 0)
+            throw new IllegalArgumentException("at least one car is required");
+        new FloorBitSet(minFloor, maxFloor); // validates the range
+        long size = HEADER_BYTES + (long) cars * slotBytes(wordsFor(minFloor, maxFloor));
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("board too large: " + size + " bytes");
+        MappedByteBuffer out;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            out = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        StateBoard b = new StateBoard(out, cars, minFloor, maxFloor);
+        out.putInt(0, 0); // not a board until the header is complete
+        for (int p = HEADER_BYTES; p < size; p += 8)
+            out.putLong(p, 0L);
+        for (int car = 0; car < cars; car++) // unpublished cars read as idle at floor 0, tick 0
+            out.put(slotOffset(car, b.slotBytes) + DIRECTION, (byte) Direction.IDLE.ordinal());
+        out.putShort(4, FORMAT).putShort(6, (short) BITMAPS);
+        out.putInt(8, cars).putInt(12, minFloor).putInt(16, maxFloor).putInt(20, b.words).putInt(24, b.slotBytes);
+        VarHandle.storeStoreFence();
+        out.putInt(0, MAGIC);
+        return b;
+    }
+
+    static int wordsFor(int minFloor, int maxFloor) {
+        return (int) (((long) maxFloor - minFloor + 64) >>> 6);
+    }
+
+    static int slotBytes(int words) {
+        return (BITMAPS + 3 * 8 * words + SLOT_ALIGN - 1) & -SLOT_ALIGN;
+    }
+
+    static int slotOffset(int car, int slotBytes) {
+        return HEADER_BYTES + car * slotBytes;
+    }
+
+    /** Writes {@code c}'s current state into slot {@code car}. Call on the thread running its tick(). */
+    public void publish(int car, Controller c) {
+        if (car < 0 || car >= cars)
+            throw new IllegalArgumentException("no slot for car " + car);
+        SnapshotBuffer s = c.snapshot(scratch[car]); // rejects a controller over other floors
+        MappedByteBuffer b = out;
+        int base = slotOffset(car, slotBytes);
+        long v = seq[car];
+        LONGS.setOpaque(b, base + SEQ, v + 1);
+        VarHandle.storeStoreFence(); // the odd sequence is visible before any field changes
+        b.putLong(base + TICK, s.tick);
+        b.putInt(base + FLOOR, s.floor);
+        b.put(base + DIRECTION, (byte) s.direction.ordinal());
+        b.put(base + DOOR, (byte) (s.doorOpen ? 1 : 0));
+        b.putInt(base + DWELL, s.doorDwellTicks);
+        int p = base + BITMAPS;
+        p = putWords(b, p, s.up.words);
+        p = putWords(b, p, s.down.words);
+        putWords(b, p, s.car.words);
+        LONGS.setRelease(b, base + SEQ, v + 2);
+        seq[car] = v + 2;
+    }
+
+    private static int putWords(MappedByteBuffer b, int p, long[] w) {
+        for (long x : w) {
+            b.putLong(p, x);
+            p += 8;
+        }
+        return p;
+    }
+
+    /** Publishes every car of a bank, car i into slot i. Call on the thread running its tick(). */
+    public void publish(GroupController group) {
+        if (group.size() != cars)
+            throw new IllegalArgumentException("board has " + cars + " slots, bank has " + group.size() + " cars");
+        for (int i = 0; i < cars; i++)
+            publish(i, group.controller(i));
+    }
+
+    public int cars() {
+        return cars;
+    }
+
+    public int minFloor() {
+        return minFloor;
+    }
+
+    public int maxFloor() {
+        return maxFloor;
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads a StateBoard from any process that can map its file. A read copies one
+ * car's slot straight from the mapping into a caller-owned SnapshotBuffer and
+ * retries if the writer was part way through it, so it never sees a torn state.
+ * Reads take no lock, make no system call and allocate nothing; any number of
+ * threads may read at once, each with its own buffer.
+ *
+ * Usage: java StateBoardReader <board-file>    prints every car once
+ *        java StateBoardReader --bench [readers] [seconds] [cars] [floors]
+ */
+public final class StateBoardReader {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int SPINS = 64; // then yield, in case the writer was descheduled mid-update
+
+    private final MappedByteBuffer in;
+    private final int cars, minFloor, maxFloor, words, slotBytes;
+    private final LongAdder retries = new LongAdder();
+
+    private StateBoardReader(MappedByteBuffer in) {
+        this.in = in;
+        if (in.capacity() < StateBoard.HEADER_BYTES || in.getInt(0) != StateBoard.MAGIC)
+            throw new IllegalArgumentException("not a state board");
+        VarHandle.loadLoadFence(); // the header is complete once the magic is seen
+        if (in.getShort(4) != StateBoard.FORMAT)
+            throw new IllegalArgumentException("unsupported board format " + in.getShort(4));
+        this.cars = in.getInt(8);
+        this.minFloor = in.getInt(12);
+        this.maxFloor = in.getInt(16);
+        this.words = in.getInt(20);
+        this.slotBytes = in.getInt(24);
+        if (cars <= 0 || minFloor > maxFloor || words != StateBoard.wordsFor(minFloor, maxFloor)
+                || slotBytes != StateBoard.slotBytes(words)
+                || StateBoard.slotOffset(cars, slotBytes) > (long) in.capacity())
+            throw new IllegalArgumentException("corrupt board header");
+    }
+
+    /** Maps a board written by StateBoard, read-only. */
+    public static StateBoardReader open(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            return new StateBoardReader(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int cars() {
+        return cars;
+    }
+
+    public int minFloor() {
+        return minFloor;
+    }
+
+    public int maxFloor() {
+        return maxFloor;
+    }
+
+    /** A buffer sized for this board's floors. */
+    public SnapshotBuffer newBuffer() {
+        return new SnapshotBuffer(minFloor, maxFloor);
+    }
+
+    /**
+     * How many times {@code car} has been published. Cheap enough to poll; read
+     * only when it moves.
+     */
+    public long version(int car) {
+        return (long) StateBoard.LONGS.getAcquire(in, slot(car) + StateBoard.SEQ) >>> 1;
+    }
+
+    /**
+     * Fills {@code into} with {@code car}'s latest published state, spinning while
+     * the writer is mid-update. Returns its version, 0 if never published.
+     */
+    public long read(int car, SnapshotBuffer into) {
+        long v;
+        for (int n = 1; (v = tryRead(car, into)) < 0; n++) {
+            retries.increment();
+            if (n % SPINS == 0)
+                Thread.yield();
+            else
+                Thread.onSpinWait();
+        }
+        return v;
+    }
+
+    /**
+     * One attempt at {@link #read}: the version on success, or -1 if the writer
+     * was mid-update, in which case {@code into} holds garbage.
+     */
+    public long tryRead(int car, SnapshotBuffer into) {
+        if (into.minFloor != minFloor || into.maxFloor != maxFloor)
+            throw new IllegalArgumentException("buffer covers a different floor range");
+        MappedByteBuffer b = in;
+        int base = slot(car);
+        long s1 = (long) StateBoard.LONGS.getAcquire(b, base + StateBoard.SEQ);
+        if ((s1 & 1) != 0)
+            return -1;
+        long tick = b.getLong(base + StateBoard.TICK);
+        int floor = b.getInt(base + StateBoard.FLOOR);
+        int dir = b.get(base + StateBoard.DIRECTION);
+        boolean open = b.get(base + StateBoard.DOOR) != 0;
+        int dwell = b.getInt(base + StateBoard.DWELL);
+        int p = base + StateBoard.BITMAPS;
+        p = getWords(b, p, into.up);
+        p = getWords(b, p, into.down);
+        getWords(b, p, into.car);
+        VarHandle.loadLoadFence(); // every copy above completes before the sequence is checked
+        if ((long) StateBoard.LONGS.getOpaque(b, base + StateBoard.SEQ) != s1)
+            return -1;
+        into.tick = tick;
+        into.floor = floor;
+        into.direction = DIRECTIONS[dir];
+        into.doorOpen = open;
+        into.doorDwellTicks = dwell;
+        return s1 >>> 1;
+    }
+
+    private int getWords(MappedByteBuffer b, int p, FloorBitSet into) {
+        for (int i = 0; i < words; i++, p += 8)
+            into.setWord(i, b.getLong(p));
+        return p;
+    }
+
+    private int slot(int car) {
+        if (car < 0 || car >= cars)
+            throw new IllegalArgumentException("no slot for car " + car);
+        return StateBoard.slotOffset(car, slotBytes);
+    }
+
+    /** Reads that found the writer mid-update and went round again. */
+    public long retries() {
+        return retries.sum();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && !args[0].equals("--bench")) {
+            StateBoardReader r = open(Path.of(args[0]));
+            SnapshotBuffer buf = r.newBuffer();
+            for (int car = 0; car < r.cars(); car++) {
+                long v = r.read(car, buf);
+                System.out.printf("car %d v%d tick=%d %s%n", car, v, buf.tick(), buf);
+            }
+            return;
+        }
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() - 1;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+        int cars = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int floors = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        bench(Math.max(1, readers), seconds, cars, floors);
+    }
+
+    /** One thread ticks and publishes a bank flat out while the others read it. */
+    private static void bench(int readers, double seconds, int cars, int floors) throws Exception {
+        Path file = Files.createTempFile("elevator", ".board");
+        try {
+            Controller[] cs = new Controller[cars];
+            for (int i = 0; i < cars; i++)
+                cs[i] = new Controller(new Elevator(0, floors - 1, 0), new Scheduler(0, floors - 1), 2);
+            StateBoard board = StateBoard.create(file, cars, 0, floors - 1);
+            StateBoardReader r = open(file); // its own mapping, as another process would have
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            long[] reads = new long[readers];
+            Thread[] threads = new Thread[readers];
+            for (int t = 0; t < readers; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    SnapshotBuffer buf = r.newBuffer();
+                    long n = 0, sink = 0;
+                    for (int car = 0; System.nanoTime() < end; car = car + 1 == cars ? 0 : car + 1, n++)
+                        sink += r.read(car, buf) + buf.floor();
+                    reads[id] = n + (sink == 42 ? 1 : 0);
+                });
+                threads[t].start();
+            }
+            SplittableRandom rnd = new SplittableRandom(1);
+            long ticks = 0;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < cars; i++) {
+                    if (rnd.nextInt(8) == 0)
+                        cs[i].submitCarCall(rnd.nextInt(floors));
+                    cs[i].tick();
+                    board.publish(i, cs[i]);
+                }
+                ticks++;
+            }
+            long total = 0;
+            for (int t = 0; t < readers; t++) {
+                threads[t].join();
+                total += reads[t];
+            }
+            System.out.printf("1 writer, %d readers, %d cars x %d floors, %.1f s%n", readers, cars, floors, seconds);
+            System.out.printf("writes: %.2f M car states/s%n", ticks * cars / seconds / 1e6);
+            System.out.printf("reads:  %.2f M car states/s total, %.2f M per reader, %.3f%% retried%n",
+                    total / seconds / 1e6, total / seconds / 1e6 / readers, 100.0 * r.retries() / Math.max(1, total));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Receives a Controller's state changes as they happen, on the thread running
+ * tick(). Each change is passed as primitives and an enum, so publishing one
+ * allocates nothing; a listener that keeps them can rebuild the full state.
+ *
+ * For request changes, {@code dir} is UP or DOWN for a hall call and IDLE for a
+ * car call. For cab changes, {@code floor} is the cab's floor after the change and
+ * {@code dir} its direction.
+ */
+public interface StateListener {
+    enum Change {
+        FLOOR_CHANGED, DIRECTION_CHANGED, DOOR_OPENED, DOOR_CLOSED, REQUEST_ADDED, REQUEST_CLEARED
+    }
+
+    /** {@code tick} is the controller's clock when the change happened. */
+    void onChange(long tick, Change change, int floor, Direction dir);
+}
@@ -0,0 +1,387 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs thousands of independent buildings, each a Controller with its own tick
+ * period, on one timer thread and a small worker pool instead of a thread each.
+ *
+ * The timer thread turns a hashed timing wheel: a ring of slots, one per wheel
+ * resolution, each holding the tenants whose next deadline falls in it. A turn
+ * hands every tenant that is due to the workers and leaves the others, due in a
+ * later lap, where they are. A worker runs the tenant's tick and hands the tenant
+ * back to the timer through a lock-free stack, to be filed under its next
+ * deadline. Filing, due checks and handing back are O(1) per tick and allocate
+ * nothing; a pool submission allocates one small task.
+ *
+ * Tenants are isolated from each other:
+ * - A tenant is never on more than one worker, and is back in the wheel only
+ *   after its tick returns, so a slow tenant holds at most one worker.
+ * - The workers share one FIFO work-stealing queue, so tenants due behind a slow
+ *   one go to the next free worker.
+ * - Catching up runs at most {@link #MAX_BURST} missed ticks before the tenant
+ *   goes to the back of the queue, so a tenant that fell behind cannot monopolize
+ *   a worker. Under SKIP missed ticks are dropped instead, as in RealTimeDriver.
+ * - A tick that throws, an Error included, retires its tenant; the others
+ *   carry on.
+ *
+ * Each tenant records its lag: how late each tick started against its deadline,
+ * in nanoseconds. Deadlines are rounded to the wheel resolution, so a tick can
+ * start up to one resolution early; that counts as no lag. Stats are written
+ * only by the worker running the tenant; other threads may read a slightly
+ * stale picture.
+ */
+public final class TenantHost implements AutoCloseable {
+    /** Missed ticks a tenant may run back to back under CATCH_UP before yielding its worker. */
+    static final int MAX_BURST = 8;
+
+    private final Clock clock;
+    private final long resolution; // nanoseconds per wheel slot
+    private final Tenant[] wheel; // slot heads, linked through Tenant.next; timer thread only
+    private final int mask;
+    private final ForkJoinPool workers;
+    private final AtomicReference<Tenant> arrivals = new AtomicReference<>(); // stack linked through Tenant.next
+    private final List<Tenant> tenants = new ArrayList<>(); // guarded by this
+
+    private long turned; // wheel time up to which every slot has been turned; timer thread only
+    private Thread timer;
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+
+    /** 1 ms resolution, 1024 slots. */
+    public TenantHost(int workers) {
+        this(workers, TimeUnit.MILLISECONDS.toNanos(1), 1024, Clock.SYSTEM);
+    }
+
+    public TenantHost(int workers, long resolutionNanos, int slots, Clock clock) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("at least one worker is required");
+        if (resolutionNanos <= 0 || slots <= 0 || Integer.bitCount(slots) != 1)
+            throw new IllegalArgumentException("need a positive resolution and a power-of-two slot count");
+        if (clock == null)
+            throw new IllegalArgumentException("clock is required");
+        this.clock = clock;
+        this.resolution = resolutionNanos;
+        this.wheel = new Tenant[slots];
+        this.mask = slots - 1;
+        this.workers = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Hosts a controller that has no other tick thread. Its first tick is one
+     * period from now.
+     */
+    public Tenant add(String name, Controller controller, long periodNanos, RealTimeDriver.Overrun overrun) {
+        return add(name, controller, periodNanos, periodNanos, overrun);
+    }
+
+    /** Like {@link #add(String, Controller, long, RealTimeDriver.Overrun)}, first ticking after {@code delayNanos}. */
+    public Tenant add(String name, Controller controller, long periodNanos, long delayNanos,
+            RealTimeDriver.Overrun overrun) {
+        if (periodNanos <= 0 || delayNanos < 0)
+            throw new IllegalArgumentException("period must be positive and delay non-negative");
+        if (controller == null || overrun == null)
+            throw new IllegalArgumentException("controller and overrun policy are required");
+        Tenant t = new Tenant(name, controller, periodNanos, overrun);
+        t.deadline = clock.nanoTime() + delayNanos;
+        synchronized (this) {
+            tenants.add(t);
+        }
+        arrive(t);
+        return t;
+    }
+
+    /** Starts the timer thread, "tenant-wheel". */
+    public synchronized void start() {
+        if (timer != null)
+            throw new IllegalStateException("already started");
+        running = true;
+        turned = Math.floorDiv(clock.nanoTime(), resolution);
+        timer = new Thread(this::loop, "tenant-wheel");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                clock.sleepUntil((turned + 1) * resolution);
+                turn();
+            }
+        } catch (InterruptedException e) {
+            // close() wakes us up to stop
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Files tenants handed back since the last turn, then turns every slot the
+     * clock has passed, dispatching the tenants that are due. A turn covers at
+     * most one lap, however late the timer woke.
+     */
+    private void turn() {
+        for (Tenant t = arrivals.getAndSet(null), next; t != null; t = next) {
+            next = t.next;
+            file(t);
+        }
+        long now = clock.nanoTime();
+        long to = Math.min(Math.floorDiv(now, resolution), turned + wheel.length);
+        for (long w = turned + 1; w <= to; w++) {
+            int slot = (int) (w & mask);
+            Tenant keep = null;
+            for (Tenant t = wheel[slot], next; t != null; t = next) {
+                next = t.next;
+                if (t.retired) {
+                    t.next = null;
+                } else if (Math.floorDiv(t.deadline, resolution) <= w) {
+                    t.next = null;
+                    workers.execute(t);
+                } else {
+                    t.next = keep; // due in a later lap
+                    keep = t;
+                }
+            }
+            wheel[slot] = keep;
+        }
+        turned = Math.max(turned, to);
+    }
+
+    /** Puts a tenant in the slot for its deadline, or the next slot to turn if that has passed. */
+    private void file(Tenant t) {
+        long w = Math.max(Math.floorDiv(t.deadline, resolution), turned + 1);
+        int slot = (int) (w & mask);
+        t.next = wheel[slot];
+        wheel[slot] = t;
+    }
+
+    /** Hands a tenant to the timer thread; any thread. */
+    private void arrive(Tenant t) {
+        Tenant head;
+        do {
+            head = arrivals.get();
+            t.next = head;
+        } while (!arrivals.compareAndSet(head, t));
+    }
+
+    /** Every tenant added, including retired ones. */
+    public synchronized List<Tenant> tenants() {
+        return new ArrayList<>(tenants);
+    }
+
+    /** Lag of every tenant merged into one histogram; allocates. */
+    public LatencyHistogram lag() {
+        LatencyHistogram all = newLagHistogram();
+        for (Tenant t : tenants())
+            all.add(t.lag);
+        return all;
+    }
+
+    private static LatencyHistogram newLagHistogram() {
+        return new LatencyHistogram(2, 1L << 36); // 25% error up to a minute: about 1KB per tenant
+    }
+
+    /** Stops the timer and the workers; rethrows anything the timer threw. */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            t = timer;
+            running = false;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // stopping anyway; let the caller see it
+            }
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /** One hosted building. */
+    public final class Tenant implements Runnable {
+        public final String name;
+        private final Controller controller;
+        private final long periodNanos;
+        private final RealTimeDriver.Overrun overrun;
+        private final LatencyHistogram lag = newLagHistogram();
+
+        private long deadline; // next tick's start
+        private long countedMissed = Long.MIN_VALUE; // latest deadline already counted in missed
+        private Tenant next; // wheel slot or arrival stack link
+        private volatile boolean retired;
+        private volatile long ticks, missed, skipped;
+        private volatile Throwable failure;
+
+        private Tenant(String name, Controller controller, long periodNanos, RealTimeDriver.Overrun overrun) {
+            this.name = name;
+            this.controller = controller;
+            this.periodNanos = periodNanos;
+            this.overrun = overrun;
+        }
+
+        /** Runs on a worker: the due tick, plus a bounded catch-up burst. */
+        @Override
+        public void run() {
+            if (retired)
+                return;
+            long start = clock.nanoTime();
+            long late = start - deadline;
+            lag.record(late);
+            long behind = late > 0 ? late / periodNanos : 0; // deadlines that passed while we were late
+            if (behind > 0) {
+                // Catching up can take several runs; count each missed deadline once.
+                long last = deadline + behind * periodNanos;
+                missed += (last - Math.max(deadline, countedMissed)) / periodNanos;
+                countedMissed = last;
+                if (overrun == RealTimeDriver.Overrun.SKIP) {
+                    skipped += behind;
+                    deadline = last;
+                    behind = 0;
+                }
+            }
+            long run = Math.min(behind + 1, MAX_BURST);
+            try {
+                for (long i = 0; i < run; i++) {
+                    controller.tick();
+                    ticks++;
+                }
+            } catch (Throwable e) {
+                // Errors too: the pool would swallow them, leaving the tenant silently stalled.
+                failure = e;
+                retired = true;
+                return;
+            }
+            deadline += run * periodNanos;
+            if (!retired)
+                arrive(this);
+        }
+
+        /** Thread-safe; takes effect at the next tick. */
+        public void submitHallCall(int floor, Direction dir) {
+            controller.inbox().submitHallCall(floor, dir);
+        }
+
+        /** Thread-safe; takes effect at the next tick. */
+        public void submitCarCall(int floor) {
+            controller.inbox().submitCarCall(floor);
+        }
+
+        /** Stops ticking this tenant; a tick already running finishes. */
+        public void remove() {
+            retired = true;
+        }
+
+        public boolean retired() {
+            return retired;
+        }
+
+        /** What the tick that retired this tenant threw, or null. */
+        public Throwable failure() {
+            return failure;
+        }
+
+        public Controller controller() {
+            return controller;
+        }
+
+        public long periodNanos() {
+            return periodNanos;
+        }
+
+        /** Start lateness of each run against its deadline, in nanoseconds. */
+        public LatencyHistogram lag() {
+            return lag;
+        }
+
+        /** Ticks run, including catch-up ticks. */
+        public long ticks() {
+            return ticks;
+        }
+
+        /** Deadlines that passed before their tick could start. */
+        public long missed() {
+            return missed;
+        }
+
+        /** Missed deadlines dropped under SKIP; never run. */
+        public long skipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s ticks=%d missed=%d skipped=%d%s lag(ns): %s", name, ticks, missed, skipped,
+                    failure != null ? " failed: " + failure : retired ? " removed" : "", lag);
+        }
+    }
+
+    /**
+     * Hosts many buildings with random traffic and reports tick lag.
+     *
+     * Usage: java TenantHost [buildings] [workers] [period-ms] [seconds]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int buildings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long period = TimeUnit.MILLISECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 100);
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = rt.totalMemory() - rt.freeMemory();
+        SplittableRandom rnd = new SplittableRandom(7);
+        Controller[] cs = new Controller[buildings];
+        for (int i = 0; i < buildings; i++) {
+            int floors = 5 + rnd.nextInt(36);
+            cs[i] = new Controller(new Elevator(0, floors - 1, 0), new Scheduler(0, floors - 1), 3);
+        }
+        System.gc();
+        long heapAfter = rt.totalMemory() - rt.freeMemory();
+
+        TenantHost host = new TenantHost(threads);
+        host.start();
+        Tenant[] ts = new Tenant[buildings];
+        // Spread first deadlines over a period so the buildings do not all tick in step.
+        for (int i = 0; i < buildings; i++)
+            ts[i] = host.add("b" + i, cs[i], period, 1 + rnd.nextLong(period), RealTimeDriver.Overrun.CATCH_UP);
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        // Each building sees a call every few seconds on average.
+        while (System.nanoTime() < end) {
+            for (int n = buildings / 100; n > 0; n--) {
+                Tenant t = ts[rnd.nextInt(buildings)];
+                int top = t.controller.scheduler().maxFloor();
+                if (rnd.nextBoolean())
+                    t.submitCarCall(rnd.nextInt(top + 1));
+                else
+                    t.submitHallCall(1 + rnd.nextInt(top), Direction.DOWN);
+            }
+            Thread.sleep(30);
+        }
+        host.close();
+        long ticks = 0, missed = 0, worst = 0;
+        for (Tenant t : ts) {
+            ticks += t.ticks();
+            missed += t.missed();
+            worst = Math.max(worst, t.lag().percentile(99));
+        }
+        LatencyHistogram lag = host.lag();
+        System.out.printf("%d buildings, %d workers, %d ms period, %.1f s, %.0f bytes/controller%n", buildings, threads,
+                period / 1_000_000, seconds, (heapAfter - heapBefore) / (double) buildings);
+        System.out.printf("ticks: %.0f/s, missed deadlines: %d%n", ticks / seconds, missed);
+        System.out.printf("lag (us): p50=%d p99=%d p99.9=%d max=%d; worst building p99=%d%n", lag.percentile(50) / 1000,
+                lag.percentile(99) / 1000, lag.percentile(99.9) / 1000, lag.max() / 1000, worst / 1000);
+    }
+}
@@ -0,0 +1,92 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * How often one Controller took each branch of tick(), and how often it stopped
+ * at each floor. Skipped ticks count under the branch they stand for.
+ *
+ * Only the thread running tick() writes, with opaque stores, which cost no more
+ * than plain ones; any thread may read a slightly stale but never torn value. The
+ * counts are padded away from neighbouring objects, so cars ticking on different
+ * threads never share a cache line: each controller is its own stripe, and
+ * ControllerMetrics sums the stripes.
+ */
+public final class TickCounters {
+    /** What a tick did. */
+    public enum Branch {
+        /** Doors open, dwell counting down. */
+        DWELL,
+        /** Doors closed at the end of the dwell. */
+        DOORS_CLOSED,
+        /** Stopped and opened the doors. */
+        STOP,
+        /** Moved one floor in the same direction as before. */
+        MOVE,
+        /** Set off from rest. */
+        START,
+        /** Turned straight round from UP to DOWN or back. */
+        REVERSE,
+        /** Came to rest with nothing to do. */
+        GO_IDLE,
+        /** Stayed at rest. */
+        IDLE
+    }
+
+    static final Branch[] BRANCHES = Branch.values();
+    private static final int PAD = 16; // longs either side: two cache lines
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    final int minFloor, maxFloor;
+    private final long[] branches = new long[PAD + BRANCHES.length + PAD];
+    private long[] stops; // per floor, allocated at the first stop so forks stay small
+
+    TickCounters(int minFloor, int maxFloor) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+    }
+
+    void record(Branch b) {
+        add(branches, PAD + b.ordinal(), 1);
+    }
+
+    void record(Branch b, long n) {
+        add(branches, PAD + b.ordinal(), n);
+    }
+
+    void stopAt(int floor) {
+        if (stops == null)
+            stops = new long[PAD + (maxFloor - minFloor + 1) + PAD];
+        add(stops, PAD + floor - minFloor, 1);
+    }
+
+    private static void add(long[] a, int i, long n) {
+        LONGS.setOpaque(a, i, (long) LONGS.getOpaque(a, i) + n);
+    }
+
+    public long count(Branch b) {
+        return (long) LONGS.getOpaque(branches, PAD + b.ordinal());
+    }
+
+    /** Ticks counted under every branch. */
+    public long ticks() {
+        long n = 0;
+        for (Branch b : BRANCHES)
+            n += count(b);
+        return n;
+    }
+
+    public long stopsAt(int floor) {
+        if (floor < minFloor || floor > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+        long[] s = stops;
+        return s == null ? 0 : (long) LONGS.getOpaque(s, PAD + floor - minFloor);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Branch b : BRANCHES)
+            sb.append(sb.length() == 0 ? "" : " ").append(b).append('=').append(count(b));
+        return sb.toString();
+    }
+}
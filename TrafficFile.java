@@ -0,0 +1,181 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Trips saved to a file and streamed back, so a soak test can replay the same
+ * load against different builds without regenerating it.
+ *
+ * After an 8-byte header ("ELVT" and a format number) each trip is three varints:
+ * the ticks since the previous trip, then origin and destination zig-zag encoded
+ * so basements stay short. Typical trips take 3 to 5 bytes. Both directions go
+ * through a buffered stream, one trip at a time, so files of any length are read
+ * and written in constant memory.
+ */
+public final class TrafficFile {
+    static final int MAGIC = 0x54564C45; // "ELVT"
+    static final int FORMAT = 1;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private TrafficFile() {
+    }
+
+    /** Drains {@code source} into {@code file}, replacing it; returns the trips written. */
+    public static long write(TrafficSource source, Path file) {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES)) {
+            writeInt(out, MAGIC);
+            writeInt(out, FORMAT);
+            long last = 0, trips = 0;
+            while (source.next()) {
+                if (source.time() < last)
+                    throw new IllegalArgumentException("trips out of time order at " + source.time());
+                writeVarint(out, source.time() - last);
+                writeVarint(out, zigzag(source.origin()));
+                writeVarint(out, zigzag(source.destination()));
+                last = source.time();
+                trips++;
+            }
+            return trips;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Opens {@code file} as a stream of trips; close it when done. */
+    public static Reader open(Path file) {
+        try {
+            InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES);
+            try {
+                if (readInt(in) != MAGIC || readInt(in) != FORMAT)
+                    throw new IllegalArgumentException("not a traffic file: " + file);
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+            return new Reader(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Trips read back from a file, in the order written. */
+    public static final class Reader implements TrafficSource, AutoCloseable {
+        private final InputStream in;
+        private long time;
+        private int origin, destination;
+
+        private Reader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                int first = in.read();
+                if (first < 0)
+                    return false;
+                time += readVarint(in, first);
+                origin = unzigzag(readVarint(in, in.read()));
+                destination = unzigzag(readVarint(in, in.read()));
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long time() {
+            return time;
+        }
+
+        @Override
+        public int origin() {
+            return origin;
+        }
+
+        @Override
+        public int destination() {
+            return destination;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static long zigzag(int v) {
+        return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long v) {
+        return (int) (v >>> 1) ^ -(int) (v & 1);
+    }
+
+    private static void writeVarint(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) (v | 0x80) & 0xFF);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    /** Decodes a varint whose first byte has already been read. */
+    private static long readVarint(InputStream in, int b) throws IOException {
+        long v = 0;
+        for (int shift = 0;; shift += 7) {
+            if (b < 0)
+                throw new EOFException("truncated trip");
+            if (shift > 63)
+                throw new IOException("varint too long");
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+            b = in.read();
+        }
+    }
+
+    private static void writeInt(OutputStream out, int v) throws IOException {
+        for (int i = 0; i < 4; i++)
+            out.write(v >>> (8 * i));
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("truncated header");
+            v |= b << (8 * i);
+        }
+        return v;
+    }
+
+    /**
+     * Writes generated traffic to a file and reports the rate.
+     * Usage: java TrafficFile out.trips PATTERN minFloor maxFloor ratePerTick ticks [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.err.println("usage: java TrafficFile out.trips PATTERN minFloor maxFloor ratePerTick ticks [seed]");
+            System.exit(2);
+        }
+        TrafficGenerator gen = new TrafficGenerator(TrafficGenerator.Pattern.valueOf(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), Double.parseDouble(args[4]),
+                Long.parseLong(args[5]), args.length > 6 ? Long.parseLong(args[6]) : 1);
+        long start = System.nanoTime();
+        long trips = write(gen, Path.of(args[0]));
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("wrote %d trips in %.2f s (%.1f M trips/s)%n", trips, secs, trips / secs / 1e6);
+    }
+}
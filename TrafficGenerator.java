@@ -0,0 +1,125 @@
+import java.util.SplittableRandom;
+
+/**
+ * Seeded passenger traffic: Poisson arrivals at a fixed mean rate per tick, with
+ * origin and destination drawn from one of the standard daily patterns. The same
+ * seed always produces the same stream. Trips are generated on demand, one at a
+ * time, so a stream of any length runs in constant memory.
+ *
+ * Each pattern mixes three kinds of trip: incoming (lobby to an upper floor),
+ * outgoing (an upper floor to the lobby) and interfloor (between two non-lobby
+ * floors, uniformly). Upper floors are equally likely, so the origin/destination
+ * matrix scales to any building. The lobby is floor 0 when the building has one,
+ * otherwise the floor nearest 0: the lowest floor of a building wholly above
+ * ground, the highest of one wholly below.
+ */
+public final class TrafficGenerator implements TrafficSource {
+    /** Shares of incoming, outgoing and interfloor trips. */
+    public enum Pattern {
+        INTERFLOOR(0, 0, 1), // every origin/destination pair equally likely
+        UP_PEAK(0.85, 0.05, 0.10), // morning arrivals
+        LUNCH(0.45, 0.45, 0.10), // out to lunch and back
+        DOWN_PEAK(0.05, 0.85, 0.10); // evening departures
+
+        final double incoming, outgoing, interfloor;
+
+        Pattern(double incoming, double outgoing, double interfloor) {
+            this.incoming = incoming;
+            this.outgoing = outgoing;
+            this.interfloor = interfloor;
+        }
+    }
+
+    private final int minFloor, maxFloor, lobby;
+    private final Pattern pattern;
+    private final double ratePerTick;
+    private final long endTime; // exclusive
+    private final SplittableRandom rnd;
+
+    private double clock; // continuous arrival time
+    private long time;
+    private int origin, destination;
+
+    /** Uniform interfloor traffic. */
+    public TrafficGenerator(int minFloor, int maxFloor, double ratePerTick, long endTime, long seed) {
+        this(Pattern.INTERFLOOR, minFloor, maxFloor, ratePerTick, endTime, seed);
+    }
+
+    public TrafficGenerator(Pattern pattern, int minFloor, int maxFloor, double ratePerTick, long endTime,
+            long seed) {
+        if (minFloor >= maxFloor)
+            throw new IllegalArgumentException("need at least two floors");
+        if (!(ratePerTick > 0))
+            throw new IllegalArgumentException("rate must be positive");
+        this.pattern = pattern;
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.lobby = Math.max(minFloor, Math.min(0, maxFloor));
+        this.ratePerTick = ratePerTick;
+        this.endTime = endTime;
+        this.rnd = new SplittableRandom(seed);
+    }
+
+    @Override
+    public boolean next() {
+        // Exponential inter-arrival gaps give a Poisson process.
+        clock += -Math.log(1.0 - rnd.nextDouble()) / ratePerTick;
+        if (clock >= endTime)
+            return false;
+        time = (long) clock;
+        int floors = maxFloor - minFloor + 1;
+        if (pattern == Pattern.INTERFLOOR) {
+            origin = minFloor + rnd.nextInt(floors);
+            destination = otherThan(origin, minFloor, floors);
+            return true;
+        }
+        double kind = rnd.nextDouble();
+        if (kind < pattern.incoming) {
+            origin = lobby;
+            destination = otherThan(lobby, minFloor, floors);
+        } else if (kind < pattern.incoming + pattern.outgoing) {
+            origin = otherThan(lobby, minFloor, floors);
+            destination = lobby;
+        } else if (floors > 2) {
+            origin = otherThan(lobby, minFloor, floors);
+            destination = otherThan2(lobby, origin, floors);
+        } else {
+            // Two floors leave no interfloor trips; the only one is via the lobby.
+            origin = otherThan(lobby, minFloor, floors);
+            destination = lobby;
+        }
+        return true;
+    }
+
+    /** A uniform floor in [from, from + count) other than {@code skip}. */
+    private int otherThan(int skip, int from, int count) {
+        int f = from + rnd.nextInt(count - 1);
+        return f >= skip ? f + 1 : f;
+    }
+
+    /** A uniform floor in the building other than {@code a} and {@code b}, which differ. */
+    private int otherThan2(int a, int b, int floors) {
+        int lo = Math.min(a, b), hi = Math.max(a, b);
+        int f = minFloor + rnd.nextInt(floors - 2);
+        if (f >= lo)
+            f++;
+        if (f >= hi)
+            f++;
+        return f;
+    }
+
+    @Override
+    public long time() {
+        return time;
+    }
+
+    @Override
+    public int origin() {
+        return origin;
+    }
+
+    @Override
+    public int destination() {
+        return destination;
+    }
+}
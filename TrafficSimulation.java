@@ -0,0 +1,291 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Runs one Controller against a stream of passenger trips. Each passenger presses
+ * the hall button at their origin, queues there by direction, boards when the
+ * doors open if the car has room, presses their destination, and leaves when
+ * the doors open at it.
+ *
+ * The car holds at most {@code capacity} riders and {@code maxLoadKg} of them.
+ * At a stop, riders get off first; then the queue for the car's direction
+ * boards, then the other queue, each first come first served, stopping at the
+ * first rider who does not fit. The stop cleared their hall call, so those
+ * left behind press it again once the car has moved away. Each rider's wait
+ * (press to boarding), ride and whole trip are recorded.
+ *
+ * Time advances through the SimulationEngine, so quiet travel and dwell ticks are
+ * skipped. Trips are pulled from the source one at a time, and riders live in
+ * pooled primitive arrays, so arbitrarily long streams run in constant memory
+ * and, once the pool has grown to the peak number in flight, without garbage.
+ */
+public final class TrafficSimulation {
+    private static final int NIL = -1;
+    private static final int UP = 0, DOWN = 1; // queue index within a floor
+
+    private final Controller controller;
+    private final Elevator cab;
+    private final TrafficSource traffic;
+    private final SimulationEngine engine;
+    private final int minFloor;
+    private final int capacity, maxLoadKg;
+    private final SplittableRandom weights;
+
+    // Passengers in flight, as intrusive linked lists over pooled arrays: a FIFO
+    // queue per origin floor and direction, and a list per destination aboard.
+    private int[] next = new int[64];
+    private int[] dest = new int[64];
+    private int[] weight = new int[64];
+    private long[] pressedAt = new long[64];
+    private long[] boardedAt = new long[64];
+    private int free = NIL, allocated;
+    private final int[] queueHead, queueTail; // [2 * (floor - minFloor) + UP/DOWN]
+    private final int[] aboard;
+    private int riders, load, peakRiders;
+    private final FloorBitSet stranded; // floors where riders were left behind and must press again
+
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram rideTimes = new LatencyHistogram();
+    private final LatencyHistogram tripTimes = new LatencyHistogram();
+    private long arrived, delivered, leftBehind;
+    private boolean doorWasOpen;
+    private boolean sourceDone;
+
+    /** No capacity limit: everyone waiting boards at every stop. */
+    public TrafficSimulation(Controller controller, Elevator cab, TrafficSource traffic) {
+        this(controller, cab, traffic, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * A car that holds {@code capacity} riders and {@code maxLoadKg}. Rider
+     * weights are drawn from {@code seed}: normal around 75 kg, sd 15, clamped to
+     * 40..150 kg and to the load limit.
+     */
+    public TrafficSimulation(Controller controller, Elevator cab, TrafficSource traffic, int capacity, int maxLoadKg,
+            long seed) {
+        if (capacity < 1 || maxLoadKg < 1)
+            throw new IllegalArgumentException("capacity and load limit must be positive");
+        this.controller = controller;
+        this.cab = cab;
+        this.traffic = traffic;
+        this.engine = new SimulationEngine(controller);
+        this.minFloor = cab.minFloor;
+        this.capacity = capacity;
+        this.maxLoadKg = maxLoadKg;
+        this.weights = new SplittableRandom(seed);
+        int floors = cab.maxFloor - cab.minFloor + 1;
+        this.queueHead = new int[2 * floors];
+        this.queueTail = new int[2 * floors];
+        this.aboard = new int[floors];
+        Arrays.fill(queueHead, NIL);
+        Arrays.fill(queueTail, NIL);
+        Arrays.fill(aboard, NIL);
+        this.stranded = new FloorBitSet(cab.minFloor, cab.maxFloor);
+        this.sourceDone = !traffic.next();
+    }
+
+    /** Simulates up to (not including) tick {@code end}. */
+    public void run(long end) {
+        SimulationEngine.Observer onEvent = (time, c) -> onEvent();
+        while (!sourceDone && traffic.time() < end) {
+            long t = Math.max(traffic.time(), engine.now());
+            engine.runUntil(t, onEvent);
+            int p = allocate();
+            int origin = traffic.origin();
+            dest[p] = traffic.destination();
+            weight[p] = drawWeight();
+            pressedAt[p] = t;
+            Direction dir = dest[p] > origin ? Direction.UP : Direction.DOWN;
+            enqueue(origin, dir == Direction.UP ? UP : DOWN, p);
+            engine.scheduleHallCall(t, origin, dir);
+            arrived++;
+            sourceDone = !traffic.next();
+        }
+        engine.runUntil(end, onEvent);
+    }
+
+    private int drawWeight() {
+        if (maxLoadKg == Integer.MAX_VALUE)
+            return 0; // no load limit; weights do not matter
+        double kg = 75 + 15 * gaussian();
+        return (int) Math.min(maxLoadKg, Math.max(40, Math.min(150, Math.round(kg))));
+    }
+
+    /** Standard normal from two uniforms (Box-Muller); no allocation. */
+    private double gaussian() {
+        double u = 1.0 - weights.nextDouble(), v = weights.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    private void onEvent() {
+        boolean open = cab.doorOpen;
+        if (open && !doorWasOpen)
+            doorsOpened(cab.currentFloor);
+        doorWasOpen = open;
+        if (!stranded.isEmpty())
+            pressAgain();
+    }
+
+    private void doorsOpened(int floor) {
+        long now = engine.now();
+        int k = floor - minFloor;
+        // Riders for this floor get off.
+        for (int p = aboard[k]; p != NIL;) {
+            int n = next[p];
+            rideTimes.record(now - boardedAt[p]);
+            tripTimes.record(now - pressedAt[p]);
+            riders--;
+            load -= weight[p];
+            delivered++;
+            release(p);
+            p = n;
+        }
+        aboard[k] = NIL;
+        // Then boarding, the car's direction first. The stop cleared both hall
+        // calls, so anyone who does not fit must press again.
+        int first = cab.direction == Direction.DOWN ? DOWN : UP;
+        board(floor, first, now);
+        board(floor, 1 - first, now);
+        if (queueHead[2 * k] != NIL || queueHead[2 * k + 1] != NIL)
+            stranded.add(floor);
+    }
+
+    private void board(int floor, int q, long now) {
+        int i = 2 * (floor - minFloor) + q;
+        int p = queueHead[i];
+        while (p != NIL && riders < capacity && load <= maxLoadKg - weight[p]) {
+            int n = next[p];
+            boardedAt[p] = now;
+            waitTimes.record(now - pressedAt[p]);
+            riders++;
+            load += weight[p];
+            int d = dest[p] - minFloor;
+            next[p] = aboard[d];
+            aboard[d] = p;
+            engine.scheduleCarCall(now, dest[p]);
+            p = n;
+        }
+        queueHead[i] = p;
+        if (p == NIL)
+            queueTail[i] = NIL;
+        else
+            leftBehind += count(p);
+        peakRiders = Math.max(peakRiders, riders);
+    }
+
+    private int count(int p) {
+        int n = 0;
+        for (; p != NIL; p = next[p])
+            n++;
+        return n;
+    }
+
+    /**
+     * Riders the car has left behind press the hall button again, at every such
+     * floor the car is no longer at. Several floors may be waiting when quiet
+     * ticks between stops were skipped.
+     */
+    private void pressAgain() {
+        long now = engine.now();
+        for (int f = stranded.first(); f != FloorBitSet.NONE; f = stranded.higher(f)) {
+            if (f == cab.currentFloor)
+                continue;
+            int k = f - minFloor;
+            if (queueHead[2 * k] != NIL)
+                engine.scheduleHallCall(now, f, Direction.UP);
+            if (queueHead[2 * k + 1] != NIL)
+                engine.scheduleHallCall(now, f, Direction.DOWN);
+            stranded.remove(f);
+        }
+    }
+
+    private void enqueue(int floor, int q, int p) {
+        int i = 2 * (floor - minFloor) + q;
+        next[p] = NIL;
+        if (queueTail[i] == NIL)
+            queueHead[i] = p;
+        else
+            next[queueTail[i]] = p;
+        queueTail[i] = p;
+    }
+
+    private int allocate() {
+        if (free != NIL) {
+            int p = free;
+            free = next[p];
+            return p;
+        }
+        if (allocated == next.length) {
+            int n = next.length * 2;
+            next = Arrays.copyOf(next, n);
+            dest = Arrays.copyOf(dest, n);
+            weight = Arrays.copyOf(weight, n);
+            pressedAt = Arrays.copyOf(pressedAt, n);
+            boardedAt = Arrays.copyOf(boardedAt, n);
+        }
+        return allocated++;
+    }
+
+    private void release(int p) {
+        next[p] = free;
+        free = p;
+    }
+
+    public long now() {
+        return engine.now();
+    }
+
+    /** Passengers who have pressed a hall button so far. */
+    public long arrived() {
+        return arrived;
+    }
+
+    /** Passengers who have reached their destination. */
+    public long delivered() {
+        return delivered;
+    }
+
+    /** Times a waiting rider was passed over because the car was full. */
+    public long leftBehind() {
+        return leftBehind;
+    }
+
+    /** Riders aboard now. */
+    public int riders() {
+        return riders;
+    }
+
+    /** The most riders there have been aboard at once. */
+    public int peakRiders() {
+        return peakRiders;
+    }
+
+    /** Kilograms aboard now; 0 without a load limit. */
+    public int load() {
+        return load;
+    }
+
+    /** Riders allocated in the pool: the most ever in flight at once. */
+    public int pooled() {
+        return allocated;
+    }
+
+    /** Hall press to boarding, per boarded passenger. */
+    public LatencyHistogram waitTimes() {
+        return waitTimes;
+    }
+
+    /** Boarding to arrival, per delivered passenger. */
+    public LatencyHistogram rideTimes() {
+        return rideTimes;
+    }
+
+    /** Hall press to arrival at the destination, per delivered passenger. */
+    public LatencyHistogram tripTimes() {
+        return tripTimes;
+    }
+
+    public Controller controller() {
+        return controller;
+    }
+}
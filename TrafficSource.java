@@ -0,0 +1,15 @@
+/**
+ * A stream of passenger trips in time order, read like a cursor so that long
+ * streams never have to be materialized: call next(), then read the fields.
+ */
+public interface TrafficSource {
+    /** Advances to the next trip; returns false when the stream is exhausted. */
+    boolean next();
+
+    /** Tick at which the passenger presses the hall button. */
+    long time();
+
+    int origin();
+
+    int destination();
+}
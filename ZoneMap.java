@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Splits a building's floors into zones, each served by its own bank of cars.
+ * Adjacent zones overlap at exactly one floor, the sky lobby between them, where
+ * riders change banks. A building split at sky lobbies 26 and 53 over floors 0..79
+ * has zones 0..26, 26..53 and 53..79.
+ *
+ * A hall call goes to the zone serving its floor in its direction: at a sky
+ * lobby, UP belongs to the zone above and DOWN to the zone below. A trip that
+ * leaves its zone rides to the sky lobby on the way and continues from there.
+ */
+public final class ZoneMap {
+    private final int minFloor, maxFloor;
+    private final int[] lobbies; // sky lobbies, ascending; zone z spans lobbies[z - 1]..lobbies[z]
+
+    private ZoneMap(int minFloor, int maxFloor, int[] lobbies) {
+        this.minFloor = minFloor;
+        this.maxFloor = maxFloor;
+        this.lobbies = lobbies;
+    }
+
+    /** Zones meeting at each of {@code skyLobbies}, which must lie strictly inside the range, ascending. */
+    public static ZoneMap split(int minFloor, int maxFloor, int... skyLobbies) {
+        if (minFloor > maxFloor)
+            throw new IllegalArgumentException("min > max");
+        int prev = minFloor;
+        for (int l : skyLobbies) {
+            if (l <= prev || l >= maxFloor)
+                throw new IllegalArgumentException("sky lobbies must ascend strictly inside the range: "
+                        + Arrays.toString(skyLobbies));
+            prev = l;
+        }
+        return new ZoneMap(minFloor, maxFloor, skyLobbies.clone());
+    }
+
+    /** {@code zones} zones of about equal height. */
+    public static ZoneMap even(int minFloor, int maxFloor, int zones) {
+        long span = (long) maxFloor - minFloor;
+        if (zones < 1 || zones > span)
+            throw new IllegalArgumentException("cannot split " + (span + 1) + " floors into " + zones + " zones");
+        int[] lobbies = new int[zones - 1];
+        for (int z = 1; z < zones; z++)
+            lobbies[z - 1] = (int) (minFloor + span * z / zones);
+        return split(minFloor, maxFloor, lobbies);
+    }
+
+    public int zones() {
+        return lobbies.length + 1;
+    }
+
+    public int minFloor() {
+        return minFloor;
+    }
+
+    public int maxFloor() {
+        return maxFloor;
+    }
+
+    /** Lowest floor zone {@code z} serves: the sky lobby below it, or the building's lowest floor. */
+    public int low(int z) {
+        check(z);
+        return z == 0 ? minFloor : lobbies[z - 1];
+    }
+
+    /** Highest floor zone {@code z} serves: the sky lobby above it, or the building's highest floor. */
+    public int high(int z) {
+        check(z);
+        return z == lobbies.length ? maxFloor : lobbies[z];
+    }
+
+    /** The zone serving a hall call at {@code floor} going {@code dir}. */
+    public int zoneOf(int floor, Direction dir) {
+        if (floor < minFloor || floor > maxFloor)
+            throw new IllegalArgumentException("Floor out of range: " + floor);
+        if (dir != Direction.UP && dir != Direction.DOWN)
+            throw new IllegalArgumentException("Hall call must be UP or DOWN");
+        // Number of lobbies below floor, counting a lobby at floor itself when going UP.
+        int i = Arrays.binarySearch(lobbies, floor);
+        if (i >= 0)
+            return dir == Direction.UP ? i + 1 : i;
+        return -i - 1;
+    }
+
+    /** The zone a trip from {@code origin} to {@code destination} starts in. */
+    public int zoneOf(int origin, int destination) {
+        return zoneOf(origin, destination > origin ? Direction.UP : Direction.DOWN);
+    }
+
+    /**
+     * Where a rider in zone {@code z} heading for {@code destination} leaves the
+     * cars: the destination itself if the zone serves it, else the sky lobby on
+     * the way.
+     */
+    public int exitFloor(int z, int destination) {
+        int lo = low(z), hi = high(z);
+        return destination > hi ? hi : destination < lo ? lo : destination;
+    }
+
+    private void check(int z) {
+        if (z < 0 || z > lobbies.length)
+            throw new IllegalArgumentException("no zone " + z);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int z = 0; z < zones(); z++)
+            sb.append(z == 0 ? "" : " ").append(low(z)).append("..").append(high(z));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,395 @@
+import java.util.Arrays;
+
+/**
+ * A tall building split into zones by a ZoneMap, each zone served by its own
+ * bank of cars, with riders changing banks at the sky lobbies between zones.
+ *
+ * Each zone is a GroupController over the zone's floors plus the riders waiting
+ * in and riding its cars, and runs on its own thread. Zones share nothing but
+ * Handoff channels: one from the thread feeding trips into each zone, and one
+ * each way across every sky lobby. A rider whose destination lies beyond its
+ * zone rides to the sky lobby on the way, walks across for
+ * {@code transferTicks} and presses the hall button in the next zone.
+ *
+ * The walk is what lets zones run in parallel: a zone at tick t cannot hand a
+ * rider to its neighbour for before t + transferTicks, so the neighbour may run
+ * that far ahead without waiting. Every channel carries that promise, and a zone
+ * runs a tick only once every channel into it has made it, so the result is the
+ * same however the threads are scheduled.
+ *
+ * As in TrafficSimulation, every rider waiting on a floor boards the first car
+ * to open its doors there, whichever way it is going, and rides to its exit.
+ * Cars hold any number of riders.
+ */
+public final class ZonedBuilding {
+    private static final int RING = 1024; // riders per channel before overflowing
+    private static final int SPINS = 64; // then yield while waiting for a neighbour
+
+    private final ZoneMap map;
+    private final int transferTicks;
+    private final TrafficSource traffic;
+    private final Zone[] zones;
+    private final Handoff[] entry; // feeding thread -> zone z
+    private final Handoff[] up, down; // zone z -> z + 1, and z + 1 -> z
+    private long now;
+    private long arrived;
+    private boolean sourceDone;
+
+    /**
+     * {@code carsPerZone} cars in each zone, starting at its lowest floor, all
+     * running {@code policy}.
+     */
+    public ZonedBuilding(ZoneMap map, int carsPerZone, int dwellTicks, DispatchPolicy policy, int transferTicks,
+            TrafficSource traffic) {
+        if (carsPerZone < 1)
+            throw new IllegalArgumentException("need at least one car per zone");
+        if (transferTicks < 1)
+            throw new IllegalArgumentException("a transfer must take at least one tick");
+        this.map = map;
+        this.transferTicks = transferTicks;
+        this.traffic = traffic;
+        int n = map.zones();
+        this.entry = new Handoff[n];
+        this.up = new Handoff[n - 1];
+        this.down = new Handoff[n - 1];
+        for (int z = 0; z < n; z++)
+            entry[z] = new Handoff(RING);
+        for (int z = 0; z + 1 < n; z++) {
+            up[z] = new Handoff(RING);
+            down[z] = new Handoff(RING);
+        }
+        this.zones = new Zone[n];
+        for (int z = 0; z < n; z++) {
+            Elevator[] cabs = new Elevator[carsPerZone];
+            for (int i = 0; i < carsPerZone; i++)
+                cabs[i] = new Elevator(map.low(z), map.high(z), map.low(z));
+            Handoff below = z == 0 ? null : down[z - 1], above = z + 1 == n ? null : up[z];
+            Handoff fromBelow = z == 0 ? null : up[z - 1], fromAbove = z + 1 == n ? null : down[z];
+            zones[z] = new Zone(z, new GroupController(cabs, dwellTicks, 1, policy), cabs, below, above,
+                    fromBelow == null && fromAbove == null ? new Handoff[] { entry[z] }
+                            : fromBelow == null ? new Handoff[] { entry[z], fromAbove }
+                                    : fromAbove == null ? new Handoff[] { entry[z], fromBelow }
+                                            : new Handoff[] { entry[z], fromBelow, fromAbove });
+        }
+        this.sourceDone = !traffic.next();
+    }
+
+    /**
+     * Simulates up to (not including) tick {@code end}: each zone on its own
+     * thread, while the calling thread feeds them trips. Read the results between
+     * runs.
+     */
+    public void run(long end) {
+        if (end <= now)
+            return;
+        Thread[] threads = new Thread[zones.length];
+        RuntimeException[] failures = new RuntimeException[zones.length];
+        for (int z = 0; z < zones.length; z++) {
+            Zone zone = zones[z];
+            int id = z;
+            threads[z] = new Thread(() -> {
+                try {
+                    zone.runUntil(end);
+                } catch (RuntimeException e) {
+                    failures[id] = e;
+                    zone.abandon(); // let the neighbours finish rather than wait forever
+                }
+            }, "zone-" + z);
+            threads[z].start();
+        }
+        feed(end, threads);
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for zones", e);
+            }
+        }
+        for (RuntimeException e : failures)
+            if (e != null)
+                throw e;
+        now = end;
+    }
+
+    /** Routes trips due before {@code end} to the zones they start in. */
+    private void feed(long end, Thread[] threads) {
+        long promised = Long.MIN_VALUE;
+        while (!sourceDone && traffic.time() < end) {
+            long t = Math.max(traffic.time(), now);
+            if (t - 1 > promised) {
+                promised = t - 1;
+                for (Handoff h : entry)
+                    h.advance(promised);
+            }
+            int origin = traffic.origin(), dest = traffic.destination();
+            if (origin != dest) {
+                int z = map.zoneOf(origin, dest);
+                entry[z].send(t, origin, dest, t);
+                // Keep at most the ring buffered ahead of the zone.
+                for (int n = 1; entry[z].horizon() < promised && threads[z].isAlive(); n++) {
+                    entry[z].advance(promised);
+                    pause(n);
+                }
+                arrived++;
+            }
+            sourceDone = !traffic.next();
+        }
+        for (int z = 0; z < zones.length; z++)
+            for (int n = 1; entry[z].horizon() < end && threads[z].isAlive(); n++) {
+                entry[z].advance(end);
+                pause(n);
+            }
+    }
+
+    private static void pause(int n) {
+        if (n % SPINS == 0)
+            Thread.yield();
+        else
+            Thread.onSpinWait();
+    }
+
+    public ZoneMap map() {
+        return map;
+    }
+
+    public long now() {
+        return now;
+    }
+
+    /** Trips fed in so far. */
+    public long arrived() {
+        return arrived;
+    }
+
+    /** Riders who have reached their destination. */
+    public long delivered() {
+        long n = 0;
+        for (Zone z : zones)
+            n += z.delivered;
+        return n;
+    }
+
+    /** Riders handed from one zone to the next at a sky lobby. */
+    public long transfers() {
+        long n = 0;
+        for (Zone z : zones)
+            n += z.transfers;
+        return n;
+    }
+
+    /** Hall press to boarding, per boarding in any zone; a trip with transfers waits several times. */
+    public LatencyHistogram waitTimes() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (Zone z : zones)
+            h.add(z.waitTimes);
+        return h;
+    }
+
+    /** First hall press to arrival, per delivered rider, transfers included. */
+    public LatencyHistogram tripTimes() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (Zone z : zones)
+            h.add(z.tripTimes);
+        return h;
+    }
+
+    /** Zone {@code z}'s bank. Read it between runs. */
+    public GroupController bank(int z) {
+        return zones[z].group;
+    }
+
+    /** Riders waiting in or riding zone {@code z}'s cars. */
+    public int inFlight(int z) {
+        return zones[z].riders;
+    }
+
+    /** One zone's cars and riders; touched only by the zone's thread during a run. */
+    private final class Zone {
+        private static final int NIL = -1;
+
+        final int index, lo, hi, floors;
+        final GroupController group;
+        final Elevator[] cabs;
+        final boolean[] wasOpen;
+        final Handoff below, above; // outgoing transfers, null at the ends
+        final Handoff[] inbound;
+        long clock; // this zone's own tick count
+
+        // Riders as intrusive linked lists over pooled arrays: a FIFO per floor
+        // waiting, and a list per car and exit floor aboard.
+        int[] next = new int[64];
+        int[] dest = new int[64];
+        long[] pressedAt = new long[64]; // trip start
+        long[] legAt = new long[64]; // hall press in this zone
+        int free = NIL, allocated, riders;
+        final int[] waitHead, waitTail; // [floor - lo]
+        final int[] aboard; // [car * floors + floor - lo]
+
+        final LatencyHistogram waitTimes = new LatencyHistogram();
+        final LatencyHistogram tripTimes = new LatencyHistogram();
+        long delivered, transfers;
+
+        Zone(int index, GroupController group, Elevator[] cabs, Handoff below, Handoff above, Handoff[] inbound) {
+            this.index = index;
+            this.lo = map.low(index);
+            this.hi = map.high(index);
+            this.floors = hi - lo + 1;
+            this.group = group;
+            this.cabs = cabs;
+            this.wasOpen = new boolean[cabs.length];
+            this.below = below;
+            this.above = above;
+            this.inbound = inbound;
+            this.waitHead = new int[floors];
+            this.waitTail = new int[floors];
+            this.aboard = new int[cabs.length * floors];
+            Arrays.fill(waitHead, NIL);
+            Arrays.fill(waitTail, NIL);
+            Arrays.fill(aboard, NIL);
+        }
+
+        void runUntil(long end) {
+            promise();
+            while (clock < end) {
+                for (Handoff h : inbound)
+                    receive(h);
+                group.tick();
+                clock++;
+                for (int car = 0; car < cabs.length; car++) {
+                    boolean open = cabs[car].doorOpen;
+                    if (open && !wasOpen[car])
+                        doorsOpened(car, cabs[car].currentFloor);
+                    wasOpen[car] = open;
+                }
+                promise();
+            }
+        }
+
+        /** Nothing this zone sends from now on presses before clock + transferTicks. */
+        private void promise() {
+            long upTo = clock - 1 + transferTicks;
+            if (below != null)
+                below.advance(upTo);
+            if (above != null)
+                above.advance(upTo);
+        }
+
+        /** Presses for every rider due by now, waiting until the sender has promised now. */
+        private void receive(Handoff h) {
+            for (int n = 1;; n++) {
+                long promised = h.horizon(); // read first: everything it covers is already in the ring
+                for (long t; (t = h.peekTime()) <= clock; h.pop())
+                    press(h.peekFloor(), h.peekDestination(), h.peekPressedAt());
+                if (promised >= clock)
+                    return;
+                promise(); // keep overflow moving while we wait
+                pause(n);
+            }
+        }
+
+        /** Stops waiting for this zone: every channel out of it promises the end of time. */
+        void abandon() {
+            if (below != null)
+                below.advance(Long.MAX_VALUE - 1);
+            if (above != null)
+                above.advance(Long.MAX_VALUE - 1);
+        }
+
+        private void press(int floor, int destination, long tripStart) {
+            int p = allocate();
+            dest[p] = destination;
+            pressedAt[p] = tripStart;
+            legAt[p] = clock;
+            riders++;
+            int k = floor - lo;
+            next[p] = NIL;
+            if (waitTail[k] == NIL)
+                waitHead[k] = p;
+            else
+                next[waitTail[k]] = p;
+            waitTail[k] = p;
+            group.submitHallCall(floor, map.exitFloor(index, destination) > floor ? Direction.UP : Direction.DOWN);
+        }
+
+        private void doorsOpened(int car, int floor) {
+            int k = floor - lo;
+            // Riders for this floor get off: home, or across the sky lobby.
+            int slot = car * floors + k;
+            for (int p = aboard[slot]; p != NIL;) {
+                int n = next[p];
+                if (dest[p] == floor) {
+                    tripTimes.record(clock - pressedAt[p]);
+                    delivered++;
+                } else {
+                    (floor == hi ? above : below).send(clock + transferTicks, floor, dest[p], pressedAt[p]);
+                    transfers++;
+                }
+                riders--;
+                release(p);
+                p = n;
+            }
+            aboard[slot] = NIL;
+            // Everyone waiting boards.
+            for (int p = waitHead[k]; p != NIL;) {
+                int n = next[p];
+                waitTimes.record(clock - legAt[p]);
+                int exit = map.exitFloor(index, dest[p]);
+                int s = car * floors + exit - lo;
+                next[p] = aboard[s];
+                aboard[s] = p;
+                group.submitCarCall(car, exit);
+                p = n;
+            }
+            waitHead[k] = waitTail[k] = NIL;
+        }
+
+        private int allocate() {
+            if (free != NIL) {
+                int p = free;
+                free = next[p];
+                return p;
+            }
+            if (allocated == next.length) {
+                int n = next.length * 2;
+                next = Arrays.copyOf(next, n);
+                dest = Arrays.copyOf(dest, n);
+                pressedAt = Arrays.copyOf(pressedAt, n);
+                legAt = Arrays.copyOf(legAt, n);
+            }
+            return allocated++;
+        }
+
+        private void release(int p) {
+            next[p] = free;
+            free = p;
+        }
+    }
+
+    /**
+     * Simulates the same up-peak traffic with one bank, then more and more zones
+     * of the same size, and reports wall time per simulated tick.
+     *
+     * Usage: java ZonedBuilding [floors] [max-zones] [cars-per-zone] [ticks]
+     */
+    public static void main(String[] args) {
+        int floors = args.length > 0 ? Integer.parseInt(args[0]) : 80;
+        int maxZones = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int cars = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long ticks = args.length > 3 ? Long.parseLong(args[3]) : 200_000;
+        for (int zs = 1; zs <= maxZones; zs++) {
+            ZoneMap map = ZoneMap.even(0, floors - 1, zs);
+            TrafficSource traffic = new TrafficGenerator(TrafficGenerator.Pattern.UP_PEAK, 0, floors - 1,
+                    0.02 * zs, ticks, 11);
+            ZonedBuilding b = new ZonedBuilding(map, cars, 3, new LookPolicy(), 10, traffic);
+            long start = System.nanoTime();
+            b.run(ticks);
+            double secs = (System.nanoTime() - start) / 1e9;
+            LatencyHistogram trips = b.tripTimes();
+            System.out.printf("%d zones [%s], %d cars: %.0f ticks/s, %.1f M car-ticks/s; %d/%d delivered, "
+                    + "%d transfers, trip p50=%d p99=%d%n", zs, map, zs * cars, ticks / secs,
+                    ticks * zs * cars / secs / 1e6, b.delivered(), b.arrived(), b.transfers(),
+                    trips.percentile(50), trips.percentile(99));
+        }
+    }
+}